@@ -1,8 +1,118 @@
 public class Determinant {
+	/*
+	 * The fewest diagonal entries each thread multiplies in product; below twice this the
+	 * threads would cost more than the loop.
+	 */
+	static final int MIN_RANGE = 1 << 14;
+
+	/*
+	 * Multiplies the diagonal of the eliminated matrix. The running product is kept as a
+	 * mantissa in [1, 2) and a separate binary exponent, so it cannot overflow or underflow
+	 * part way; the result is only infinite or 0 if the determinant itself is out of range.
+	 */
 	public static double calculate(double matrix[][], int size) {
-		double determinant = 1;
-		for (int i = 0; i < size; i++)
-			determinant *= matrix[i][i];
-		return determinant;
+		return calculate(matrix, size, 1, 1);
+	}
+
+	/*
+	 * As calculate(matrix, size), for an elimination whose row interchanges gave the sign, with
+	 * the diagonal multiplied on up to the given number of threads.
+	 */
+	public static double calculate(double matrix[][], int size, int sign, int threads) {
+		double[] product = product(matrix, size, threads);
+		if (product[0] == 0)
+			return 0;
+		double exponent = Math.max(Math.min(product[2], 2 * Double.MAX_EXPONENT), 2 * Double.MIN_EXPONENT);
+		return sign * product[0] * Math.scalb(product[1], (int) exponent);
+	}
+
+	/*
+	 * Returns {sign, log|determinant|} for the eliminated matrix, which stays finite for any size.
+	 * A zero determinant gives {0, -Infinity}.
+	 */
+	public static double[] calculateLog(double matrix[][], int size) {
+		return calculateLog(matrix, size, 1, 1);
+	}
+
+	/*
+	 * As calculateLog(matrix, size), for an elimination whose row interchanges gave the sign,
+	 * with the diagonal multiplied on up to the given number of threads.
+	 */
+	public static double[] calculateLog(double matrix[][], int size, int sign, int threads) {
+		double[] product = product(matrix, size, threads);
+		if (product[0] == 0)
+			return new double[] { 0, Double.NEGATIVE_INFINITY };
+		return new double[] { sign * product[0], Math.log(product[1]) + product[2] * Math.log(2) };
+	}
+
+	/*
+	 * Returns {sign, mantissa, exponent} of the diagonal product, with the mantissa in [1, 2).
+	 * The diagonal is split into one range per thread, each multiplied on its own thread, and
+	 * the partial products are combined; a diagonal under 2 * MIN_RANGE is multiplied in place.
+	 */
+	static double[] product(final double matrix[][], int size, int threads) {
+		int parts = Math.min(threads, size / MIN_RANGE);
+		if (parts <= 1)
+			return diagonal(matrix, 0, size);
+
+		final double[][] partial = new double[parts][];
+		Thread[] workers = new Thread[parts - 1];
+		for (int t = 0; t < parts; t++) {
+			final int index = t;
+			final int from = (int) ((long) size * t / parts);
+			final int to = (int) ((long) size * (t + 1) / parts);
+			if (t == parts - 1) {
+				partial[index] = diagonal(matrix, from, to);
+				break;
+			}
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					partial[index] = diagonal(matrix, from, to);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers)
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+		double[] product = { 1, 1, 0 };
+		for (double[] p : partial) {
+			if (p[0] == 0)
+				return new double[] { 0, 0, 0 };
+			product[0] *= p[0];
+			product[1] *= p[1];
+			product[2] += p[2];
+			int e = Math.getExponent(product[1]);
+			product[1] = Math.scalb(product[1], -e);
+			product[2] += e;
+		}
+		return product;
+	}
+
+	/*
+	 * Returns {sign, mantissa, exponent} of the product of the diagonal entries from to to.
+	 */
+	static double[] diagonal(double matrix[][], int from, int to) {
+		double sign = 1, mantissa = 1, exponent = 0;
+		for (int i = from; i < to; i++) {
+			double val = matrix[i][i];
+			if (val == 0)
+				return new double[] { 0, 0, 0 };
+			if (val < 0)
+				sign = -sign;
+			int e = Math.getExponent(val);
+			if (e < Double.MIN_EXPONENT)
+				e = Math.getExponent(val * 0x1p52) - 52;
+			mantissa *= Math.abs(Math.scalb(val, -e));
+			exponent += e;
+			e = Math.getExponent(mantissa);
+			mantissa = Math.scalb(mantissa, -e);
+			exponent += e;
+		}
+		return new double[] { sign, mantissa, exponent };
 	}
 }
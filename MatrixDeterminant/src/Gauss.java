@@ -1,14 +1,36 @@
 import java.text.DecimalFormat;
 import java.util.concurrent.locks.ReentrantLock;
 
+/*
+ * One step of a pipelined Gaussian elimination with partial pivoting: step k eliminates
+ * column k below the diagonal, with matrix[k] as its pivot row.
+ *
+ * Partial pivoting means step k + 1 cannot start until column k + 1 is final in every row
+ * below it, so each step works in two passes down its rows. The first pass stores each row's
+ * multiplier in column k, updates only column k + 1, and finds the largest entry of that
+ * column, whose row is swapped into place k + 1; rows are swapped by exchanging their
+ * references, so the swap is O(1). Step k + 1 is started right after it, and its first pass
+ * follows this step's second pass, which updates the rest of each row, down the rows.
+ *
+ * Steps walk down the rows holding the lock of one block of csSize rows at a time, taking the
+ * next block's lock before releasing the current one, so a later step can never overtake an
+ * earlier one. Row swaps, which only happen between the two passes of a step, are counted in
+ * swaps[0] for the determinant's sign.
+ */
 public class Gauss implements Runnable {
 
 	double matrix[][];
 	int size, currentRow, csSize, threads;
 	ReentrantLock[] lock;
+	int[] swaps;
 
 	public Gauss(double m[][], int n, int currentRow,
 			ReentrantLock[] lock, int csSize, int threads) {
+		this(m, n, currentRow, lock, csSize, threads, new int[1]);
+	}
+
+	Gauss(double m[][], int n, int currentRow,
+			ReentrantLock[] lock, int csSize, int threads, int[] swaps) {
 
 		this.matrix = m;
 		this.size = n;
@@ -16,66 +38,120 @@ public class Gauss implements Runnable {
 		this.lock = lock;
 		this.csSize = csSize;
 		this.threads = threads;
+		this.swaps = swaps;
 	}
 
 	public void run() {
 
-		final int STEP = 4;
-		double val;
-
 		if (currentRow == size) {
-			double determinant = Determinant.calculate(matrix, size);
-			
+			int sign = swaps[0] % 2 == 0 ? 1 : -1;
+			double determinant = Determinant.calculate(matrix, size, sign, threads);
+			double[] logDeterminant = Determinant.calculateLog(matrix, size, sign, threads);
+
 			//End Timer Here
 			Timer.setEndTime();
 			DecimalFormat df = new DecimalFormat();
 			df.setMaximumFractionDigits(2);
-			
+
 			//Prints out the result
 			System.out.println();
-			
+
 			System.out.println("Determinant = " + determinant);
+			System.out.println("Sign = " + logDeterminant[0] + ", log|Determinant| = " + logDeterminant[1]);
 			System.out.println("Total Time Taken = " + Timer.getDuration() + " ms");
 			return;
 		}
 
-		lock[currentRow / csSize].lock();
-		for (int i = currentRow + 1; i < size; i++) {
+		if (currentRow == 0)
+			swap(0, pivotRow(0));
 
-			if (i % csSize == 0) {
-				lock[i / csSize - 1].unlock();
-				lock[i / csSize].lock();
-			}
+		int k = currentRow;
+		double pivot = matrix[k][k];
 
-			val = -matrix[i][currentRow] / matrix[currentRow][currentRow];
-			matrix[i][currentRow] = 0;
-			for (int j = currentRow + 1; j < size; j++)
-				matrix[i][j] += val * matrix[currentRow][j];
-
-			if (i == currentRow + STEP) {
-				if (currentRow + 1 >= threads && threads > 1)
-					try {
-						ThreadPool.tr[(currentRow + 1) % threads].join();
-					} catch (InterruptedException e) {
-					}
-				Gauss r = new Gauss(matrix, size, currentRow + 1,
-						lock, csSize, threads);
-				ThreadPool.tr[(currentRow + 1) % threads] = new Thread(r);
-				ThreadPool.tr[(currentRow + 1) % threads].start();
+		// First pass: multipliers and column k + 1, finding the next step's pivot. It starts in
+		// row k's block, which the previous step held when it started this one.
+		int next = k + 1;
+		double max = -1;
+		int held = k / csSize;
+		lock[held].lock();
+		for (int i = k + 1; i < size; i++) {
+			held = advance(held, i);
+			// A zero pivot means the column is already zero below it, and the determinant is 0.
+			double val = pivot == 0 ? 0 : -matrix[i][k] / pivot;
+			matrix[i][k] = val;
+			if (k + 1 < size) {
+				matrix[i][k + 1] += val * matrix[k][k + 1];
+				if (Math.abs(matrix[i][k + 1]) > max) {
+					max = Math.abs(matrix[i][k + 1]);
+					next = i;
+				}
 			}
 		}
+		swap(k + 1, next);
 
-		lock[(size - 1) / csSize].unlock();
-		if (size - 1 < currentRow + STEP) {
-			if (currentRow + 1 >= threads && threads > 1)
-				try {
-					ThreadPool.tr[(currentRow + 1) % threads].join();
-				} catch (InterruptedException e) {
-				}
-			Gauss r = new Gauss(matrix, size, currentRow + 1, lock,
-					csSize, threads);
-			ThreadPool.tr[(currentRow + 1) % threads] = new Thread(r);
-			ThreadPool.tr[(currentRow + 1) % threads].start();
+		// Second pass: the rest of each row. The lock of row k + 1's block is taken before the
+		// next step is started, so that step follows this pass down the rows.
+		int first = Math.min(k + 1, size - 1) / csSize;
+		lock[first].lock();
+		lock[held].unlock();
+		held = first;
+		start(k + 1);
+		for (int i = k + 1; i < size; i++) {
+			held = advance(held, i);
+			double val = matrix[i][k];
+			matrix[i][k] = 0;
+			for (int j = k + 2; j < size; j++)
+				matrix[i][j] += val * matrix[k][j];
+		}
+		lock[held].unlock();
+	}
+
+	/*
+	 * Moves to the lock of row i's block, taking it before releasing the one held.
+	 */
+	private int advance(int held, int i) {
+		int block = i / csSize;
+		if (block != held) {
+			lock[block].lock();
+			lock[held].unlock();
 		}
+		return block;
+	}
+
+	/*
+	 * Returns the row at or below the diagonal with the largest entry in column k.
+	 */
+	private int pivotRow(int k) {
+		int p = k;
+		for (int i = k + 1; i < size; i++)
+			if (Math.abs(matrix[i][k]) > Math.abs(matrix[p][k]))
+				p = i;
+		return p;
+	}
+
+	/*
+	 * Exchanges rows a and b, counting the swap if they differ.
+	 */
+	private void swap(int a, int b) {
+		if (a == b || b >= size)
+			return;
+		double[] row = matrix[a];
+		matrix[a] = matrix[b];
+		matrix[b] = row;
+		swaps[0]++;
+	}
+
+	/*
+	 * Starts the given step on the thread slot it cycles to, once that slot's previous step is done.
+	 */
+	private void start(int row) {
+		if (row >= threads && threads > 1)
+			try {
+				ThreadPool.tr[row % threads].join();
+			} catch (InterruptedException e) {
+			}
+		Gauss r = new Gauss(matrix, size, row, lock, csSize, threads, swaps);
+		ThreadPool.tr[row % threads] = new Thread(r);
+		ThreadPool.tr[row % threads].start();
 	}
 }
@@ -0,0 +1,174 @@
+package matrix;
+
+/**
+ * A banded LU factorization P * A = L * U with partial pivoting, in the manner of LAPACK's gbtf2.
+ *
+ * With lower subdiagonals and upper superdiagonals, pivoting can only bring a row up from at most
+ * lower rows below, so L keeps lower subdiagonals and U grows to lower + upper superdiagonals.
+ * The factors are stored row by row like the matrix, each row widened to 2 * lower + upper + 1,
+ * and factoring costs O(n * lower * (lower + upper)) time in O(n * (2 * lower + upper)) memory.
+ *
+ * Like LAPACK, the interchanges are applied to U's rows as they happen but not to the multipliers
+ * of L already computed, so solve interleaves them with the forward substitution.
+ */
+public class BandLU
+{
+	private final double[] f;
+	private final int[] piv;
+	private final int n;
+	private final int lower;
+	private final int upper;
+	private final int width;
+	private final int singularColumn;
+
+	private BandLU(double[] f, int[] piv, int n, int lower, int upper, int singularColumn)
+	{
+		this.f = f;
+		this.piv = piv;
+		this.n = n;
+		this.lower = lower;
+		this.upper = upper;
+		this.width = 2 * lower + upper + 1;
+		this.singularColumn = singularColumn;
+	}
+
+	/**
+	 * Factors a band matrix, which is not modified.
+	 */
+	static BandLU factor(BandMatrix A)
+	{
+		int n = A.size();
+		int kl = A.lowerBandwidth();
+		int ku = A.upperBandwidth();
+		int w = 2 * kl + ku + 1;
+		int aw = kl + ku + 1;
+		double[] a = A.band();
+		double[] f = new double[n * w]; // entry (i, j) at f[i * w + j - i + kl]
+		for (int i = 0; i < n; i++)
+			System.arraycopy(a, i * aw, f, i * w, aw);
+
+		int[] piv = new int[n];
+		int singular = -1;
+		for (int k = 0; k < n; k++)
+		{
+			int last = Math.min(n - 1, k + kl);
+			int p = k;
+			double max = Math.abs(f[k * w + kl]);
+			for (int i = k + 1; i <= last; i++)
+			{
+				double v = Math.abs(f[i * w + k - i + kl]);
+				if (v > max)
+				{
+					max = v;
+					p = i;
+				}
+			}
+			piv[k] = p;
+			if (max == 0.0)
+			{
+				if (singular < 0)
+					singular = k;
+				continue;
+			}
+			int end = Math.min(n - 1, k + kl + ku); // the last column rows k .. last can reach
+			if (p != k)
+			{
+				for (int j = k; j <= end; j++)
+				{
+					int x = k * w + j - k + kl;
+					int y = p * w + j - p + kl;
+					double temp = f[x];
+					f[x] = f[y];
+					f[y] = temp;
+				}
+			}
+			int rk = k * w - k + kl;
+			double pivot = f[rk + k];
+			for (int i = k + 1; i <= last; i++)
+			{
+				int ri = i * w - i + kl;
+				double l = f[ri + k] / pivot;
+				f[ri + k] = l;
+				Kernels.axpy(end - k, -l, f, rk + k + 1, f, ri + k + 1);
+			}
+		}
+		return new BandLU(f, piv, n, kl, ku, singular);
+	}
+
+	/**
+	 * @return the number of rows and columns of the factored matrix.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @return true if some pivot is exactly 0, so the matrix is singular.
+	 */
+	public boolean isSingular()
+	{
+		return singularColumn >= 0;
+	}
+
+	/**
+	 * Returns the determinant as its sign and the logarithm of its magnitude, which cannot overflow,
+	 * as it easily would for n in the millions.
+	 * @return
+	 */
+	public LogDeterminant logAbsDeterminant()
+	{
+		LogDeterminant det = new LogDeterminant();
+		for (int k = 0; k < n; k++)
+		{
+			det.multiply(f[k * width + lower]);
+			if (piv[k] != k)
+				det.negate();
+		}
+		return det;
+	}
+
+	/**
+	 * @return the determinant, which is infinite or 0 if it does not fit in a double.
+	 */
+	public double determinant()
+	{
+		return logAbsDeterminant().value();
+	}
+
+	/**
+	 * Solves A * x = b, applying each interchange just before the column of L it belongs to,
+	 * then substituting back through U's band.
+	 * @param b : the right-hand side, n long. It is not modified.
+	 * @return x, or null if A is singular or b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		if (isSingular() || b.length != n)
+			return null;
+		double[] x = b.clone();
+		for (int k = 0; k < n; k++) // L * y = P * b
+		{
+			int p = piv[k];
+			if (p != k)
+			{
+				double temp = x[k];
+				x[k] = x[p];
+				x[p] = temp;
+			}
+			double xk = x[k];
+			if (xk == 0.0)
+				continue;
+			int last = Math.min(n - 1, k + lower);
+			for (int i = k + 1; i <= last; i++)
+				x[i] -= f[i * width + k - i + lower] * xk;
+		}
+		for (int i = n - 1; i >= 0; i--) // U * x = y
+		{
+			int r = i * width - i + lower;
+			int end = Math.min(n - 1, i + lower + upper);
+			x[i] = (x[i] - Kernels.dot(end - i, f, r + i + 1, x, i + 1)) / f[r + i];
+		}
+		return x;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+package matrix;
+
+/**
+ * A square matrix whose non-zeros all lie within a band around the diagonal: entry (i, j) may
+ * be non-zero only if i - lower <= j <= i + upper. Only the diagonals inside the band are stored,
+ * row by row, so entry (i, j) lives at band[i * width + j - i + lower], width being
+ * lower + upper + 1.
+ *
+ * That is n * width doubles instead of n^2, which is what makes the matrices of finite
+ * difference and finite element discretizations, with n in the millions and a bandwidth of a few,
+ * representable at all. Factoring one costs O(n * lower * (lower + upper)) instead of O(n^3), see
+ * {@link BandLU}, and tridiagonal matrices have two further solvers of their own.
+ */
+public class BandMatrix
+{
+	private final int n;
+	private final int lower;
+	private final int upper;
+	private final int width;
+	private final double[] band;
+
+	/**
+	 * Constructs an n x n band matrix with all entries 0.
+	 * @param n     : the number of rows and columns.
+	 * @param lower : the number of diagonals below the main one that may be non-zero.
+	 * @param upper : the number of diagonals above the main one that may be non-zero.
+	 */
+	public BandMatrix(int n, int lower, int upper)
+	{
+		this.n = n;
+		this.lower = lower;
+		this.upper = upper;
+		width = lower + upper + 1;
+		band = new double[n * width];
+	}
+
+	/**
+	 * Constructs a band copy of a square dense matrix, with the narrowest band that holds all
+	 * of its non-zeros.
+	 * @param dense : the matrix to copy, which must be square.
+	 * @throws IllegalArgumentException if dense is not square.
+	 */
+	public BandMatrix(Matrix dense)
+	{
+		this(order(dense), lowerBandwidth(dense), upperBandwidth(dense));
+		double[] a = dense.data();
+		int stride = dense.stride();
+		for (int i = 0; i < n; i++)
+		{
+			int j0 = Math.max(0, i - lower);
+			int j1 = Math.min(n, i + upper + 1);
+			System.arraycopy(a, i * stride + j0, band, i * width + j0 - i + lower, j1 - j0);
+		}
+	}
+
+	/**
+	 * @return the number of rows and columns of a square matrix, checked before the bandwidths
+	 * 	are measured over them.
+	 */
+	private static int order(Matrix dense)
+	{
+		if (dense.rows() != dense.cols())
+			throw new IllegalArgumentException("a band matrix must be square, not " + dense.rows() + " x " + dense.cols());
+		return dense.rows();
+	}
+
+	/**
+	 * @return the largest i - j over the non-zero entries (i, j) of a square matrix, or 0.
+	 */
+	private static int lowerBandwidth(Matrix dense)
+	{
+		double[] a = dense.data();
+		int stride = dense.stride();
+		int kl = 0;
+		for (int i = 1; i < dense.rows(); i++)
+		{
+			for (int j = 0; j < i - kl; j++) // only columns that would widen the band
+			{
+				if (a[i * stride + j] != 0.0)
+				{
+					kl = i - j;
+					break;
+				}
+			}
+		}
+		return kl;
+	}
+
+	/**
+	 * @return the largest j - i over the non-zero entries (i, j) of a square matrix, or 0.
+	 */
+	private static int upperBandwidth(Matrix dense)
+	{
+		double[] a = dense.data();
+		int stride = dense.stride();
+		int n = dense.cols();
+		int ku = 0;
+		for (int i = 0; i < dense.rows(); i++)
+		{
+			for (int j = n - 1; j > i + ku; j--)
+			{
+				if (a[i * stride + j] != 0.0)
+				{
+					ku = j - i;
+					break;
+				}
+			}
+		}
+		return ku;
+	}
+
+	/**
+	 * Constructs a tridiagonal matrix from its three diagonals.
+	 * @param sub   : the subdiagonal, n long; sub[i] is entry (i, i - 1) and sub[0] is ignored.
+	 * @param diag  : the main diagonal, n long.
+	 * @param sup   : the superdiagonal, n long; sup[i] is entry (i, i + 1) and sup[n - 1] is ignored.
+	 * @return the matrix, or null if the diagonals differ in length.
+	 */
+	public static BandMatrix tridiagonal(double[] sub, double[] diag, double[] sup)
+	{
+		int n = diag.length;
+		if (sub.length != n || sup.length != n)
+			return null;
+		BandMatrix t = new BandMatrix(n, 1, 1);
+		for (int i = 0; i < n; i++)
+		{
+			if (i > 0)
+				t.band[i * 3] = sub[i];
+			t.band[i * 3 + 1] = diag[i];
+			if (i < n - 1)
+				t.band[i * 3 + 2] = sup[i];
+		}
+		return t;
+	}
+
+	/**
+	 * @return the number of rows and columns of the matrix.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of diagonals below the main one that are stored.
+	 */
+	public int lowerBandwidth()
+	{
+		return lower;
+	}
+
+	/**
+	 * @return the number of diagonals above the main one that are stored.
+	 */
+	public int upperBandwidth()
+	{
+		return upper;
+	}
+
+	/**
+	 * @return true if the band is at most one diagonal wide on either side.
+	 */
+	public boolean isTridiagonal()
+	{
+		return lower <= 1 && upper <= 1;
+	}
+
+	/**
+	 * @return true if entry (i, j) lies inside the band, and so is stored.
+	 */
+	public boolean inBand(int i, int j)
+	{
+		return i >= 0 && i < n && j >= 0 && j < n && j >= i - lower && j <= i + upper;
+	}
+
+	/**
+	 * @param i : the row of the entry.
+	 * @param j : the column of the entry.
+	 * @return the entry, which is 0 outside the band.
+	 */
+	public double get(int i, int j)
+	{
+		if (!inBand(i, j))
+			return 0.0;
+		return band[i * width + j - i + lower];
+	}
+
+	/**
+	 * Sets an entry inside the band.
+	 * @param i     : the row of the entry.
+	 * @param j     : the column of the entry.
+	 * @param value : the new value.
+	 * @return false, leaving the matrix unchanged, if the entry lies outside the band.
+	 */
+	public boolean set(int i, int j, double value)
+	{
+		if (!inBand(i, j))
+			return false;
+		band[i * width + j - i + lower] = value;
+		return true;
+	}
+
+	double[] band()
+	{
+		return band;
+	}
+
+	/**
+	 * @return a dense copy of this matrix.
+	 */
+	public Matrix toMatrix()
+	{
+		double[] dense = new double[n * n];
+		for (int i = 0; i < n; i++)
+		{
+			int j0 = Math.max(0, i - lower);
+			int j1 = Math.min(n, i + upper + 1);
+			System.arraycopy(band, i * width + j0 - i + lower, dense, i * n + j0, j1 - j0);
+		}
+		return new Matrix(dense, n, n);
+	}
+
+	/**
+	 * Computes A * x, touching only the band.
+	 * @param x : the vector to multiply, n long.
+	 * @return A * x, or null if x has the wrong length.
+	 */
+	public double[] multiply(double[] x)
+	{
+		if (x.length != n)
+			return null;
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			int j0 = Math.max(0, i - lower);
+			int j1 = Math.min(n, i + upper + 1);
+			y[i] = Kernels.dot(j1 - j0, band, i * width - i + lower + j0, x, j0);
+		}
+		return y;
+	}
+
+	/**
+	 * Factors this matrix as P * A = L * U with partial pivoting, within the band.
+	 * @return the factorization. A singular matrix still factors; see BandLU.isSingular().
+	 */
+	public BandLU lu()
+	{
+		return BandLU.factor(this);
+	}
+
+	/**
+	 * Solves A * x = b with a banded LU factorization.
+	 * @param b : the right-hand side, n long.
+	 * @return x, or null if the matrix is singular or b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		return lu().solve(b);
+	}
+
+	/**
+	 * Copies the three diagonals of a tridiagonal matrix, in the layout of tridiagonal().
+	 * @return {sub, diag, sup}.
+	 */
+	private double[][] diagonals()
+	{
+		double[] sub = new double[n];
+		double[] diag = new double[n];
+		double[] sup = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			sub[i] = get(i, i - 1);
+			diag[i] = get(i, i);
+			sup[i] = get(i, i + 1);
+		}
+		return new double[][] {sub, diag, sup};
+	}
+
+	/**
+	 * Solves A * x = b for a tridiagonal A with the Thomas algorithm, Gaussian elimination without
+	 * pivoting in 8n flops. Without pivoting it is only safe for matrices that are diagonally
+	 * dominant or symmetric positive-definite, as discretized diffusion operators are.
+	 * @param b : the right-hand side, n long. It is not modified.
+	 * @return x, or null if the matrix is not tridiagonal, b has the wrong length, or a 0 pivot
+	 * 	came up.
+	 */
+	public double[] solveThomas(double[] b)
+	{
+		if (!isTridiagonal() || b.length != n)
+			return null;
+		double[][] t = diagonals();
+		return Tridiagonal.thomas(t[0], t[1], t[2], b);
+	}
+
+	/**
+	 * Solves A * x = b for a tridiagonal A by cyclic reduction, with the equations of each level
+	 * of the reduction split between the context's threads. It does about twice the flops of
+	 * solveThomas, but all but the last few levels run in parallel, so given a few cores it
+	 * overtakes it on large systems. Like the Thomas algorithm it does not pivot.
+	 * @param b       : the right-hand side, n long. It is not modified.
+	 * @param context : the threads to solve on.
+	 * @return x, or null if the matrix is not tridiagonal, b has the wrong length, or a 0 pivot
+	 * 	came up.
+	 */
+	public double[] solveCyclicReduction(double[] b, ComputeContext context)
+	{
+		if (!isTridiagonal() || b.length != n)
+			return null;
+		double[][] t = diagonals();
+		return Tridiagonal.cyclicReduction(t[0], t[1], t[2], b.clone(), context.forkJoinPool());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,298 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Blocked right-looking LU factorization with partial pivoting, in the style of LAPACK's getrf.
+ *
+ * Each step factors a narrow panel of BLOCK columns with an unblocked loop, choosing as pivot
+ * the entry of largest magnitude in the column. The panel's row interchanges are then applied to
+ * the rest of the matrix, the block row of U to the right of the panel is found by a unit lower
+ * triangular solve, and the trailing submatrix is updated by one matrix multiply. Nearly all of
+ * the flops land in that multiply, which runs on {@link Gemm} or, given a pool, {@link ParallelGemm}.
+ */
+class BlockedLU
+{
+	/** Width of the panels. */
+	static final int BLOCK = 64;
+	/** Column ranges narrower than this are not split further when swapping and solving in parallel. */
+	static final int MIN_COLUMNS = 64;
+
+	private BlockedLU()
+	{
+	}
+
+	/**
+	 * Factors the n x n matrix A in place so that P * A = L * U, where L is unit lower triangular
+	 * and stored below the diagonal of A, and U is upper triangular and stored on and above it.
+	 * P is recorded LAPACK style: at step i, row i was interchanged with row piv[i] (piv[i] >= i).
+	 * @param a    : the row-major array holding A.
+	 * @param off  : the index of A's first element in a.
+	 * @param lda  : the row stride of A.
+	 * @param n    : the number of rows and columns of A.
+	 * @param piv  : receives the pivot rows, at least n long.
+	 * @param pool : the pool to run the swaps, solves and updates on, or null to run sequentially.
+	 * @return the first column without a non-zero pivot, or -1 if A is non-singular. As in LAPACK
+	 * 	the factorization is completed either way; U just has a 0 on its diagonal in that column.
+	 */
+	static int factor(double[] a, int off, int lda, int n, int[] piv, ForkJoinPool pool)
+	{
+		int singular = -1;
+		for (int j0 = 0; j0 < n; j0 += BLOCK)
+		{
+			int jb = Math.min(BLOCK, n - j0);
+			Metrics.step(j0);
+			Metrics.phase(Metrics.Phase.PIVOT_SEARCH);
+			Metrics.flops((double) (n - j0) * jb * jb);
+			int zero = factorPanel(a, off, lda, n, j0, jb, piv);
+			if (singular < 0)
+				singular = zero;
+			Metrics.phase(Metrics.Phase.ELIMINATION);
+
+			// Bring the rest of each swapped row along, and solve for the block row of U.
+			int right = j0 + jb;
+			ColumnTask swaps = new ColumnTask(a, off, lda, j0, jb, piv, 0, j0, false);
+			ColumnTask solve = new ColumnTask(a, off, lda, j0, jb, piv, right, n, true);
+			if (pool == null)
+			{
+				swaps.compute();
+				solve.compute();
+			}
+			else
+			{
+				pool.invoke(new PairTask(swaps, solve));
+			}
+
+			// A22 = A22 - L21 * U12
+			int rest = n - right;
+			Metrics.flops((double) jb * jb * rest + 2.0 * rest * rest * jb);
+			if (rest > 0)
+			{
+				int l21 = off + right * lda + j0;
+				int u12 = off + j0 * lda + right;
+				int a22 = off + right * lda + right;
+				if (pool == null)
+					Gemm.gemm(false, false, rest, rest, jb, -1.0, a, l21, lda, a, u12, lda, 1.0, a, a22, lda);
+				else
+					ParallelGemm.gemm(pool, false, false, rest, rest, jb, -1.0, a, l21, lda, a, u12, lda, 1.0, a, a22, lda);
+			}
+		}
+		Metrics.endStep();
+		return singular;
+	}
+
+	/**
+	 * Factors columns [j0, j0 + jb) of rows [j0, n) with partial pivoting, one column at a time,
+	 * swapping and updating only within the panel.
+	 * @return the first column without a non-zero pivot, or -1.
+	 */
+	static int factorPanel(double[] a, int off, int lda, int n, int j0, int jb, int[] piv)
+	{
+		int end = j0 + jb;
+		int singular = -1;
+		for (int j = j0; j < end; j++)
+		{
+			int p = j;
+			double max = Math.abs(a[off + j * lda + j]);
+			for (int i = j + 1; i < n; i++)
+			{
+				double val = Math.abs(a[off + i * lda + j]);
+				if (val > max)
+				{
+					max = val;
+					p = i;
+				}
+			}
+			piv[j] = p;
+			if (max == 0.0) // nothing to eliminate, the whole column below the diagonal is already 0
+			{
+				if (singular < 0)
+					singular = j;
+				continue;
+			}
+			if (p != j)
+				swapRows(a, off, lda, j, p, j0, end);
+
+			int pr = off + j * lda;
+			double pivot = a[pr + j];
+			for (int i = j + 1; i < n; i++)
+			{
+				int r = off + i * lda;
+				double l = a[r + j] / pivot;
+				a[r + j] = l;
+				Kernels.axpy(end - j - 1, -l, a, pr + j + 1, a, r + j + 1);
+			}
+		}
+		return singular;
+	}
+
+	/**
+	 * Copies the unit lower triangular factor out of a packed n x n factorization.
+	 */
+	static double[] lower(double[] lu, int n)
+	{
+		double[] L = new double[n * n];
+		for (int i = 0; i < n; i++)
+		{
+			System.arraycopy(lu, i * n, L, i * n, i);
+			L[i * n + i] = 1.0;
+		}
+		return L;
+	}
+
+	/**
+	 * Copies the upper triangular factor out of a packed n x n factorization.
+	 */
+	static double[] upper(double[] lu, int n)
+	{
+		double[] U = new double[n * n];
+		for (int i = 0; i < n; i++)
+		{
+			System.arraycopy(lu, i * n + i, U, i * n + i, n - i);
+		}
+		return U;
+	}
+
+	/**
+	 * Builds the dense n x n permutation matrix P with P * A = L * U by applying the
+	 * recorded interchanges, in order, to the rows of the identity.
+	 * @return P, or null if no rows were interchanged.
+	 */
+	static double[] permutation(int[] piv, int n)
+	{
+		int[] perm = permutationVector(piv, n);
+		if (perm == null)
+			return null;
+		double[] P = new double[n * n];
+		for (int i = 0; i < n; i++)
+		{
+			P[i * n + perm[i]] = 1.0;
+		}
+		return P;
+	}
+
+	/**
+	 * Turns the sequence of interchanges in piv into a permutation vector, so that
+	 * row i of P * A is row perm[i] of A.
+	 * @return perm, or null if no rows were interchanged.
+	 */
+	static int[] permutationVector(int[] piv, int n)
+	{
+		boolean swapped = false;
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			perm[i] = i;
+		}
+		for (int i = 0; i < n; i++)
+		{
+			if (piv[i] != i)
+			{
+				swapped = true;
+				int temp = perm[i];
+				perm[i] = perm[piv[i]];
+				perm[piv[i]] = temp;
+			}
+		}
+		return swapped ? perm : null;
+	}
+
+	/**
+	 * Interchanges columns [c0, c1) of rows r1 and r2.
+	 */
+	static void swapRows(double[] a, int off, int lda, int r1, int r2, int c0, int c1)
+	{
+		Kernels.swap(c1 - c0, a, off + r1 * lda + c0, a, off + r2 * lda + c0);
+	}
+
+	/**
+	 * Applies the row interchanges of the panel at columns [j0, j0 + jb) to the columns [c0, c1)
+	 * outside it and, when solve is set, overwrites those columns of the panel's rows with
+	 * L11^-1 times themselves.
+	 */
+	static void swapAndSolve(double[] a, int off, int lda, int j0, int jb, int[] piv, int c0, int c1, boolean solve)
+	{
+		if (c0 >= c1)
+			return;
+		for (int j = j0; j < j0 + jb; j++)
+		{
+			if (piv[j] != j)
+				swapRows(a, off, lda, j, piv[j], c0, c1);
+		}
+		if (!solve)
+			return;
+		// Forward substitution with the unit lower triangle L11, one row of U12 at a time.
+		for (int i = j0 + 1; i < j0 + jb; i++)
+		{
+			int ri = off + i * lda;
+			for (int k = j0; k < i; k++)
+			{
+				Kernels.axpy(c1 - c0, -a[ri + k], a, off + k * lda + c0, a, ri + c0);
+			}
+		}
+	}
+
+	/**
+	 * Applies one panel's row interchanges to the columns [c0, c1) outside the panel and, when
+	 * solve is set, overwrites those columns of the panel's rows with L11^-1 times themselves.
+	 * Column ranges are independent, so the task splits in half until a range is narrow enough.
+	 */
+	private static class ColumnTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] a;
+		final int off, lda, j0, jb;
+		final int[] piv;
+		final int c0, c1;
+		final boolean solve;
+
+		ColumnTask(double[] a, int off, int lda, int j0, int jb, int[] piv, int c0, int c1, boolean solve)
+		{
+			this.a = a;
+			this.off = off;
+			this.lda = lda;
+			this.j0 = j0;
+			this.jb = jb;
+			this.piv = piv;
+			this.c0 = c0;
+			this.c1 = c1;
+			this.solve = solve;
+		}
+
+		protected void compute()
+		{
+			if (c1 - c0 > 2 * MIN_COLUMNS && getPool() != null)
+			{
+				int mid = (c0 + c1) >>> 1;
+				invokeAll(new ColumnTask(a, off, lda, j0, jb, piv, c0, mid, solve),
+						new ColumnTask(a, off, lda, j0, jb, piv, mid, c1, solve));
+				return;
+			}
+			swapAndSolve(a, off, lda, j0, jb, piv, c0, c1, solve);
+		}
+	}
+
+	/**
+	 * Runs two independent tasks in parallel.
+	 */
+	private static class PairTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final RecursiveAction first;
+		final RecursiveAction second;
+
+		PairTask(RecursiveAction first, RecursiveAction second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		protected void compute()
+		{
+			invokeAll(first, second);
+		}
+	}
+}
\ No newline at end of file
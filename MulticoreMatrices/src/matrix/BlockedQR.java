@@ -0,0 +1,192 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Blocked Householder QR factorization in the style of LAPACK's geqrf.
+ *
+ * Each step reduces a panel of BLOCK columns with one Householder reflector per column,
+ * H = I - tau * v * v^T. The panel's reflectors are then combined in the compact WY form
+ * H_1 * ... * H_b = I - V * T * V^T, where T is a small upper triangular matrix, so that applying
+ * all of them to the trailing columns takes three matrix multiplies instead of b rank 1 updates.
+ * Those multiplies hold nearly all of the flops and run on {@link Gemm} or, given a pool,
+ * {@link ParallelGemm}.
+ */
+class BlockedQR
+{
+	/** Width of the panels. */
+	static final int BLOCK = 32;
+
+	private BlockedQR()
+	{
+	}
+
+	/**
+	 * Factors the m x n row-major matrix A in place as A = Q * R. R is left on and above the
+	 * diagonal, and the Householder vectors below it, each with an implied leading 1.
+	 * @param a    : the row-major array holding A, with row stride n.
+	 * @param m    : the number of rows of A.
+	 * @param n    : the number of columns of A.
+	 * @param tau  : receives the reflectors' scale factors, at least min(m, n) long.
+	 * @param pool : the pool to run the trailing updates on, or null to run sequentially.
+	 */
+	static void factor(double[] a, int m, int n, double[] tau, ForkJoinPool pool)
+	{
+		int k = Math.min(m, n);
+		for (int j0 = 0; j0 < k; j0 += BLOCK)
+		{
+			int jb = Math.min(BLOCK, k - j0);
+			factorPanel(a, m, n, j0, jb, tau);
+			if (j0 + jb < n)
+			{
+				double[] V = reflectors(a, m, n, j0, jb);
+				double[] T = triangularFactor(V, m - j0, jb, tau, j0);
+				applyBlock(V, T, m - j0, jb, true, a, j0 * n + j0 + jb, n, n - j0 - jb, pool);
+			}
+		}
+	}
+
+	/**
+	 * Reduces columns [j0, j0 + jb) of rows [j0, m) one reflector at a time, applying each
+	 * reflector only within the panel.
+	 */
+	private static void factorPanel(double[] a, int m, int n, int j0, int jb, double[] tau)
+	{
+		int end = j0 + jb;
+		double[] w = new double[n];
+		for (int j = j0; j < end; j++)
+		{
+			tau[j] = reflector(a, m, n, j);
+			double t = tau[j];
+			if (t == 0.0 || j + 1 >= end)
+				continue;
+			// w = v^T * A, then A = A - tau * v * w, over the panel's remaining columns
+			int rj = j * n;
+			for (int c = j + 1; c < end; c++)
+				w[c] = a[rj + c];
+			for (int i = j + 1; i < m; i++)
+			{
+				int ri = i * n;
+				Kernels.axpy(end - j - 1, a[ri + j], a, ri + j + 1, w, j + 1);
+			}
+			for (int c = j + 1; c < end; c++)
+				a[rj + c] -= t * w[c];
+			for (int i = j + 1; i < m; i++)
+			{
+				int ri = i * n;
+				Kernels.axpy(end - j - 1, -t * a[ri + j], w, j + 1, a, ri + j + 1);
+			}
+		}
+	}
+
+	/**
+	 * Finds the reflector that zeroes column j below the diagonal, as LAPACK's larfg does.
+	 * The diagonal entry becomes beta = -sign(alpha) * ||x||, and the entries below it become v,
+	 * scaled so that its implied first entry is 1.
+	 * @return tau, or 0 if the column is already 0 below the diagonal.
+	 */
+	static double reflector(double[] a, int m, int n, int j)
+	{
+		double scale = 0.0;
+		for (int i = j + 1; i < m; i++)
+			scale = Math.max(scale, Math.abs(a[i * n + j]));
+		if (scale == 0.0)
+			return 0.0;
+		double ssq = 0.0; // sum of squares, scaled so that it cannot overflow
+		for (int i = j + 1; i < m; i++)
+		{
+			double x = a[i * n + j] / scale;
+			ssq += x * x;
+		}
+		double alpha = a[j * n + j];
+		double beta = -Math.copySign(Math.hypot(alpha, scale * Math.sqrt(ssq)), alpha);
+		double f = 1.0 / (alpha - beta);
+		for (int i = j + 1; i < m; i++)
+			a[i * n + j] *= f;
+		a[j * n + j] = beta;
+		return (beta - alpha) / beta;
+	}
+
+	/**
+	 * Copies the reflectors of the panel at columns [j0, j0 + jb) into an explicit
+	 * (m - j0) x jb row-major V, with the implied ones on its diagonal and zeros above.
+	 */
+	static double[] reflectors(double[] a, int m, int n, int j0, int jb)
+	{
+		int rows = m - j0;
+		double[] V = new double[rows * jb];
+		for (int r = 0; r < rows; r++)
+		{
+			int src = (j0 + r) * n + j0;
+			int dst = r * jb;
+			if (r < jb)
+			{
+				System.arraycopy(a, src, V, dst, r);
+				V[dst + r] = 1.0;
+			}
+			else
+			{
+				System.arraycopy(a, src, V, dst, jb);
+			}
+		}
+		return V;
+	}
+
+	/**
+	 * Forms the jb x jb upper triangular T with H_1 * ... * H_jb = I - V * T * V^T, as LAPACK's
+	 * larft does, column by column: T(0:i, i) = -tau_i * T(0:i, 0:i) * V(:, 0:i)^T * v_i.
+	 */
+	static double[] triangularFactor(double[] V, int rows, int jb, double[] tau, int j0)
+	{
+		double[] T = new double[jb * jb];
+		double[] z = new double[jb];
+		for (int i = 0; i < jb; i++)
+		{
+			double t = tau[j0 + i];
+			T[i * jb + i] = t;
+			if (t == 0.0 || i == 0)
+				continue;
+			for (int p = 0; p < i; p++)
+				z[p] = 0.0;
+			for (int r = i; r < rows; r++)
+			{
+				double vi = V[r * jb + i];
+				if (vi == 0.0)
+					continue;
+				int row = r * jb;
+				for (int p = 0; p < i; p++)
+					z[p] += V[row + p] * vi;
+			}
+			for (int p = 0; p < i; p++)
+			{
+				double sum = 0.0;
+				for (int q = p; q < i; q++)
+					sum += T[p * jb + q] * z[q];
+				T[p * jb + i] = -t * sum;
+			}
+		}
+		return T;
+	}
+
+	/**
+	 * Overwrites the rows x nc matrix C with (I - V * T * V^T)^T * C when transpose is set, or with
+	 * (I - V * T * V^T) * C otherwise: C = C - V * op(T) * (V^T * C).
+	 */
+	static void applyBlock(double[] V, double[] T, int rows, int jb, boolean transpose,
+			double[] c, int cOff, int ldc, int nc, ForkJoinPool pool)
+	{
+		if (nc <= 0)
+			return;
+		double[] W = new double[jb * nc];
+		double[] TW = new double[jb * nc];
+		if (pool == null)
+			Gemm.gemm(true, false, jb, nc, rows, 1.0, V, 0, jb, c, cOff, ldc, 0.0, W, 0, nc);
+		else
+			ParallelGemm.gemm(pool, true, false, jb, nc, rows, 1.0, V, 0, jb, c, cOff, ldc, 0.0, W, 0, nc);
+		Gemm.gemm(transpose, false, jb, nc, jb, 1.0, T, 0, jb, W, 0, nc, 0.0, TW, 0, nc);
+		if (pool == null)
+			Gemm.gemm(false, false, rows, nc, jb, -1.0, V, 0, jb, TW, 0, nc, 1.0, c, cOff, ldc);
+		else
+			ParallelGemm.gemm(pool, false, false, rows, nc, jb, -1.0, V, 0, jb, TW, 0, nc, 1.0, c, cOff, ldc);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A Cholesky factorization A = L * L^T of a symmetric positive-definite matrix.
+ *
+ * L is kept in the lower triangle of one n x n buffer; its upper triangle is never used.
+ * Factoring takes half the flops of an LU factorization, with no pivoting, since a
+ * positive-definite matrix needs none. As with {@link LUFactorization} it is meant to be
+ * factored once and then solved against as often as needed.
+ */
+public class CholeskyFactorization
+{
+	private final double[] l;
+	private final int n;
+	private final ForkJoinPool pool;
+	private Matrix L;
+	private ScheduleStatistics statistics;
+
+	/**
+	 * @param l    : L in the lower triangle of an n x n row-major array.
+	 * @param n    : the number of rows and columns of the factored matrix.
+	 * @param pool : the pool to run later operations on, or null to run them sequentially.
+	 */
+	CholeskyFactorization(double[] l, int n, ForkJoinPool pool)
+	{
+		this.l = l;
+		this.n = n;
+		this.pool = pool;
+	}
+
+	/**
+	 * Copies the lower triangle of a square matrix, which the caller has found symmetric through
+	 * its MatrixStructure.
+	 * @return the copy, with zeros above the diagonal.
+	 */
+	static double[] lowerTriangle(double[] a, int stride, int n)
+	{
+		double[] lower = new double[n * n];
+		for (int i = 0; i < n; i++)
+			System.arraycopy(a, i * stride, lower, i * n, i + 1);
+		return lower;
+	}
+
+	/**
+	 * @return the number of rows and columns of the factored matrix.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the lower triangular factor L.
+	 */
+	public Matrix getL()
+	{
+		if (L == null)
+		{
+			double[] lower = new double[n * n];
+			for (int i = 0; i < n; i++)
+				System.arraycopy(l, i * n, lower, i * n, i + 1);
+			L = new Matrix(lower, n, n);
+		}
+		return L;
+	}
+
+	/**
+	 * @return what the tile scheduler measured while factoring.
+	 */
+	public ScheduleStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	void setStatistics(ScheduleStatistics statistics)
+	{
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Returns the determinant as its sign, which is always 1, and the logarithm of its magnitude,
+	 * twice the sum of the logarithms of L's diagonal.
+	 * @return
+	 */
+	public LogDeterminant logAbsDeterminant()
+	{
+		LogDeterminant det = new LogDeterminant();
+		for (int i = 0; i < n; i++)
+		{
+			double d = l[i * n + i];
+			det.multiply(d);
+			det.multiply(d);
+		}
+		return det;
+	}
+
+	/**
+	 * @return the determinant, which is infinite or 0 if it does not fit in a double.
+	 */
+	public double determinant()
+	{
+		return logAbsDeterminant().value();
+	}
+
+	/**
+	 * Solves A * x = b as L * y = b and then L^T * x = y.
+	 * @param b : the right-hand side, n long. It is not modified.
+	 * @return x, or null if b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		if (b.length != n)
+			return null;
+		double[] x = b.clone();
+		for (int i = 0; i < n; i++) // L * y = b
+		{
+			int r = i * n;
+			x[i] = (x[i] - Kernels.dot(i, l, r, x, 0)) / l[r + i];
+		}
+		for (int i = n - 1; i >= 0; i--) // L^T * x = y, subtracting each x[i] as soon as it is known
+		{
+			int r = i * n;
+			double xi = x[i] / l[r + i];
+			x[i] = xi;
+			Kernels.axpy(i, -xi, l, r, x, 0);
+		}
+		return x;
+	}
+
+	/**
+	 * Solves A * X = B for every column of B at once. When the factorization came from a
+	 * MultiMatrix, the columns of B are split into ranges that are solved in parallel.
+	 * @param B : the right-hand sides, with n rows. It is not modified.
+	 * @return X, or null if B has the wrong number of rows.
+	 */
+	public Matrix solve(Matrix B)
+	{
+		if (B.rows() != n)
+			return null;
+		int m = B.cols();
+		double[] X = new double[n * m];
+		Matrix.copy(B.data(), B.stride(), X, m, n, m);
+		solveInPlace(X, m);
+		return new Matrix(X, n, m);
+	}
+
+	/**
+	 * Overwrites the n x m row-major array X with A^-1 * X, on the pool if there is one.
+	 */
+	void solveInPlace(double[] X, int m)
+	{
+		if (pool == null || (long) n * n * m < 2 * LUFactorization.MIN_SOLVE_WORK)
+			solveInPlace(X, m, 0, m);
+		else
+			pool.invoke(new SolveTask(X, m, 0, m));
+	}
+
+	/**
+	 * Overwrites columns [c0, c1) of the n x m row-major array X with A^-1 times themselves.
+	 */
+	void solveInPlace(double[] X, int m, int c0, int c1)
+	{
+		for (int i = 0; i < n; i++) // L * Y = X
+		{
+			int ri = i * m;
+			for (int k = 0; k < i; k++)
+				Kernels.axpy(c1 - c0, -l[i * n + k], X, k * m + c0, X, ri + c0);
+			double d = l[i * n + i];
+			for (int c = c0; c < c1; c++)
+				X[ri + c] /= d;
+		}
+		for (int i = n - 1; i >= 0; i--) // L^T * X = Y
+		{
+			int ri = i * m;
+			double d = l[i * n + i];
+			for (int c = c0; c < c1; c++)
+				X[ri + c] /= d;
+			for (int k = 0; k < i; k++)
+				Kernels.axpy(c1 - c0, -l[i * n + k], X, ri + c0, X, k * m + c0);
+		}
+	}
+
+	/**
+	 * Solves a range of right-hand side columns, halving it until it holds about
+	 * LUFactorization.MIN_SOLVE_WORK multiply-adds.
+	 */
+	private class SolveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] X;
+		final int m;
+		final int c0;
+		final int c1;
+
+		SolveTask(double[] X, int m, int c0, int c1)
+		{
+			this.X = X;
+			this.m = m;
+			this.c0 = c0;
+			this.c1 = c1;
+		}
+
+		protected void compute()
+		{
+			if (c1 - c0 > 1 && (long) n * n * (c1 - c0) >= 2 * LUFactorization.MIN_SOLVE_WORK)
+			{
+				int mid = (c0 + c1) >>> 1;
+				invokeAll(new SolveTask(X, m, c0, mid), new SolveTask(X, m, mid, c1));
+				return;
+			}
+			solveInPlace(X, m, c0, c1);
+		}
+	}
+}
\ No newline at end of file
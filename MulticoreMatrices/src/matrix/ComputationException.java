@@ -0,0 +1,15 @@
+package matrix;
+
+/**
+ * Thrown when a task a parallel operation was split into fails, or when the thread waiting for
+ * the tasks is interrupted. The task's own exception, if any, is the cause.
+ */
+public class ComputationException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	public ComputationException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package matrix;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The threads a MultiMatrix computes on: a fixed pool of daemon threads for the row operation
+ * tasks and a fork-join pool for the blocked kernels, both sized by one parallelism setting.
+ *
+ * A context is meant to live for as long as the matrices that use it. Matrices derived from
+ * one another (the result of rref, inverse, multiply and so on) share their operands' context,
+ * so no operation creates threads of its own. Threads are started lazily, the first time work
+ * is submitted, and stay up until the context is shut down, after which any matrix still using
+ * it fails with a RejectedExecutionException.
+ *
+ * The pipelined elimination engine, which keeps threads of its own, is created the first time
+ * it is asked for and is shut down with the context.
+ *
+ * Callers that do not want to manage a context can use getDefault(), sized to the number of
+ * processors, or shared(parallelism); neither of those needs to be shut down.
+ */
+public class ComputeContext implements AutoCloseable
+{
+	private static ComputeContext defaultContext;
+	private static final Map<Integer, ComputeContext> sharedContexts = new HashMap<Integer, ComputeContext>();
+
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final ForkJoinPool forkJoinPool;
+	private PipelinedElimination pipeline;
+
+	/**
+	 * Creates a context with one thread per available processor.
+	 */
+	public ComputeContext()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism : the number of threads in each of the context's pools.
+	 */
+	public ComputeContext(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1, not " + parallelism);
+		this.parallelism = parallelism;
+		executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory());
+		forkJoinPool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * @return the process-wide context with one thread per available processor.
+	 */
+	public static synchronized ComputeContext getDefault()
+	{
+		if (defaultContext == null || defaultContext.isShutdown())
+			defaultContext = new ComputeContext();
+		return defaultContext;
+	}
+
+	/**
+	 * Returns the process-wide context with the given parallelism, creating it the first time it is
+	 * asked for. This is what the MultiMatrix constructors that take a thread count use.
+	 * @param parallelism : the number of threads in each of the context's pools.
+	 * @return
+	 */
+	public static synchronized ComputeContext shared(int parallelism)
+	{
+		ComputeContext context = sharedContexts.get(parallelism);
+		if (context == null || context.isShutdown())
+		{
+			context = new ComputeContext(parallelism);
+			sharedContexts.put(parallelism, context);
+		}
+		return context;
+	}
+
+	/**
+	 * @return the number of threads in each of the context's pools.
+	 */
+	public int parallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * @return the pool the row operation tasks are submitted to.
+	 */
+	ExecutorService executor()
+	{
+		return executor;
+	}
+
+	/**
+	 * @return the pool the blocked kernels fork on.
+	 */
+	ForkJoinPool forkJoinPool()
+	{
+		return forkJoinPool;
+	}
+
+	/**
+	 * @return the pipelined elimination engine, with as many workers as the context's parallelism.
+	 */
+	public synchronized PipelinedElimination pipeline()
+	{
+		if (pipeline == null)
+			pipeline = new PipelinedElimination(parallelism);
+		return pipeline;
+	}
+
+	/**
+	 * Stops the context's pools, and its pipelined elimination engine if it has one, once the
+	 * work already submitted has finished.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+		forkJoinPool.shutdown();
+		synchronized (this)
+		{
+			if (pipeline != null)
+				pipeline.shutdown();
+		}
+	}
+
+	/**
+	 * @return true once shutdown() has been called.
+	 */
+	public boolean isShutdown()
+	{
+		return executor.isShutdown();
+	}
+
+	/**
+	 * Same as shutdown(), so a context can be scoped with try-with-resources.
+	 */
+	public void close()
+	{
+		shutdown();
+	}
+}
\ No newline at end of file
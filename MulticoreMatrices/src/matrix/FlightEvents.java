@@ -0,0 +1,267 @@
+package matrix;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Java Flight Recorder events for the MultiMatrix operations, so that a recording shows which
+ * operation, on what size of matrix, the pool threads' time went to, and which elimination steps
+ * of it were slow.
+ *
+ * The project targets Java 7, which has no jdk.jfr, so the events cannot be declared as
+ * subclasses of jdk.jfr.Event. They are defined at run time with jdk.jfr.EventFactory instead,
+ * all through reflection, which costs a few hundred milliseconds the first time. So the events
+ * are off unless the JVM is started with -Dmatrix.jfr=true; AVAILABLE is then a static final
+ * false, and every hook in Metrics folds away as for metrics. With it true, the types are still
+ * only defined on the first operation call, and a call or a step does event work only while a
+ * recording has enabled its event, which costs one reflective check per call otherwise.
+ *
+ * There are three events, in the category Matrix:
+ * - matrix.Operation, from the start to the end of an operation call, with the operation and
+ *   the matrix dimensions. Threshold 10 ms.
+ * - matrix.EliminationStep, one step of an elimination: a pivot of rref or determinant, or a
+ *   block column of the blocked LU. Threshold 1 ms, and no stack trace, as there are n of them.
+ * - matrix.PoolSaturation, an instant: an elimination step found more tasks queued in the
+ *   executor than twice its threads, with the queue length and the busy threads.
+ * The thresholds are defaults; a recording's settings can change them, as for the JDK's events.
+ *
+ * Since events are committed through Method.invoke, the stack traces of matrix.Operation and
+ * matrix.PoolSaturation start with the reflection frames and those of FlightEvents and
+ * Metrics.Span; the operation that made the event is the first frame in MultiMatrix below them.
+ */
+final class FlightEvents
+{
+	/** Whether events were asked for with -Dmatrix.jfr=true; they also need jdk.jfr to exist. */
+	static final boolean AVAILABLE = Boolean.getBoolean("matrix.jfr");
+	/** Queued tasks, per executor thread, above which a step reports the pool saturated. */
+	static final int SATURATION = 2;
+
+	/** The indexes of the events in Types.factories and Types.types. */
+	private static final int OPERATION = 0;
+	private static final int STEP = 1;
+	private static final int POOL_SATURATION = 2;
+
+	/**
+	 * The event types and the methods to drive them, defined when the class is first used, which
+	 * is the first time an operation call asks whether its events are enabled.
+	 */
+	private static final class Types
+	{
+		/** Whether the types were defined: false without jdk.jfr, or if it refused them. */
+		static final boolean DEFINED;
+		/** The jdk.jfr.EventFactory of each event. */
+		static final Object[] factories = new Object[3];
+		/** The jdk.jfr.EventType of each event. */
+		static final Object[] types = new Object[3];
+		static final Method newEvent;
+		static final Method isEnabled;
+		static final Method begin;
+		static final Method end;
+		static final Method shouldCommit;
+		static final Method set;
+		static final Method commit;
+
+		static
+		{
+			Method[] methods = new Method[7];
+			boolean defined = false;
+			try {
+				factories[OPERATION] = define("matrix.Operation", "Matrix Operation", "10 ms", true,
+						String.class, "operation", "Operation",
+						int.class, "rows", "Rows",
+						int.class, "cols", "Columns");
+				factories[STEP] = define("matrix.EliminationStep", "Elimination Step", "1 ms", false,
+						String.class, "operation", "Operation",
+						int.class, "step", "Step",
+						int.class, "rows", "Rows",
+						int.class, "cols", "Columns");
+				factories[POOL_SATURATION] = define("matrix.PoolSaturation", "Pool Saturation", "0 ms", true,
+						String.class, "operation", "Operation",
+						int.class, "queued", "Queued Tasks",
+						int.class, "active", "Active Threads",
+						int.class, "threads", "Pool Threads");
+				Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+				Class<?> event = Class.forName("jdk.jfr.Event");
+				Method getEventType = factory.getMethod("getEventType");
+				for (int i = 0; i < factories.length; i++)
+					types[i] = getEventType.invoke(factories[i]);
+				methods[0] = factory.getMethod("newEvent");
+				methods[1] = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+				methods[2] = event.getMethod("begin");
+				methods[3] = event.getMethod("end");
+				methods[4] = event.getMethod("shouldCommit");
+				methods[5] = event.getMethod("set", int.class, Object.class);
+				methods[6] = event.getMethod("commit");
+				defined = true;
+			} catch (Throwable t) { // no jdk.jfr, or it refused the definitions: no events
+				defined = false;
+			}
+			DEFINED = defined;
+			newEvent = methods[0];
+			isEnabled = methods[1];
+			begin = methods[2];
+			end = methods[3];
+			shouldCommit = methods[4];
+			set = methods[5];
+			commit = methods[6];
+		}
+	}
+
+	private FlightEvents()
+	{
+	}
+
+	/**
+	 * Defines an event type through EventFactory.create(annotations, fields).
+	 * @param fields : the type, name and label of each field, in threes.
+	 * @return the EventFactory.
+	 */
+	private static Object define(String name, String label, String threshold, boolean stackTrace, Object... fields)
+			throws Exception
+	{
+		List<Object> annotations = new ArrayList<Object>();
+		annotations.add(annotation("Name", name));
+		annotations.add(annotation("Label", label));
+		annotations.add(annotation("Category", new String[] {"Matrix"}));
+		annotations.add(annotation("Threshold", threshold));
+		annotations.add(annotation("StackTrace", stackTrace));
+		Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+		Constructor<?> field = descriptor.getConstructor(Class.class, String.class, List.class);
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < fields.length; i += 3)
+		{
+			values.add(field.newInstance(fields[i], fields[i + 1],
+					Arrays.asList(annotation("Label", fields[i + 2]))));
+		}
+		Method create = Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class);
+		return create.invoke(null, annotations, values);
+	}
+
+	/**
+	 * @return a jdk.jfr.AnnotationElement for the annotation jdk.jfr.type with the given value.
+	 */
+	private static Object annotation(String type, Object value) throws Exception
+	{
+		Class<? extends Annotation> annotation = Class.forName("jdk.jfr." + type).asSubclass(Annotation.class);
+		Constructor<?> element = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+		return element.newInstance(annotation, value);
+	}
+
+	/**
+	 * @return whether a running recording has the event enabled, defining the types the first
+	 * 	time it is asked.
+	 */
+	private static boolean enabled(int event)
+	{
+		if (!AVAILABLE || !Types.DEFINED)
+			return false;
+		try {
+			return (Boolean) Types.isEnabled.invoke(Types.types[event]);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether a running recording has the operation or the elimination step event
+	 * 	enabled, so that an operation call has events to carry.
+	 */
+	static boolean recording()
+	{
+		return AVAILABLE && (enabled(OPERATION) || enabled(STEP));
+	}
+
+	/**
+	 * @return whether a running recording has the elimination step event enabled.
+	 */
+	static boolean recordingSteps()
+	{
+		return AVAILABLE && enabled(STEP);
+	}
+
+	/**
+	 * Creates an event and starts its clock.
+	 * @return the event, or null if there are no events or no recording wants this one.
+	 */
+	private static Object begin(int event)
+	{
+		if (!enabled(event))
+			return null;
+		try {
+			Object e = Types.newEvent.invoke(Types.factories[event]);
+			Types.begin.invoke(e);
+			return e;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stops an event's clock and, if it lasted at least its threshold, fills in its fields and
+	 * commits it to the recording.
+	 * @param event : the event from begin, or null to do nothing.
+	 */
+	private static void commit(Object event, Object... values)
+	{
+		if (event == null)
+			return;
+		try {
+			Types.end.invoke(event);
+			if (!(Boolean) Types.shouldCommit.invoke(event))
+				return;
+			for (int i = 0; i < values.length; i++)
+				Types.set.invoke(event, i, values[i]);
+			Types.commit.invoke(event);
+		} catch (Exception e) { // a failed event must never fail the computation
+		}
+	}
+
+	/**
+	 * @return a started matrix.Operation event, or null.
+	 */
+	static Object beginOperation()
+	{
+		return begin(OPERATION);
+	}
+
+	static void commitOperation(Object event, String operation, int rows, int cols)
+	{
+		commit(event, operation, rows, cols);
+	}
+
+	/**
+	 * @return a started matrix.EliminationStep event, or null.
+	 */
+	static Object beginStep()
+	{
+		return begin(STEP);
+	}
+
+	static void commitStep(Object event, String operation, int step, int rows, int cols)
+	{
+		commit(event, operation, step, rows, cols);
+	}
+
+	/**
+	 * Records a matrix.PoolSaturation event if more than SATURATION tasks per thread are queued
+	 * in the executor. Only a ThreadPoolExecutor, which the contexts use, can tell.
+	 */
+	static void checkSaturation(ExecutorService executor, String operation)
+	{
+		if (!AVAILABLE || !(executor instanceof ThreadPoolExecutor))
+			return;
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+		int queued = pool.getQueue().size();
+		int threads = pool.getMaximumPoolSize();
+		if (queued <= SATURATION * threads)
+			return;
+		Object event = begin(POOL_SATURATION);
+		commit(event, operation == null ? "" : operation, queued, pool.getActiveCount(), threads);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+package matrix;
+
+/**
+ * Blocked general matrix multiply on row-major arrays, computing
+ * C = alpha * op(A) * op(B) + beta * C where op(X) is X or its transpose.
+ *
+ * The loops follow the usual layout of an optimized BLAS: a KC x NC block of op(B)
+ * is packed once into NR wide column panels and kept in L2/L3, an MC x KC block of
+ * op(A) is packed into MR tall row panels that stay in L1/L2, and a register
+ * micro-kernel computes one MR x NR tile of C from one panel of each.
+ * Packing makes every inner loop walk memory with unit stride, no matter how
+ * A and B are laid out or transposed.
+ */
+class Gemm
+{
+	/** Rows of C computed by one micro-kernel call. */
+	static final int MR = 4;
+	/** Columns of C computed by one micro-kernel call. */
+	static final int NR = 4;
+	/** Rows of op(A) packed at once; an MC x KC block is 256 KB, sized for L2. */
+	static final int MC = 128;
+	/** Depth of the packed panels; one MR x KC panel of A plus one KC x NR panel of B fits in L1. */
+	static final int KC = 256;
+	/** Columns of op(B) packed at once. */
+	static final int NC = 2048;
+
+	private Gemm()
+	{
+	}
+
+	/**
+	 * Computes C = alpha * op(A) * op(B) + beta * C, where op(A) is m x k, op(B) is k x n and C is m x n.
+	 * When beta is 0, C is not read, so it may hold anything beforehand.
+	 * @param transA : whether to use the transpose of A.
+	 * @param transB : whether to use the transpose of B.
+	 * @param m      : the number of rows of op(A) and C.
+	 * @param n      : the number of columns of op(B) and C.
+	 * @param k      : the number of columns of op(A) and rows of op(B).
+	 * @param alpha  : the amount to scale op(A) * op(B) by.
+	 * @param a      : the row-major array holding A.
+	 * @param aOff   : the index of A's first element in a.
+	 * @param lda    : the row stride of A.
+	 * @param b      : the row-major array holding B.
+	 * @param bOff   : the index of B's first element in b.
+	 * @param ldb    : the row stride of B.
+	 * @param beta   : the amount to scale C by before adding the product.
+	 * @param c      : the row-major array holding C, which receives the result.
+	 * @param cOff   : the index of C's first element in c.
+	 * @param ldc    : the row stride of C.
+	 */
+	static void gemm(boolean transA, boolean transB, int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc)
+	{
+		if (m <= 0 || n <= 0)
+			return;
+		if (beta != 1.0)
+			scale(m, n, beta, c, cOff, ldc);
+		if (alpha == 0.0 || k <= 0)
+			return;
+
+		int kcMax = Math.min(KC, k);
+		double[] aPack = new double[roundUp(Math.min(MC, m), MR) * kcMax];
+		double[] bPack = new double[roundUp(Math.min(NC, n), NR) * kcMax];
+
+		for (int jc = 0; jc < n; jc += NC)
+		{
+			int nc = Math.min(NC, n - jc);
+			for (int pc = 0; pc < k; pc += KC)
+			{
+				int kc = Math.min(KC, k - pc);
+				packB(transB, b, bOff, ldb, pc, jc, kc, nc, bPack);
+				for (int ic = 0; ic < m; ic += MC)
+				{
+					int mc = Math.min(MC, m - ic);
+					packA(transA, a, aOff, lda, ic, pc, mc, kc, alpha, aPack);
+					for (int jr = 0; jr < nc; jr += NR)
+					{
+						int nr = Math.min(NR, nc - jr);
+						for (int ir = 0; ir < mc; ir += MR)
+						{
+							int mr = Math.min(MR, mc - ir);
+							microKernel(kc, aPack, ir * kc, bPack, jr * kc,
+									c, cOff + (ic + ir) * ldc + jc + jr, ldc, mr, nr);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scales an m x n block of C by beta. A beta of 0 clears the block rather than multiplying,
+	 * so that whatever C held before, including NaN, does not leak into the result.
+	 */
+	static void scale(int m, int n, double beta, double[] c, int cOff, int ldc)
+	{
+		for (int i = 0; i < m; i++)
+		{
+			int r = cOff + i * ldc;
+			if (beta == 0.0)
+			{
+				for (int j = 0; j < n; j++)
+					c[r + j] = 0.0;
+			}
+			else
+			{
+				for (int j = 0; j < n; j++)
+					c[r + j] *= beta;
+			}
+		}
+	}
+
+	/**
+	 * Packs the mc x kc block of op(A) starting at (ic, pc) into MR tall row panels,
+	 * each stored column by column, scaling every element by alpha on the way.
+	 * Rows past mc in the last panel are padded with zeros so the micro-kernel never branches.
+	 */
+	private static void packA(boolean transA, double[] a, int aOff, int lda, int ic, int pc,
+			int mc, int kc, double alpha, double[] aPack)
+	{
+		int idx = 0;
+		for (int ir = 0; ir < mc; ir += MR)
+		{
+			int mr = Math.min(MR, mc - ir);
+			for (int p = 0; p < kc; p++)
+			{
+				for (int i = 0; i < mr; i++)
+				{
+					int r = ic + ir + i;
+					int q = pc + p;
+					double val = transA ? a[aOff + q * lda + r] : a[aOff + r * lda + q];
+					aPack[idx++] = alpha * val;
+				}
+				for (int i = mr; i < MR; i++)
+					aPack[idx++] = 0.0;
+			}
+		}
+	}
+
+	/**
+	 * Packs the kc x nc block of op(B) starting at (pc, jc) into NR wide column panels,
+	 * each stored row by row. Columns past nc in the last panel are padded with zeros.
+	 */
+	private static void packB(boolean transB, double[] b, int bOff, int ldb, int pc, int jc,
+			int kc, int nc, double[] bPack)
+	{
+		int idx = 0;
+		for (int jr = 0; jr < nc; jr += NR)
+		{
+			int nr = Math.min(NR, nc - jr);
+			for (int p = 0; p < kc; p++)
+			{
+				int q = pc + p;
+				if (!transB)
+				{
+					int r = bOff + q * ldb + jc + jr;
+					for (int j = 0; j < nr; j++)
+						bPack[idx++] = b[r + j];
+				}
+				else
+				{
+					for (int j = 0; j < nr; j++)
+						bPack[idx++] = b[bOff + (jc + jr + j) * ldb + q];
+				}
+				for (int j = nr; j < NR; j++)
+					bPack[idx++] = 0.0;
+			}
+		}
+	}
+
+	/**
+	 * Adds the product of one packed MR x kc panel of A and one packed kc x NR panel of B
+	 * to the mr x nr tile of C at cIdx. The full MR x NR tile is accumulated in locals,
+	 * which the JIT keeps in registers, and only the valid mr x nr corner is written back.
+	 */
+	private static void microKernel(int kc, double[] aPack, int aIdx, double[] bPack, int bIdx,
+			double[] c, int cIdx, int ldc, int mr, int nr)
+	{
+		double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+		double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+		double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+		double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+		for (int p = 0; p < kc; p++)
+		{
+			double a0 = aPack[aIdx];
+			double a1 = aPack[aIdx + 1];
+			double a2 = aPack[aIdx + 2];
+			double a3 = aPack[aIdx + 3];
+			double b0 = bPack[bIdx];
+			double b1 = bPack[bIdx + 1];
+			double b2 = bPack[bIdx + 2];
+			double b3 = bPack[bIdx + 3];
+			c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+			c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+			c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+			c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+			aIdx += MR;
+			bIdx += NR;
+		}
+
+		if (mr == MR && nr == NR)
+		{
+			int r = cIdx;
+			c[r] += c00; c[r + 1] += c01; c[r + 2] += c02; c[r + 3] += c03;
+			r += ldc;
+			c[r] += c10; c[r + 1] += c11; c[r + 2] += c12; c[r + 3] += c13;
+			r += ldc;
+			c[r] += c20; c[r + 1] += c21; c[r + 2] += c22; c[r + 3] += c23;
+			r += ldc;
+			c[r] += c30; c[r + 1] += c31; c[r + 2] += c32; c[r + 3] += c33;
+			return;
+		}
+
+		// Edge tile: spill the accumulators and copy back only what lies inside C.
+		double[] tile = {
+				c00, c01, c02, c03,
+				c10, c11, c12, c13,
+				c20, c21, c22, c23,
+				c30, c31, c32, c33 };
+		for (int i = 0; i < mr; i++)
+		{
+			for (int j = 0; j < nr; j++)
+			{
+				c[cIdx + i * ldc + j] += tile[i * NR + j];
+			}
+		}
+	}
+
+	private static int roundUp(int value, int multiple)
+	{
+		return (value + multiple - 1) / multiple * multiple;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package matrix;
+
+/**
+ * The level 1 vector kernels the elimination and substitution loops are built from: axpy, scal,
+ * dot and swap on strided slices of double arrays, in the manner of the BLAS.
+ *
+ * Each loop is unrolled by four over unit-stride primitive arrays, which is the shape HotSpot's
+ * superword pass turns into SIMD instructions of whatever width the CPU it runs on supports, and
+ * dot keeps four independent partial sums, so that consecutive additions do not each wait for
+ * the one before. The remainder of each loop runs one element at a time.
+ */
+class Kernels
+{
+	private Kernels()
+	{
+	}
+
+	/**
+	 * y = y + alpha * x over n elements.
+	 */
+	static void axpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff)
+	{
+		if (alpha == 0.0)
+			return;
+		int i = 0;
+		for (; i <= n - 4; i += 4)
+		{
+			y[yOff + i] += alpha * x[xOff + i];
+			y[yOff + i + 1] += alpha * x[xOff + i + 1];
+			y[yOff + i + 2] += alpha * x[xOff + i + 2];
+			y[yOff + i + 3] += alpha * x[xOff + i + 3];
+		}
+		for (; i < n; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	/**
+	 * x = alpha * x over n elements.
+	 */
+	static void scal(int n, double alpha, double[] x, int off)
+	{
+		int i = 0;
+		for (; i <= n - 4; i += 4)
+		{
+			x[off + i] *= alpha;
+			x[off + i + 1] *= alpha;
+			x[off + i + 2] *= alpha;
+			x[off + i + 3] *= alpha;
+		}
+		for (; i < n; i++)
+			x[off + i] *= alpha;
+	}
+
+	/**
+	 * @return the dot product of x and y over n elements.
+	 */
+	static double dot(int n, double[] x, int xOff, double[] y, int yOff)
+	{
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		int i = 0;
+		for (; i <= n - 4; i += 4)
+		{
+			s0 += x[xOff + i] * y[yOff + i];
+			s1 += x[xOff + i + 1] * y[yOff + i + 1];
+			s2 += x[xOff + i + 2] * y[yOff + i + 2];
+			s3 += x[xOff + i + 3] * y[yOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += x[xOff + i] * y[yOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Exchanges n elements of x and y.
+	 */
+	static void swap(int n, double[] x, int xOff, double[] y, int yOff)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			double temp = x[xOff + i];
+			x[xOff + i] = y[yOff + i];
+			y[yOff + i] = temp;
+		}
+	}
+
+	/**
+	 * y = y + alpha * x + 0.0 over n elements: axpy for the row operations of rref and the
+	 * determinant, which have always added 0.0 so that an entry that comes out as -0.0 is stored
+	 * as 0.0 and prints as one.
+	 */
+	static void rowAxpy(int n, double alpha, double[] x, int xOff, double[] y, int yOff)
+	{
+		int i = 0;
+		for (; i <= n - 4; i += 4)
+		{
+			y[yOff + i] = y[yOff + i] + alpha * x[xOff + i] + 0.0;
+			y[yOff + i + 1] = y[yOff + i + 1] + alpha * x[xOff + i + 1] + 0.0;
+			y[yOff + i + 2] = y[yOff + i + 2] + alpha * x[xOff + i + 2] + 0.0;
+			y[yOff + i + 3] = y[yOff + i + 3] + alpha * x[xOff + i + 3] + 0.0;
+		}
+		for (; i < n; i++)
+			y[yOff + i] = y[yOff + i] + alpha * x[xOff + i] + 0.0;
+	}
+
+	/**
+	 * x = alpha * x + 0.0 over n elements, scal for the row operations, see rowAxpy.
+	 */
+	static void rowScal(int n, double alpha, double[] x, int off)
+	{
+		int i = 0;
+		for (; i <= n - 4; i += 4)
+		{
+			x[off + i] = x[off + i] * alpha + 0.0;
+			x[off + i + 1] = x[off + i + 1] * alpha + 0.0;
+			x[off + i + 2] = x[off + i + 2] * alpha + 0.0;
+			x[off + i + 3] = x[off + i + 3] * alpha + 0.0;
+		}
+		for (; i < n; i++)
+			x[off + i] = x[off + i] * alpha + 0.0;
+	}
+}
\ No newline at end of file
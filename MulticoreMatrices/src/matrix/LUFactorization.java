@@ -0,0 +1,476 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A compact LUP factorization P * A = L * U of a square matrix.
+ *
+ * L and U share one n x n buffer, L's multipliers below the diagonal (its unit diagonal is implied)
+ * and U on and above it, and P is kept as the LAPACK style pivot vector rather than as a matrix.
+ * That is the same memory as A itself. Dense L, U and P matrices are only built if asked for.
+ *
+ * A factorization is meant to be reused: factor once, then call solve for as many right-hand
+ * sides as needed, each costing O(n^2) instead of the O(n^3) of factoring again.
+ */
+public class LUFactorization
+{
+	private final double[] lu;
+	private final int[] piv;
+	private final int n;
+	private final int singularColumn;
+	private final ForkJoinPool pool;
+	/** Right-hand side ranges with less work than this are not split further when solving in parallel. */
+	static final long MIN_SOLVE_WORK = 1L << 16;
+	/** Diagonal ranges shorter than this are reduced sequentially. */
+	static final int MIN_DIAGONAL = 1 << 12;
+	/** The relative spacing of doubles near 1, the unit of the singularity threshold. */
+	static final double EPSILON = Math.ulp(1.0);
+	private Matrix L;
+	private Matrix U;
+	private Matrix P;
+	private ScheduleStatistics statistics;
+
+	/**
+	 * @param lu             : the packed factors, n x n and row-major.
+	 * @param piv            : the pivot vector, where row i was interchanged with row piv[i] at step i.
+	 * @param n              : the number of rows and columns of the factored matrix.
+	 * @param singularColumn : the first column with a 0 pivot, or -1 if there is none.
+	 * @param pool           : the pool to run later operations on, or null to run them sequentially.
+	 */
+	LUFactorization(double[] lu, int[] piv, int n, int singularColumn, ForkJoinPool pool)
+	{
+		this.lu = lu;
+		this.piv = piv;
+		this.n = n;
+		this.singularColumn = singularColumn;
+		this.pool = pool;
+	}
+
+	/**
+	 * Factors the n x n matrix held in a, overwriting a with the packed factors.
+	 * @param a    : the row-major matrix to factor, which becomes the factorization's buffer.
+	 * @param n    : the number of rows and columns of a.
+	 * @param pool : the pool to factor on, or null to factor sequentially.
+	 */
+	static LUFactorization factor(double[] a, int n, ForkJoinPool pool)
+	{
+		int[] piv = new int[n];
+		int singular = BlockedLU.factor(a, 0, n, n, piv, pool);
+		return new LUFactorization(a, piv, n, singular, pool);
+	}
+
+	/**
+	 * @return the number of rows and columns of the factored matrix.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @return true if some pivot is exactly 0, so the matrix is singular.
+	 */
+	public boolean isSingular()
+	{
+		return singularColumn >= 0;
+	}
+
+	/**
+	 * Tells whether the matrix is singular to working precision, that is whether some pivot is no
+	 * larger in magnitude than tolerance times the largest entry of U. Rounding leaves a pivot that
+	 * should be 0 as a tiny non-zero value, so an exact test misses most singular matrices.
+	 * @param tolerance : the threshold relative to the largest entry of U, n * EPSILON being the usual choice.
+	 * @return true if a pivot is at or below the threshold.
+	 */
+	public boolean isSingular(double tolerance)
+	{
+		if (isSingular())
+			return true;
+		double max = 0.0;
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = i; j < n; j++)
+				max = Math.max(max, Math.abs(lu[i * n + j]));
+		}
+		double threshold = tolerance * max;
+		for (int i = 0; i < n; i++)
+		{
+			if (Math.abs(lu[i * n + i]) <= threshold)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if any rows were interchanged, that is if P is not the identity.
+	 */
+	public boolean hasRowInterchanges()
+	{
+		for (int i = 0; i < n; i++)
+		{
+			if (piv[i] != i)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return a copy of the pivot vector: at step i, row i was interchanged with row piv[i].
+	 */
+	public int[] getPivots()
+	{
+		return piv.clone();
+	}
+
+	/**
+	 * @return the unit lower triangular factor L.
+	 */
+	public Matrix getL()
+	{
+		if (L == null)
+			L = new Matrix(BlockedLU.lower(lu, n), n, n);
+		return L;
+	}
+
+	/**
+	 * @return the upper triangular factor U.
+	 */
+	public Matrix getU()
+	{
+		if (U == null)
+			U = new Matrix(BlockedLU.upper(lu, n), n, n);
+		return U;
+	}
+
+	/**
+	 * @return the permutation matrix P, which is the identity if no rows were interchanged.
+	 */
+	public Matrix getP()
+	{
+		if (P == null)
+		{
+			double[] perm = BlockedLU.permutation(piv, n);
+			if (perm == null)
+			{
+				perm = new double[n * n];
+				for (int i = 0; i < n; i++)
+					perm[i * n + i] = 1.0;
+			}
+			P = new Matrix(perm, n, n);
+		}
+		return P;
+	}
+
+	/**
+	 * @return what the tile scheduler measured while factoring, or null if the factorization
+	 * 	was not computed by one.
+	 */
+	public ScheduleStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	void setStatistics(ScheduleStatistics statistics)
+	{
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return the packed factors, shared with this object.
+	 */
+	double[] packed()
+	{
+		return lu;
+	}
+
+	/**
+	 * @return the pool later operations run on, or null.
+	 */
+	ForkJoinPool pool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Returns the determinant of the factored matrix, the product of U's diagonal
+	 * with its sign flipped once for every row interchange. The product is formed without
+	 * intermediate overflow, but is still infinite or 0 if the determinant itself does not fit
+	 * in a double; use logAbsDeterminant() then.
+	 * @return
+	 */
+	public double determinant()
+	{
+		return logAbsDeterminant().value();
+	}
+
+	/**
+	 * Returns the determinant as its sign and the logarithm of its magnitude, which cannot overflow.
+	 * When the factorization carries a pool and the matrix is large, the diagonal is reduced in parallel.
+	 * @return
+	 */
+	public LogDeterminant logAbsDeterminant()
+	{
+		if (isSingular())
+		{
+			LogDeterminant zero = new LogDeterminant();
+			zero.multiply(0.0);
+			return zero;
+		}
+		if (pool == null || n < 2 * MIN_DIAGONAL)
+			return diagonalProduct(0, n);
+		return pool.invoke(new DiagonalTask(0, n));
+	}
+
+	/**
+	 * Multiplies U's diagonal over [i0, i1), flipping the sign for each interchange in that range.
+	 */
+	private LogDeterminant diagonalProduct(int i0, int i1)
+	{
+		LogDeterminant det = new LogDeterminant();
+		for (int i = i0; i < i1; i++)
+		{
+			det.multiply(lu[i * n + i]);
+			if (piv[i] != i)
+				det.negate();
+		}
+		return det;
+	}
+
+	/**
+	 * Solves A * x = b.
+	 * @param b : the right-hand side, n long. It is not modified.
+	 * @return x, or null if A is singular or b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		if (isSingular() || b.length != n)
+			return null;
+		Metrics.phase(Metrics.Phase.BACK_SUBSTITUTION);
+		Metrics.flops(2.0 * n * n);
+		double[] x = b.clone();
+		for (int i = 0; i < n; i++) // x = P * b
+		{
+			if (piv[i] != i)
+			{
+				double temp = x[i];
+				x[i] = x[piv[i]];
+				x[piv[i]] = temp;
+			}
+		}
+		for (int i = 0; i < n; i++) // L * y = P * b
+			x[i] -= Kernels.dot(i, lu, i * n, x, 0);
+		for (int i = n - 1; i >= 0; i--) // U * x = y
+		{
+			int r = i * n;
+			x[i] = (x[i] - Kernels.dot(n - i - 1, lu, r + i + 1, x, i + 1)) / lu[r + i];
+		}
+		return x;
+	}
+
+	/**
+	 * Solves A * X = B for every column of B at once. When the factorization came from a
+	 * MultiMatrix, the columns of B are split into ranges that are solved in parallel.
+	 * @param B : the right-hand sides, with n rows. It is not modified.
+	 * @return X, or null if A is singular or B has the wrong number of rows.
+	 */
+	public Matrix solve(Matrix B)
+	{
+		if (isSingular() || B.rows() != n)
+			return null;
+		int m = B.cols();
+		double[] X = new double[n * m];
+		Matrix.copy(B.data(), B.stride(), X, m, n, m);
+		solveInPlace(X, m);
+		return new Matrix(X, n, m);
+	}
+
+	/**
+	 * Overwrites the n x m row-major array X with A^-1 * X, on the pool if there is one.
+	 */
+	void solveInPlace(double[] X, int m)
+	{
+		Metrics.phase(Metrics.Phase.BACK_SUBSTITUTION);
+		Metrics.flops(2.0 * n * n * m);
+		if (pool == null || (long) n * n * m < 2 * MIN_SOLVE_WORK)
+			solveInPlace(X, m, 0, m);
+		else
+			pool.invoke(new SolveTask(X, m, 0, m));
+	}
+
+	/**
+	 * Overwrites columns [c0, c1) of the n x m row-major array X with A^-1 times themselves.
+	 * Columns are independent, so disjoint ranges may be solved concurrently.
+	 */
+	void solveInPlace(double[] X, int m, int c0, int c1)
+	{
+		for (int i = 0; i < n; i++) // X = P * X
+		{
+			if (piv[i] != i)
+				BlockedLU.swapRows(X, 0, m, i, piv[i], c0, c1);
+		}
+		for (int i = 0; i < n; i++) // L * Y = P * X, one row of Y at a time
+		{
+			int ri = i * m;
+			for (int k = 0; k < i; k++)
+				Kernels.axpy(c1 - c0, -lu[i * n + k], X, k * m + c0, X, ri + c0);
+		}
+		for (int i = n - 1; i >= 0; i--) // U * X = Y
+		{
+			int ri = i * m;
+			for (int k = i + 1; k < n; k++)
+				Kernels.axpy(c1 - c0, -lu[i * n + k], X, k * m + c0, X, ri + c0);
+			double pivot = lu[i * n + i];
+			for (int c = c0; c < c1; c++)
+				X[ri + c] /= pivot;
+		}
+	}
+
+	/**
+	 * Returns the inverse of the factored matrix as A^-1 = U^-1 * L^-1 * P, in the manner of LAPACK's getri.
+	 *
+	 * Row i of U^-1 * L^-1 is found by solving x * U = e_i and then y * L = x, and P is applied as
+	 * the recorded interchanges on the columns of y in reverse order. Rows are independent of one
+	 * another and need only the packed factors, so when the factorization carries a pool, ranges of
+	 * rows are computed in parallel, straight into the result.
+	 * @return the inverse, or null if the matrix is singular to working precision.
+	 */
+	public Matrix inverse()
+	{
+		if (isSingular(n * EPSILON))
+			return null;
+		Metrics.phase(Metrics.Phase.BACK_SUBSTITUTION);
+		Metrics.flops(4.0 * n * n * n / 3);
+		double[] X = new double[n * n];
+		if (pool == null || (long) n * n * n < 2 * MIN_SOLVE_WORK)
+			invertRows(X, 0, n);
+		else
+			pool.invoke(new InverseTask(X, 0, n));
+		return new Matrix(X, n, n);
+	}
+
+	/**
+	 * Writes rows [r0, r1) of A^-1 into the n x n row-major array X, which must hold zeros there.
+	 */
+	void invertRows(double[] X, int r0, int r1)
+	{
+		for (int i = r0; i < r1; i++)
+		{
+			int r = i * n;
+			X[r + i] = 1.0;
+			for (int k = i; k < n; k++) // x * U = e_i, x is 0 left of column i
+			{
+				int rk = k * n;
+				double x = X[r + k] / lu[rk + k];
+				X[r + k] = x;
+				Kernels.axpy(n - k - 1, -x, lu, rk + k + 1, X, r + k + 1);
+			}
+			for (int k = n - 1; k > 0; k--) // y * L = x, from the last column back
+			{
+				Kernels.axpy(k, -X[r + k], lu, k * n, X, r);
+			}
+			for (int k = n - 1; k >= 0; k--) // y * P, undoing the last interchange first
+			{
+				int p = piv[k];
+				if (p != k)
+				{
+					double temp = X[r + k];
+					X[r + k] = X[r + p];
+					X[r + p] = temp;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reduces a range of the diagonal, halving it until it is shorter than MIN_DIAGONAL.
+	 */
+	private class DiagonalTask extends RecursiveTask<LogDeterminant>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int i0;
+		final int i1;
+
+		DiagonalTask(int i0, int i1)
+		{
+			this.i0 = i0;
+			this.i1 = i1;
+		}
+
+		protected LogDeterminant compute()
+		{
+			if (i1 - i0 < 2 * MIN_DIAGONAL)
+				return diagonalProduct(i0, i1);
+			int mid = (i0 + i1) >>> 1;
+			DiagonalTask right = new DiagonalTask(mid, i1);
+			right.fork();
+			LogDeterminant det = new DiagonalTask(i0, mid).compute();
+			det.multiply(right.join());
+			return det;
+		}
+	}
+
+	/**
+	 * Computes a range of rows of the inverse, halving it until it holds about MIN_SOLVE_WORK multiply-adds.
+	 */
+	private class InverseTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] X;
+		final int r0;
+		final int r1;
+
+		InverseTask(double[] X, int r0, int r1)
+		{
+			this.X = X;
+			this.r0 = r0;
+			this.r1 = r1;
+		}
+
+		protected void compute()
+		{
+			if (r1 - r0 > 1 && (long) n * n * (r1 - r0) >= 2 * MIN_SOLVE_WORK)
+			{
+				int mid = (r0 + r1) >>> 1;
+				invokeAll(new InverseTask(X, r0, mid), new InverseTask(X, mid, r1));
+				return;
+			}
+			invertRows(X, r0, r1);
+		}
+	}
+
+	/**
+	 * Solves a range of right-hand side columns, halving it until it holds about MIN_SOLVE_WORK multiply-adds.
+	 */
+	private class SolveTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] X;
+		final int m;
+		final int c0;
+		final int c1;
+
+		SolveTask(double[] X, int m, int c0, int c1)
+		{
+			this.X = X;
+			this.m = m;
+			this.c0 = c0;
+			this.c1 = c1;
+		}
+
+		protected void compute()
+		{
+			if (c1 - c0 > 1 && (long) n * n * (c1 - c0) >= 2 * MIN_SOLVE_WORK)
+			{
+				int mid = (c0 + c1) >>> 1;
+				invokeAll(new SolveTask(X, m, c0, mid), new SolveTask(X, m, mid, c1));
+				return;
+			}
+			solveInPlace(X, m, c0, c1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package matrix;
+
+/**
+ * A determinant kept as its sign and the logarithm of its magnitude, so that it can neither
+ * overflow nor underflow. The determinant of a random n x n matrix grows roughly like n!, which
+ * passes Double.MAX_VALUE well before n = 200.
+ *
+ * Internally the magnitude is an exact binary mantissa and exponent, det = sign * mantissa * 2^exponent
+ * with the mantissa in [1, 2). Multiplying in a factor costs one multiply and a renormalization,
+ * with no logarithm per factor, and partial products from disjoint ranges of a diagonal combine
+ * with {@link #multiply(LogDeterminant)}, so the reduction can be split across threads.
+ */
+public class LogDeterminant
+{
+	private int sign;
+	private double mantissa;
+	private long exponent;
+
+	/**
+	 * Creates the empty product, 1.
+	 */
+	LogDeterminant()
+	{
+		sign = 1;
+		mantissa = 1.0;
+		exponent = 0;
+	}
+
+	/**
+	 * Multiplies the product by one factor.
+	 */
+	void multiply(double factor)
+	{
+		if (factor == 0.0)
+		{
+			sign = 0;
+			return;
+		}
+		if (factor < 0)
+			sign = -sign;
+		int e = Math.getExponent(factor);
+		if (e < Double.MIN_EXPONENT) // subnormal, scale it into the normal range first
+			e = Math.getExponent(factor * 0x1p52) - 52;
+		mantissa *= Math.abs(Math.scalb(factor, -e));
+		exponent += e;
+		normalize();
+	}
+
+	/**
+	 * Multiplies the product by another partial product.
+	 */
+	void multiply(LogDeterminant other)
+	{
+		sign *= other.sign;
+		mantissa *= other.mantissa;
+		exponent += other.exponent;
+		normalize();
+	}
+
+	/**
+	 * Flips the sign, for a row interchange.
+	 */
+	void negate()
+	{
+		sign = -sign;
+	}
+
+	private void normalize()
+	{
+		int e = Math.getExponent(mantissa);
+		if (e != 0)
+		{
+			mantissa = Math.scalb(mantissa, -e);
+			exponent += e;
+		}
+	}
+
+	/**
+	 * @return -1, 0 or 1, the sign of the determinant.
+	 */
+	public int sign()
+	{
+		return sign;
+	}
+
+	/**
+	 * @return the natural logarithm of the determinant's magnitude, or negative infinity if it is 0.
+	 */
+	public double logAbs()
+	{
+		if (sign == 0)
+			return Double.NEGATIVE_INFINITY;
+		return Math.log(mantissa) + exponent * Math.log(2.0);
+	}
+
+	/**
+	 * @return the mantissa m of det = sign * m * 2^exponent, in [1, 2), or 0 if the determinant is 0.
+	 */
+	public double mantissa()
+	{
+		return sign == 0 ? 0.0 : mantissa;
+	}
+
+	/**
+	 * @return the binary exponent of the determinant's magnitude, or 0 if the determinant is 0.
+	 */
+	public long exponent()
+	{
+		return sign == 0 ? 0 : exponent;
+	}
+
+	/**
+	 * Returns the determinant as a plain double, which is infinite or 0 when it is out of range.
+	 * @return
+	 */
+	public double value()
+	{
+		if (sign == 0)
+			return 0.0;
+		double e = Math.max(Math.min(exponent, 2 * Double.MAX_EXPONENT), 2 * Double.MIN_EXPONENT);
+		return sign * Math.scalb(mantissa, (int) e);
+	}
+
+	public String toString()
+	{
+		return "sign " + sign + ", log|det| " + logAbs();
+	}
+}
\ No newline at end of file
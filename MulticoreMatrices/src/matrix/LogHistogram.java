@@ -0,0 +1,70 @@
+package matrix;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative longs in power-of-2 buckets: bucket 0 counts 0, and bucket b counts
+ * the values in [2^(b - 1), 2^b). Recording is one atomic add, and like StripedCounter each
+ * thread adds to a row of buckets of its own, 64 longs long, so rows never share a cache line.
+ * Percentiles are read to within a factor of 2, which is what a latency distribution spanning
+ * microseconds to seconds needs.
+ */
+class LogHistogram
+{
+	static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+
+	void record(long value)
+	{
+		counts.getAndIncrement(StripedCounter.stripe() * BUCKETS + bucket(value));
+	}
+
+	static int bucket(long value)
+	{
+		return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * @return the count of each bucket, summed over the rows.
+	 */
+	long[] counts()
+	{
+		long[] sums = new long[BUCKETS];
+		for (int s = 0; s < StripedCounter.STRIPES; s++)
+		{
+			for (int b = 0; b < BUCKETS; b++)
+				sums[b] += counts.get(s * BUCKETS + b);
+		}
+		return sums;
+	}
+
+	/**
+	 * @param p : the percentile, in [0, 100].
+	 * @return the upper bound of the bucket the p-th percentile falls in, or 0 if nothing was recorded.
+	 */
+	long percentile(double p)
+	{
+		long[] sums = counts();
+		long total = 0;
+		for (long c : sums)
+			total += c;
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++)
+		{
+			seen += sums[b];
+			if (seen >= rank)
+				return b == 0 ? 0 : b == 63 ? Long.MAX_VALUE : (1L << b) - 1;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	void reset()
+	{
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+	}
+}
\ No newline at end of file
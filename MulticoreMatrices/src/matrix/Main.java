@@ -17,6 +17,7 @@ public class Main
 	{
 		Timer timer = new Timer();
 		long multi, single;
+		ComputeContext context = new ComputeContext();
 
 		try{
 			fw = new FileWriter("Output");
@@ -43,7 +44,7 @@ public class Main
 			timer.stop();
 			System.out.println("Create: " + timer.duration() / 1000000.);
 			timer.start();
-			MultiMatrix matrixM = new MultiMatrix(mat, 100);
+			MultiMatrix matrixM = new MultiMatrix(mat, context);
 			timer.stop();
 			System.out.println("Create M: " + timer.duration() / 1000000.);
 			bw.write("matrixM\n" + matrixM + "\n");
@@ -166,9 +167,9 @@ public class Main
 
 			if(LUM != null)
 			{
-				Matrix mul = Matrix.multiply(new Matrix(LUM[0].clone()), new Matrix(LUM[1].clone()));
+				MultiMatrix mul = MultiMatrix.multiply(LUM[0], LUM[1]);
 				if (LUM.length == 3)
-					mul = Matrix.multiply(new Matrix(LUM[2].clone()), mul);
+					mul = MultiMatrix.multiply(LUM[2], mul);
 				bw.write("LUP = \n" + mul + "\n");
 			}
 			bw.write("Done" + "\n");
@@ -176,29 +177,31 @@ public class Main
 		} catch (IOException e) {
 			System.out.println("Couldn't find file.");
 			return;
+		} finally {
+			context.shutdown();
 		}
 	}
 
 	public static void printMat(Double[][] mat) throws IOException
 	{
-		String matrix = "{";
+		StringBuilder matrix = new StringBuilder("{");
 		for (int i = 0; i < mat.length; i++)
 		{
-			matrix += "{";
+			matrix.append('{');
 			for (int j = 0; j < mat[i].length; j++)
 			{
 				if (j != mat[i].length - 1)
-					matrix += mat[i][j] + ", ";
+					matrix.append(mat[i][j]).append(", ");
 				else
-					matrix += mat[i][j];
+					matrix.append(mat[i][j]);
 			}
 			if (i != mat.length - 1)
-				matrix += "}, ";
+				matrix.append("}, ");
 			else
-				matrix += "}";
+				matrix.append('}');
 		}
-		matrix += "}";
-		bw.write(matrix + "\n");
+		matrix.append("}\n");
+		bw.write(matrix.toString());
 	}
 
 }
\ No newline at end of file
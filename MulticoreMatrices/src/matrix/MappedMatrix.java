@@ -0,0 +1,180 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+
+/**
+ * A read-only view of a matrix in a file of MatrixFile's format, reading its elements straight
+ * from the file's mapping instead of from a copy in the heap. Opening one costs the header and
+ * the mapping; the operating system pages the payload in as it is read, and can drop it again
+ * under memory pressure, so a view can be much larger than the heap.
+ *
+ * The payload is mapped in chunks of MatrixFile.CHUNK bytes, since a single mapping cannot
+ * exceed 2 GB. get() is safe to call from any number of threads at once.
+ */
+public class MappedMatrix
+{
+	private final DoubleBuffer[] chunks;
+	private final int row;
+	private final int col;
+	private final boolean columnMajor;
+	private final long checksum;
+
+	/**
+	 * @param chunks      : the mapped payload, MatrixFile.CHUNK_ELEMENTS elements per chunk but the last.
+	 * @param rows        : the number of rows of the matrix.
+	 * @param cols        : the number of columns of the matrix.
+	 * @param columnMajor : whether the payload holds the matrix column by column.
+	 * @param checksum    : the checksum the header gives for the payload.
+	 */
+	MappedMatrix(DoubleBuffer[] chunks, int rows, int cols, boolean columnMajor, long checksum)
+	{
+		this.chunks = chunks;
+		this.row = rows;
+		this.col = cols;
+		this.columnMajor = columnMajor;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @return the number of rows in the matrix.
+	 */
+	public int rows()
+	{
+		return row;
+	}
+
+	/**
+	 * @return the number of columns in the matrix.
+	 */
+	public int cols()
+	{
+		return col;
+	}
+
+	/**
+	 * @return whether the file holds the matrix column by column rather than row by row.
+	 */
+	public boolean isColumnMajor()
+	{
+		return columnMajor;
+	}
+
+	/**
+	 * @return the element in row i and column j, read from the file.
+	 */
+	public double get(int i, int j)
+	{
+		if (i < 0 || i >= row || j < 0 || j >= col)
+			throw new IndexOutOfBoundsException("(" + i + ", " + j + ") outside " + row + " x " + col);
+		long element = columnMajor ? (long) j * row + i : (long) i * col + j;
+		return chunks[(int) (element / MatrixFile.CHUNK_ELEMENTS)].get((int) (element % MatrixFile.CHUNK_ELEMENTS));
+	}
+
+	/**
+	 * Copies a row of the matrix out of the file.
+	 * @param i : the row to copy.
+	 * @return the row, or null if there is no row i.
+	 */
+	public double[] getRow(int i)
+	{
+		if (i < 0 || i >= row)
+			return null;
+		double[] ret = new double[col];
+		if (columnMajor)
+		{
+			for (int j = 0; j < col; j++)
+				ret[j] = get(i, j);
+		}
+		else
+		{
+			read((long) i * col, ret, 0, col);
+		}
+		return ret;
+	}
+
+	/**
+	 * Copies the whole matrix into the heap, verifying the checksum along the way.
+	 * @return a Matrix with the same elements.
+	 * @throws IOException if the matrix is too large for a Matrix, or the payload does not match
+	 * 	the checksum in the header.
+	 */
+	public Matrix toMatrix() throws IOException
+	{
+		return new Matrix(copy(true), row, col);
+	}
+
+	/**
+	 * Reads the whole payload and compares its checksum with the one in the header.
+	 * @return whether they match.
+	 */
+	public boolean verify()
+	{
+		MatrixFile.Checksum sum = new MatrixFile.Checksum();
+		long length = (long) row * col;
+		double[] buffer = new double[(int) Math.min(length, MatrixFile.CHUNK_ELEMENTS / 8)];
+		for (long element = 0; element < length; element += buffer.length)
+		{
+			int count = (int) Math.min(buffer.length, length - element);
+			read(element, buffer, 0, count);
+			sum.update(buffer, 0, count);
+		}
+		return sum.value() == checksum;
+	}
+
+	/**
+	 * Copies the matrix into a new row-major array whose stride is the number of columns, with
+	 * bulk gets of whole rows, or of whole columns scattered into place for a column-major file.
+	 * @param verify : whether to checksum the payload as it is copied.
+	 * @throws IOException if the matrix has more elements than an array can hold, or verify is
+	 * 	set and the payload does not match the checksum.
+	 */
+	double[] copy(boolean verify) throws IOException
+	{
+		if ((long) row * col > Integer.MAX_VALUE)
+			throw new IOException("a " + row + " x " + col + " matrix does not fit in an array;"
+					+ " it can only be opened with MatrixFile.map()");
+		double[] ret = new double[row * col];
+		MatrixFile.Checksum sum = verify ? new MatrixFile.Checksum() : null;
+		if (columnMajor)
+		{
+			double[] column = new double[row];
+			for (int j = 0; j < col; j++)
+			{
+				read((long) j * row, column, 0, row);
+				if (sum != null)
+					sum.update(column, 0, row);
+				for (int i = 0; i < row; i++)
+					ret[i * col + j] = column[i];
+			}
+		}
+		else
+		{
+			read(0, ret, 0, ret.length);
+			if (sum != null)
+				sum.update(ret, 0, ret.length);
+		}
+		if (sum != null && sum.value() != checksum)
+			throw new IOException("matrix file payload does not match its checksum");
+		return ret;
+	}
+
+	/**
+	 * Copies n elements of the payload, from the given element on, into a from off on, across
+	 * as many chunks as they span. Each chunk is read through a duplicate, whose position no
+	 * other thread shares.
+	 */
+	private void read(long element, double[] a, int off, int n)
+	{
+		while (n > 0)
+		{
+			DoubleBuffer chunk = chunks[(int) (element / MatrixFile.CHUNK_ELEMENTS)].duplicate();
+			chunk.position((int) (element % MatrixFile.CHUNK_ELEMENTS));
+			int count = Math.min(n, chunk.remaining());
+			chunk.get(a, off, count);
+			element += count;
+			off += count;
+			n -= count;
+		}
+	}
+}
\ No newline at end of file
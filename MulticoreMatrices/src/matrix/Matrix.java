@@ -1,14 +1,22 @@
 package matrix;
 
 import java.util.ArrayList;
+import java.util.Formatter;
 import java.util.Random;
 
 public class Matrix
 {
 	
-	private Double[][] matrix;
+	/**
+	 * Elements are stored contiguously in row-major order, so element (i, j)
+	 * lives at matrix[i * stride + j].
+	 */
+	private double[] matrix;
 	private int row;
 	private int col;
+	private int stride;
+	/** The shape of the non-zero pattern, found on first use and dropped when the entries change. */
+	private MatrixStructure structure;
 	
 	/**
 	 * Constructor for initializing a matrix.
@@ -20,14 +28,8 @@ public class Matrix
 	{
 		row = numRows;
 		col = numCols;
-		matrix = new Double[row][col];
-		for (int i = 0; i < row; i++)
-		{
-			for (int j = 0; j < col; j++)
-			{
-				matrix[i][j] = new Double(0);
-			}
-		}
+		stride = numCols;
+		matrix = new double[row * stride];
 	}
 	
 	/**
@@ -45,10 +47,8 @@ public class Matrix
 	 */
 	public Matrix (Double[][] mat)
 	{
-		row = mat.length;
-		col = mat[0].length;
-		matrix = new Double[row][col];
-		matrixCopy(mat, matrix);
+		this(mat.length, mat[0].length);
+		initMatrix(mat);
 	}
 	
 	/**
@@ -57,21 +57,40 @@ public class Matrix
 	 */
 	public Matrix(double[][] mat)
 	{
-		row = mat.length;
-		col = mat[0].length;
-		matrix = new Double[row][col];
+		this(mat.length, mat[0].length);
 		initMatrix(mat);
 	}
 	
+	/**
+	 * Wraps an existing row-major array without copying it.
+	 * @param data : the backing array, at least numRows * numCols long.
+	 * @param numRows : number of rows in the matrix.
+	 * @param numCols : number of columns in the matrix, which is also the row stride.
+	 */
+	Matrix(double[] data, int numRows, int numCols)
+	{
+		row = numRows;
+		col = numCols;
+		stride = numCols;
+		matrix = data;
+	}
+	
 	/**
 	 * Allows users to create matrix based off already existing 2D array.
 	 * @param mat : the 2D array of Doubles to represent the matrix.
 	 */
 	public void initMatrix(Double[][] mat)
 	{
-		matrixCopy(mat, matrix);
+		for (int i = 0; i < row; i++)
+		{
+			for (int j = 0; j < col; j++)
+			{
+				matrix[i * stride + j] = mat[i][j];
+			}
+		}
+		structure = null;
 	}
-		
+	
 	/**
 	 * Allows users to create matrix based off already existing 2D array.
 	 * Exists because, while a double can be cast to a Double, a double[]
@@ -82,11 +101,9 @@ public class Matrix
 	{
 		for (int i = 0; i < row; i++)
 		{
-			for (int j = 0; j < col; j++)
-			{
-				matrix[i][j] = mat[i][j];
-			}
+			System.arraycopy(mat[i], 0, matrix, i * stride, col);
 		}
+		structure = null;
 	}
 	
 	/**
@@ -95,7 +112,13 @@ public class Matrix
 	public Double[][] clone()
 	{
 		Double[][] ret = new Double[row][col];
-		matrixCopy(matrix, ret);
+		for (int i = 0; i < row; i++)
+		{
+			for (int j = 0; j < col; j++)
+			{
+				ret[i][j] = matrix[i * stride + j];
+			}
+		}
 		return ret;
 	}
 	
@@ -117,7 +140,47 @@ public class Matrix
 	
 	public Double get(int i, int j)
 	{
-		return matrix[i][j];
+		return matrix[i * stride + j];
+	}
+	
+	/**
+	 * @return the row-major backing array of this matrix.
+	 */
+	double[] data()
+	{
+		return matrix;
+	}
+	
+	/**
+	 * @return the distance, in elements, between the starts of two consecutive rows.
+	 */
+	int stride()
+	{
+		return stride;
+	}
+	
+	/**
+	 * Returns a contiguous copy of the backing array whose stride is the number of columns.
+	 */
+	double[] copyData()
+	{
+		double[] ret = new double[row * col];
+		copy(matrix, stride, ret, col, row, col);
+		return ret;
+	}
+	
+	/**
+	 * Returns the shape of this matrix's non-zero pattern: whether it is diagonal, triangular,
+	 * a row permutation of a triangular matrix, or symmetric. It is found in one O(n^2) pass the
+	 * first time it is asked for and kept until the entries change. determinant(), inverse() and
+	 * LUfactorization() use it to handle triangular matrices in O(n^2).
+	 * @return the structure of this matrix.
+	 */
+	public MatrixStructure structure()
+	{
+		if (structure == null)
+			structure = MatrixStructure.analyze(matrix, stride, row, col, null);
+		return structure;
 	}
 	
 	/**
@@ -138,7 +201,7 @@ public class Matrix
 		{
 			for (int j = 0; j < numColumns; j++)
 			{
-				mat.matrix[i][j] = new Double(rand.nextDouble() * (max - min) + min);
+				mat.matrix[i * mat.stride + j] = rand.nextDouble() * (max - min) + min;
 			}
 		}
 		return mat;
@@ -167,14 +230,14 @@ public class Matrix
 		{
 			for (int j = 0; j < numColumns; j++)
 			{
-				Double val = new Double(rand.nextDouble() * (max - min) + min);
-				val = (double) ((int) (val * num + .5)) / num;;
-				mat.matrix[i][j] = val;
+				double val = rand.nextDouble() * (max - min) + min;
+				val = (double) ((int) (val * num + .5)) / num;
+				mat.matrix[i * mat.stride + j] = val;
 			}
 		}
 		return mat;
 	}
-
+	
 	
 	/**
 	 * Creates a triangular matrix with random elements. The caller specifies the number of rows and columns
@@ -196,16 +259,14 @@ public class Matrix
 		Matrix mat = new Matrix(dimension, dimension);
 		Random rand = new Random();
 		
+		// A new matrix is already all zeros, so only the non-zero part needs filling.
 		if (type < 0) //lower triangular matrix
 		{
 			for (int i = 0; i < dimension; i++)
 			{
-				for (int j = 0; j < dimension; j++)
+				for (int j = 0; j <= i; j++)
 				{
-					if (i < j)
-						mat.matrix[i][j] = new Double(0);
-					else
-						mat.matrix[i][j] = new Double(rand.nextDouble() * (max - min) + min);
+					mat.matrix[i * mat.stride + j] = rand.nextDouble() * (max - min) + min;
 				}
 			}
 		}
@@ -213,12 +274,9 @@ public class Matrix
 		{
 			for (int i = 0; i < dimension; i++)
 			{
-				for (int j = 0; j < dimension; j++)
+				for (int j = i; j < dimension; j++)
 				{
-					if (i > j)
-						mat.matrix[i][j] = new Double(0);
-					else
-						mat.matrix[i][j] = new Double(rand.nextDouble() * (max - min) + min);
+					mat.matrix[i * mat.stride + j] = rand.nextDouble() * (max - min) + min;
 				}
 			}
 		}
@@ -226,19 +284,13 @@ public class Matrix
 		{
 			for (int i = 0; i < dimension; i++)
 			{
-				for (int j = 0; j < dimension; j++)
-				{
-					if (i != j)
-						mat.matrix[i][j] = new Double(0);
-					else
-						mat.matrix[i][j] = new Double(rand.nextDouble() * (max - min) + min);
-				}
+				mat.matrix[i * mat.stride + i] = rand.nextDouble() * (max - min) + min;
 			}
 		}
-
+		
 		return mat;
 	}
-
+	
 	
 	/**
 	 * Creates a deep copy of a matrix by copying each element of src into
@@ -255,6 +307,28 @@ public class Matrix
 		}
 	}
 	
+	/**
+	 * Copies a numRows x numCols block from one row-major array into another.
+	 * @param src        : the array to copy from.
+	 * @param srcStride  : the row stride of src.
+	 * @param dest       : the array to copy into.
+	 * @param destStride : the row stride of dest.
+	 * @param numRows    : the number of rows to copy.
+	 * @param numCols    : the number of columns to copy.
+	 */
+	static void copy(double[] src, int srcStride, double[] dest, int destStride, int numRows, int numCols)
+	{
+		if (srcStride == numCols && destStride == numCols)
+		{
+			System.arraycopy(src, 0, dest, 0, numRows * numCols);
+			return;
+		}
+		for (int i = 0; i < numRows; i++)
+		{
+			System.arraycopy(src, i * srcStride, dest, i * destStride, numCols);
+		}
+	}
+	
 	/**
 	 * Creates a simple string version of the matrix where
 	 * each element has default precision.
@@ -272,68 +346,68 @@ public class Matrix
 	 */
 	public String toString(int precision)
 	{
-		String mat = "";
+		StringBuilder mat = new StringBuilder(row * col * (precision + 5));
+		Formatter format = new Formatter(mat);
+		String element = "% ." + precision + "f\t";
 		for (int i = 0; i < row; i++)
 		{
 			for (int j = 0; j < col; j++)
 			{
-				mat += String.format("% ." + precision + "f\t", matrix[i][j]);
+				format.format(element, matrix[i * stride + j]);
 			}
-			mat += "\n";
+			mat.append('\n');
 		}
-		return mat;
+		return mat.toString();
 	}
 	
 	/**
 	 * Interchanges two rows, that is if given row1 and row2, all the values of
 	 * row1 are placed in row2 and vice versa.
+	 * @param mat   : the row-major array holding the rows.
+	 * @param width : the number of columns (and row stride) of mat.
 	 * @param the first row to be interchanged
 	 * @param the second row to be interchanged
 	 * @return -1 if the two rows are interchanged or 1 if they are not, that is it returns 1 if
 	 * row1 and row2 are the same.
 	 */
-	private int rowInterchange(Double[][] mat, int row1, int row2)
+	private int rowInterchange(double[] mat, int width, int row1, int row2)
 	{
 		if (row1 == row2)
 			return 1;
-		Double[] temp = mat[row1];
-		mat[row1] = mat[row2];
-		mat[row2] = temp;
+		Kernels.swap(width, mat, row1 * width, mat, row2 * width);
 		return -1;
 	}
 	
 	/**
 	 * Scales a specific row of a matrix by a given amount and returns the value
 	 * of the scaleFactor.
+	 * @param mat   : the row-major array holding the row.
+	 * @param width : the number of columns (and row stride) of mat.
 	 * @param rowNum the number of the row to scale, between 0 and n-1 for a matrix with n rows
 	 * @param scaleFactor the factor by which the row is to be scaled
 	 * @return the value by which the row was scaled.
 	 */
-	private double rowScale(Double[][] mat, int rowNum, double scaleFactor)
+	private double rowScale(double[] mat, int width, int rowNum, double scaleFactor)
 	{
-		for (int i = 0; i < mat[0].length; i++)
-		{
-			mat[rowNum][i] = mat[rowNum][i] * scaleFactor + 0.0;
-		}
+		Kernels.rowScal(width, scaleFactor, mat, rowNum * width);
 		return scaleFactor;
 	}
-
+	
 	/**
 	 * Adds rows indexed by rowTo and rowFrom together, where rowFrom
 	 * is scaled by scaleFactor, element by element and stores the result in rowTo.
+	 * @param mat         : the row-major array holding the rows.
+	 * @param width       : the number of columns (and row stride) of mat.
 	 * @param rowTo       : one row to be added, and destination.
 	 * @param rowFrom     : one row to be scaled and added.
 	 * @param scaleFactor : amount to scale rowFrom.
 	 * @return            : 1 unless rowTo = rowFrom, in which case it returns scaleFactor + 1.
 	 */
-	private double rowAdd(Double[][] mat, int rowTo, int rowFrom, double scaleFactor)
+	private double rowAdd(double[] mat, int width, int rowTo, int rowFrom, double scaleFactor)
 	{
 		if (rowTo == rowFrom)
-			return rowScale(mat, rowTo, scaleFactor + 1);
-		for (int i = 0; i < mat[0].length; i++)
-		{
-			mat[rowTo][i] = mat[rowTo][i] + mat[rowFrom][i] * scaleFactor + 0.0;
-		}
+			return rowScale(mat, width, rowTo, scaleFactor + 1);
+		Kernels.rowAxpy(width, scaleFactor, mat, rowFrom * width, mat, rowTo * width);
 		return 1.0;
 	}
 	
@@ -341,140 +415,113 @@ public class Matrix
 	 * Returns the index of the row you should swap with if there is a valid
 	 * row to swap, that is if a row below the current row has a non-zero entry in column col.
 	 * If there is on such row, returns -1.
-	 * @param mat : the Double[][] to search for row for swapping
+	 * @param mat   : the row-major array to search for row for swapping
+	 * @param width : the number of columns (and row stride) of mat.
+	 * @param numRows : the number of rows in mat.
 	 * @param row : the current row
 	 * @param col : the current column
 	 * @return
 	 */
-	private int determineRowSwap(Double[][] mat, int row, int col)
+	private int determineRowSwap(double[] mat, int width, int numRows, int row, int col)
 	{
-		for (int i = row + 1; i < mat.length; i++)
+		for (int i = row + 1; i < numRows; i++)
 		{
-			if (mat[i][col] != 0)
+			if (mat[i * width + col] != 0)
 				return i;
 		}
 		return -1;
 	}
-
+	
 	/**
 	 * Returns the reduced row echelon form of this matrix.
 	 * @return
 	 */
 	public Matrix rref()
 	{
-		Double[][] mat = new Double[row][col];
-		matrixCopy(matrix, mat);
+		double[] mat = copyData();
 		
 		int j = 0;
 		for (int i = 0; i < row && j < col; i++)
 		{
 			for (; j < col; j++)
 			{
-				if (mat[i][j] == 0) // pivot can't be 0
+				if (mat[i * col + j] == 0) // pivot can't be 0
 				{
-					int swap = determineRowSwap(mat, i, j);
+					int swap = determineRowSwap(mat, col, row, i, j);
 					if (swap == -1) // no pivot in this column
 						continue;
 					else
-						rowInterchange(mat, i, swap); // swap with row with pivot in this column
+						rowInterchange(mat, col, i, swap); // swap with row with pivot in this column
 				}
-				rowScale(mat, i, 1 / mat[i][j]); // make pivot 1
-				mat[i][j] = 1.0; // ensure it is one, regardless of rounding error
+				rowScale(mat, col, i, 1 / mat[i * col + j]); // make pivot 1
+				mat[i * col + j] = 1.0; // ensure it is one, regardless of rounding error
 				for (int k = 0; k < row; k++) // eliminate all other values in this column
 				{
 					if (k == i)	// don't alter current row
 						continue;
-					rowAdd(mat, k, i, -mat[k][j]);
-					mat[k][j] = 0.0; // Ensure it is 0, regardless of rounding error. 
+					rowAdd(mat, col, k, i, -mat[k * col + j]);
+					mat[k * col + j] = 0.0; // Ensure it is 0, regardless of rounding error.
 				}
 				break;
 			}
 			j++;
 		}
 		
-		return new Matrix(mat);
+		return new Matrix(mat, row, col);
 	}
 	
 	/**
 	 * Returns the inverse of this matrix if it has one, or null otherwise.
+	 * The matrix is factored once as P * A = L * U and the inverse is formed from the factors,
+	 * see {@link LUFactorization#inverse()}. A matrix whose smallest pivot is within rounding
+	 * error of 0 counts as singular.
 	 * @return
 	 */
 	public Matrix inverse()
 	{
 		if (row != col) // Can't invert a matrix that's not square.
 			return null;
+		if (structure().hasTriangularForm())
+			return Triangular.inverse(structure, matrix, stride, row, null);
 		
-		Double[][] mat = new Double[row][col * 2];
-		for (int i = 0; i < row; i++)
-		{
-			for (int j = 0; j < col; j++) // copy in matrix to first half of mat;
-			{
-				mat[i][j] = matrix[i][j];
-			}
-			for (int j = 0; j < col; j++) // copy row*row identity matrix into second half of mat
-			{
-				mat[i][j + col] = i == j ? 1.0 : 0.0;
-			}
-		}
-		
-		Matrix rref = new Matrix(mat);
-		rref = rref.rref();
-		
-		for (int i = 0; i < row; i++) // first half of matrix should now be identity if invertible
-		{
-			for (int j = 0; j < col; j++)
-			{
-				if (j == i && rref.matrix[i][j] != 1.0) //should have pivots along diagonal
-					return null;
-				else if (j != i && rref.matrix[i][j] != 0.0) //should be zero outside of diagonal
-					return null;
-			}
-		}
-		
-		Double[][] ret = new Double[row][col];
-		for (int i = 0; i < row; i++)
-		{
-			for (int j = 0; j < col; j++)
-			{
-				ret[i][j] = rref.matrix[i][j + col];
-			}
-		}
-		return new Matrix(ret);
-
+		return LUfactorization().inverse();
 	}
 	
 	/**
 	 * Returns the determinant of a matrix. If the matrix
 	 * is not square, returns null.
+	 * A triangular matrix, or a row permutation of one, skips elimination: its determinant is
+	 * the product of the diagonal.
 	 * @return
 	 */
 	public Double determinant()
 	{
 		if (row != col)
 			return null;
+		if (structure().hasTriangularForm())
+			return Triangular.determinant(structure, matrix, stride, row);
 		
 		double det = 1;
 		
-		Double[][] mat = new Double[row][col];
-		matrixCopy(matrix, mat);
+		double[] mat = copyData();
 		
 		// The following code is a near copy of rref.
-		// Some differences will include computing the determinant as we go, 
+		// Some differences will include computing the determinant as we go,
 		// and only finding the row echelon form, not reduced row echelon form.
 		for (int i = 0, j = 0; i < row && j < col; i++, j++)
 		{
-			if (mat[i][j] == 0) // pivot can't be 0
+			if (mat[i * col + j] == 0) // pivot can't be 0
 			{
-				int swap = determineRowSwap(mat, i, j);
+				int swap = determineRowSwap(mat, col, row, i, j);
 				if (swap == -1) // no pivot in this column
 					return 0.0;
 				else
-					det *= rowInterchange(mat, i, swap); // swap with row with pivot in this column
+					det *= rowInterchange(mat, col, i, swap); // swap with row with pivot in this column
 			}
 			for (int k = i + 1; k < row; k++) // eliminate all other values in this column below this row
 			{
-				rowAdd(mat, k, i, -mat[k][j] / mat[i][j]);
-				mat[k][j] = 0.0;
+				rowAdd(mat, col, k, i, -mat[k * col + j] / mat[i * col + j]);
+				mat[k * col + j] = 0.0;
 			}
 		}
 		
@@ -482,102 +529,166 @@ public class Matrix
 		{
 			for (int j = 0; j < i; j++)
 			{
-				if (mat[i][j] != 0.0) // not invertible
+				if (mat[i * col + j] != 0.0) // not invertible
 					return 0.0;
 			}
 		}
 		
 		for (int i = 0; i < row; i++)
-			det *= mat[i][i];
-
+			det *= mat[i * col + i];
+		
 		return det;
 	}
 	
 	/**
-	 * Determines the LUP decomposition of a matrix. 
+	 * Returns the determinant as its sign and the logarithm of its magnitude, computed from a
+	 * partially pivoted LU factorization. Unlike determinant() it cannot overflow or underflow,
+	 * which it does for most random matrices larger than about 200 x 200.
+	 * @return the log determinant, or null if the matrix is not square.
+	 */
+	public LogDeterminant logAbsDeterminant()
+	{
+		LUFactorization lu = LUfactorization();
+		if (lu == null)
+			return null;
+		return lu.logAbsDeterminant();
+	}
+	
+	/**
+	 * Factors this matrix as P * A = L * U with a blocked LU that pivots on the largest entry
+	 * in each column. The factors are kept packed in one n x n buffer with a pivot vector.
+	 * A triangular matrix, or a row permutation of one, needs no elimination and is factored
+	 * in O(n^2), without pivoting on the largest entry.
+	 * @return the factorization, or null if the matrix is rectangular. A singular matrix still
+	 * 	factors; see LUFactorization.isSingular().
+	 */
+	public LUFactorization LUfactorization()
+	{
+		if (col != row)
+			return null;
+		if (structure().hasTriangularForm())
+		{
+			LUFactorization lu = Triangular.factor(structure, matrix, stride, row, null);
+			if (lu != null)
+				return lu;
+		}
+		return LUFactorization.factor(copyData(), row, null);
+	}
+	
+	/**
+	 * Solves the linear system A * x = b, where A is this matrix, with one LU factorization
+	 * followed by forward and back substitution.
+	 * To solve against many right-hand sides, factor once with LUfactorization() and call its
+	 * solve method for each one instead.
+	 * @param b : the right-hand side, with as many entries as the matrix has rows.
+	 * @return x, or null if the matrix is rectangular or singular, or b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		LUFactorization lu = LUfactorization();
+		if (lu == null)
+			return null;
+		return lu.solve(b);
+	}
+	
+	/**
+	 * Solves A * X = B, where A is this matrix, for every column of B with a single LU factorization.
+	 * @param B : the right-hand sides, with as many rows as the matrix.
+	 * @return X, or null if the matrix is rectangular or singular, or B has the wrong number of rows.
+	 */
+	public Matrix solve(Matrix B)
+	{
+		LUFactorization lu = LUfactorization();
+		if (lu == null)
+			return null;
+		return lu.solve(B);
+	}
+	
+	/**
+	 * Factors this matrix as A = L * L^T, where L is lower triangular, if it is symmetric and
+	 * positive-definite. Only the lower triangle is factored, with half the flops of LU().
+	 * The factorization is blocked, with tiles of TiledLU.DEFAULT_TILE rows and columns.
+	 * @return the factorization, or null if the matrix is not square, not exactly symmetric or
+	 * 	not positive-definite.
+	 */
+	public CholeskyFactorization cholesky()
+	{
+		if (!structure().isSymmetric())
+			return null;
+		double[] lower = CholeskyFactorization.lowerTriangle(matrix, stride, row);
+		return TiledCholesky.factor(lower, row, TiledLU.DEFAULT_TILE, null);
+	}
+	
+	/**
+	 * Returns a sparse copy of this matrix that keeps only its non-zero entries. Triangular,
+	 * diagonal and banded matrices take far less memory and time that way.
+	 * @return
+	 */
+	public SparseMatrix toSparse()
+	{
+		return new SparseMatrix(this);
+	}
+	
+	/**
+	 * Returns a band copy of this matrix, keeping only the diagonals between the lowest and the
+	 * highest that hold a non-zero. For a matrix of bandwidth b, solving then costs O(n * b^2).
+	 * @return the band matrix, or null if the matrix is not square.
+	 */
+	public BandMatrix toBand()
+	{
+		if (row != col)
+			return null;
+		return new BandMatrix(this);
+	}
+	
+	/**
+	 * Factors this matrix as A = Q * R with blocked Householder reflectors. Unlike LU it works
+	 * for rectangular matrices too, and it does not need pivoting to be stable.
+	 * @return the factorization.
+	 */
+	public QRFactorization qr()
+	{
+		return QRFactorization.factor(copyData(), row, col, null);
+	}
+	
+	/**
+	 * Finds the x that minimizes ||A * x - b||, where A is this matrix, through its QR factorization.
+	 * When A is square and nonsingular, that x solves A * x = b.
+	 * @param b : the right-hand side, with as many entries as the matrix has rows.
+	 * @return x, or null if the matrix has fewer rows than columns or is rank deficient, or b has
+	 * 	the wrong length.
+	 */
+	public double[] leastSquares(double[] b)
+	{
+		if (row < col)
+			return null;
+		return qr().leastSquares(b);
+	}
+	
+	/**
+	 * Determines the LUP decomposition of a matrix.
+	 * The factorization is blocked and pivots on the largest entry in each column, so P * A = L * U.
 	 * @return an array of Matrix objects where arr[0] = L and arr[1] = U in the determined LU decomposition.
 	 * 	If a permutation is required for this matrix, it further includes arr[2] = P.
 	 *		Returns null if matrix is either rectangular or singular. 	
 	 */
 	public Matrix[] LU()
 	{
-		if (col != row)
+		LUFactorization lu = LUfactorization();
+		if (lu == null || lu.isSingular())
 			return null;
 		
-		Double[][] L = new Double[row][row];
-		Double[][] U = new Double[row][col];
-		ArrayList<Integer[]> swaps = new ArrayList<Integer[]>();
-		
-		matrixCopy(matrix, U); //init U
-		for (int i = 0; i < row; i++)
-		{
-			L[i][i] = 1.0;
-			for (int j = i + 1; j < row; j++)
-			{
-				L[i][j] = 0.0;
-			}
-		}
-		
-		for (int i = 0, j = 0; i < row && j < col; i++, j++)
-		{
-			if (U[i][j] == 0) // pivot can't be 0
-			{
-				int swap = determineRowSwap(U, i, j);
-				if (swap == -1) // no pivot in this column
-				{
-					return null;
-				}
-				else
-				{
-					Integer[] temp = {i, swap};
-					swaps.add(temp);
-					rowInterchange(U, i, swap); // swap with row with pivot in this column
-				}
-			}
-			for (int k = i + 1; k < row; k++) // eliminate all other values in this column below this row
-			{
-				L[k][j] = U[k][j] / U[i][j];
-				rowAdd(U, k, i, -U[k][j] / U[i][j]);
-				U[k][j] = 0.0; // Ensure it is 0, regardless of rounding error.
-			}
-		}
-		
-		if (swaps.size() > 0)
-		{
-			Double[][] P = new Double[row][col];
-			for (int i = 0; i < row; i++)
-			{
-				for (int j = 0; j < col; j++)
-				{
-					if (i != j)
-						P[i][j] = 0.0;
-					else
-						P[i][j] = 1.0;
-				}
-			}
-			for (int i = 0; i < swaps.size(); i++)
-			{
-				Integer[] temp = swaps.get(i);
-				rowInterchange(P, temp[0], temp[1]);
-			}
-			Matrix[] LUP = new Matrix[3];
-			LUP[0] = new Matrix(L);
-			LUP[1] = new Matrix(U);
-			LUP[2] = new Matrix(P);
-			return LUP;
-		}
-		else
-		{
-			Matrix[] LU = new Matrix[2];
-			LU[0] = new Matrix(L);
-			LU[1] = new Matrix(U);
-			return LU;
-		}
+		Matrix[] LUP = new Matrix[lu.hasRowInterchanges() ? 3 : 2];
+		LUP[0] = lu.getL();
+		LUP[1] = lu.getU();
+		if (LUP.length == 3)
+			LUP[2] = lu.getP();
+		return LUP;
 	}
 
 	
 	/**
-	 * Determines the LU decomposition of a matrix. 
+	 * Determines the LU decomposition of a matrix.
 	 * This is an extended LU decomposition in that it can determine a factorization for any matrix, including
 	 * 	rectangular matrices, singular matrices, and any matrix that requires row swapping when determining its row echelon form.
 	 * There are two extensions that allows this:
@@ -588,7 +699,7 @@ public class Matrix
 	 * 	matrix and the number of pivots is equal to the number of rows in the row echelon form that have non-zero elements.
 	 * 	Notice also that U is a row echelon form of the matrix, so the number of pivots is merely the number of rows in U
 	 * 	that have non-zero elements.
-	 * 
+	 *
 	 * As a result, this algorithm guarantees the following:
 	 * 	1. L will be a permutation of a lower triangular matrix with 1s along the main diagonal.
 	 * 	2. U will be an upper triangular matrix where the elements on the main diagonal may or may not be 0.
@@ -596,25 +707,20 @@ public class Matrix
 	 */
 	public Matrix[] LUextended()
 	{
-		Double[][] L = new Double[row][row];
-		Double[][] U = new Double[row][col];
+		double[] L = new double[row * row];
+		double[] U = copyData(); //init U
 		ArrayList<Integer[]> swaps = new ArrayList<Integer[]>();
 		
-		matrixCopy(matrix, U); //init U
 		for (int i = 0; i < row; i++)
 		{
-			L[i][i] = 1.0;
-			for (int j = i + 1; j < row; j++)
-			{
-				L[i][j] = 0.0;
-			}
+			L[i * row + i] = 1.0;
 		}
 		
 		for (int i = 0, j = 0; i < row && j < col; i++, j++)
 		{
-			if (U[i][j] == 0) // pivot can't be 0
+			if (U[i * col + j] == 0) // pivot can't be 0
 			{
-				int swap = determineRowSwap(U, i, j);
+				int swap = determineRowSwap(U, col, row, i, j);
 				if (swap == -1) // no pivot in this column
 				{
 					i--;
@@ -624,48 +730,124 @@ public class Matrix
 				{
 					Integer[] temp = {i, swap};
 					swaps.add(temp);
-					rowInterchange(U, i, swap); // swap with row with pivot in this column
+					rowInterchange(U, col, i, swap); // swap with row with pivot in this column
 				}
 			}
 			for (int k = i + 1; k < row; k++) // eliminate all other values in this column below this row
 			{
-				L[k][j] = U[k][j] / U[i][j];
-				rowAdd(U, k, i, -U[k][j] / U[i][j]);
-				U[k][j] = 0.0; // Ensure it is 0, regardless of rounding error.
+				L[k * row + j] = U[k * col + j] / U[i * col + j];
+				rowAdd(U, col, k, i, -U[k * col + j] / U[i * col + j]);
+				U[k * col + j] = 0.0; // Ensure it is 0, regardless of rounding error.
 			}
 		}
 		
 		for (int i = 0; i < swaps.size(); i++)
 		{
 			Integer[] temp = swaps.get(i);
-			rowInterchange(L, temp[0], temp[1]);
+			rowInterchange(L, row, temp[0], temp[1]);
 		}
 		
 		Matrix[] LU = new Matrix[2];
-		LU[0] = new Matrix(L);
-		LU[1] = new Matrix(U);
+		LU[0] = new Matrix(L, row, row);
+		LU[1] = new Matrix(U, row, col);
 		return LU;
 	}
 	
+	/**
+	 * Returns the product x * y, or null if the number of columns of x does not
+	 * match the number of rows of y.
+	 * @param x : the left operand.
+	 * @param y : the right operand.
+	 * @return
+	 */
 	public static Matrix multiply(Matrix x, Matrix y)
 	{
+		return multiply(x, false, y, false);
+	}
+	
+	/**
+	 * Returns the product op(x) * op(y), where op(m) is m itself or its transpose.
+	 * The transpose is never formed; the kernel reads the operand in transposed order instead.
+	 * @param x          : the left operand.
+	 * @param transposeX : whether to use the transpose of x.
+	 * @param y          : the right operand.
+	 * @param transposeY : whether to use the transpose of y.
+	 * @return the product, or null if the inner dimensions do not match.
+	 */
+	public static Matrix multiply(Matrix x, boolean transposeX, Matrix y, boolean transposeY)
+	{
+		int m = transposeX ? x.col : x.row;
+		int k = transposeX ? x.row : x.col;
+		int n = transposeY ? y.row : y.col;
+		if (k != (transposeY ? y.col : y.row))
+			return null;
+		Matrix ret = new Matrix(m, n);
+		Gemm.gemm(transposeX, transposeY, m, n, k, 1.0, x.matrix, 0, x.stride,
+				y.matrix, 0, y.stride, 0.0, ret.matrix, 0, ret.stride);
+		return ret;
+	}
+	
+	/**
+	 * Returns the product x * y, computed with the given algorithm. STRASSEN does fewer flops on
+	 * large products but is less accurate, with errors bounded only relative to ||x|| * ||y||
+	 * rather than entry by entry; see Strassen for the details.
+	 * @param x         : the left operand.
+	 * @param y         : the right operand.
+	 * @param algorithm : the algorithm to multiply with.
+	 * @return the product, or null if the inner dimensions do not match.
+	 */
+	public static Matrix multiply(Matrix x, Matrix y, MultiplyAlgorithm algorithm)
+	{
+		if (algorithm == MultiplyAlgorithm.CLASSICAL
+				|| (algorithm == MultiplyAlgorithm.AUTO && !Strassen.worthwhile(x.row, y.col, x.col)))
+			return multiply(x, y);
 		if (x.col != y.row)
 			return null;
-		Double[][] mat = new Double[x.row][y.col];
-		for (int i = 0; i < x.row; i++)
-		{
-			for (int j = 0;  j < y.col; j++)
-			{
-				Double sum = 0.0;
-				for (int k = 0; k < x.col; k++)
-				{
-					sum += x.matrix[i][k] * y.matrix[k][j];
-				}
-				mat[i][j] = sum;
-			}
-		}
-		return new Matrix(mat);
-		
+		Matrix ret = new Matrix(x.row, y.col);
+		Strassen.multiply(x.row, y.col, x.col, x.matrix, 0, x.stride, y.matrix, 0, y.stride,
+				ret.matrix, 0, ret.stride, null);
+		return ret;
+	}
+	
+	/**
+	 * Computes c = alpha * a * b + beta * c, overwriting c.
+	 * @param alpha : the amount to scale the product by.
+	 * @param a     : the left operand.
+	 * @param b     : the right operand.
+	 * @param beta  : the amount to scale c by before the product is added.
+	 * @param c     : the matrix to accumulate into.
+	 * c must not share its storage with a or b.
+	 * @return c, or null if the dimensions do not agree, in which case c is left unchanged.
+	 */
+	public static Matrix multiplyAdd(double alpha, Matrix a, Matrix b, double beta, Matrix c)
+	{
+		return multiplyAdd(alpha, a, false, b, false, beta, c);
+	}
+	
+	/**
+	 * Computes c = alpha * op(a) * op(b) + beta * c, overwriting c, where op(m) is m itself or its transpose.
+	 * @param alpha      : the amount to scale the product by.
+	 * @param a          : the left operand.
+	 * @param transposeA : whether to use the transpose of a.
+	 * @param b          : the right operand.
+	 * @param transposeB : whether to use the transpose of b.
+	 * @param beta       : the amount to scale c by before the product is added.
+	 * @param c          : the matrix to accumulate into.
+	 * c must not share its storage with a or b.
+	 * @return c, or null if the dimensions do not agree, in which case c is left unchanged.
+	 */
+	public static Matrix multiplyAdd(double alpha, Matrix a, boolean transposeA, Matrix b, boolean transposeB,
+			double beta, Matrix c)
+	{
+		int m = transposeA ? a.col : a.row;
+		int k = transposeA ? a.row : a.col;
+		int n = transposeB ? b.row : b.col;
+		if (k != (transposeB ? b.col : b.row) || c.row != m || c.col != n)
+			return null;
+		Gemm.gemm(transposeA, transposeB, m, n, k, alpha, a.matrix, 0, a.stride,
+				b.matrix, 0, b.stride, beta, c.matrix, 0, c.stride);
+		c.structure = null;
+		return c;
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,460 @@
+package matrix;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The benchmark suite for the matrix operations: every combination of operation, input structure,
+ * size and thread count is measured in freshly forked JVMs, after warmup, and reported as
+ * throughput, latency percentiles and allocation.
+ *
+ * Each fork runs the warmup invocations untimed, so that the JIT has compiled the hot loops
+ * before the measured ones, then times every measured invocation on its own. The samples of all
+ * forks of a combination are pooled for the percentiles, so that one JVM's unlucky inlining or
+ * heap layout cannot decide the result. Allocation is the growth, over the measured invocations,
+ * of the bytes allocated by all live threads, pool workers included, as HotSpot's
+ * com.sun.management.ThreadMXBean counts them; it shows "-" on JVMs without that counter.
+ *
+ * A thread count of 0 measures the sequential Matrix, any other a MultiMatrix on a context with
+ * that many threads. Every invocation wraps the same input array in a new matrix, so cached
+ * structure does not carry over from one invocation to the next.
+ *
+ * Usage: MatrixBenchmark [-ops rref,inverse,...] [-structures random,...] [-sizes 128,512]
+ * 	[-threads 0,1,4] [-forks 2] [-warmup 5] [-iterations 10]
+ */
+public class MatrixBenchmark
+{
+	/** Holds every result, so that the JIT cannot discard an invocation as dead code. */
+	static volatile Object sink;
+
+	/**
+	 * The shapes of input matrix. All are n x n and, apart from the rounding of random entries,
+	 * non-singular, so that every operation runs to completion.
+	 */
+	public enum Structure
+	{
+		/** Entries uniform in [-10, 10]. */
+		RANDOM,
+		/** Upper triangular, with diagonal entries of magnitude at least 1. */
+		TRIANGULAR,
+		/** About 2% of the off-diagonal entries non-zero, with a dominant diagonal. */
+		SPARSE,
+		/** Symmetric positive-definite: R^T * R + n * I for a random R. */
+		SPD;
+
+		/**
+		 * @return an n x n row-major matrix of this structure.
+		 */
+		double[] generate(int n, Random rand)
+		{
+			double[] a = new double[n * n];
+			switch (this)
+			{
+			case RANDOM:
+				for (int i = 0; i < a.length; i++)
+					a[i] = rand.nextDouble() * 20 - 10;
+				break;
+			case TRIANGULAR:
+				for (int i = 0; i < n; i++)
+				{
+					for (int j = i + 1; j < n; j++)
+						a[i * n + j] = rand.nextDouble() * 20 - 10;
+					a[i * n + i] = (1 + rand.nextDouble() * 9) * (rand.nextBoolean() ? 1 : -1);
+				}
+				break;
+			case SPARSE:
+				for (int i = 0; i < n; i++)
+				{
+					for (int j = 0; j < n; j++)
+					{
+						if (rand.nextDouble() < 0.02)
+							a[i * n + j] = rand.nextDouble() * 2 - 1;
+					}
+					a[i * n + i] = n * 0.02 + 1;
+				}
+				break;
+			case SPD:
+				double[] r = RANDOM.generate(n, rand);
+				Gemm.gemm(true, false, n, n, n, 1.0, r, 0, n, r, 0, n, 0.0, a, 0, n);
+				for (int i = 0; i < n; i++)
+					a[i * n + i] += n;
+				break;
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * The operations measured. GAUSS is the MatrixDeterminant project's pipelined Gaussian
+	 * elimination, which lives on in this package as PipelinedElimination: the determinant of a
+	 * MultiMatrix set to Factorization.PIPELINED. It and LU_EXTENDED have only one of the two forms.
+	 */
+	public enum Operation
+	{
+		RREF,
+		INVERSE,
+		DETERMINANT,
+		LU,
+		LU_EXTENDED,
+		MULTIPLY,
+		GAUSS;
+
+		/**
+		 * @return whether the operation exists for the sequential Matrix (threads = 0) or for MultiMatrix.
+		 */
+		boolean supports(int threads)
+		{
+			if (this == LU_EXTENDED)
+				return threads == 0;
+			if (this == GAUSS)
+				return threads > 0;
+			return true;
+		}
+
+		/**
+		 * Runs the operation once on an n x n matrix wrapping a.
+		 * @param context : the threads for a MultiMatrix, or null for the sequential Matrix.
+		 */
+		Object run(double[] a, int n, ComputeContext context)
+		{
+			if (context == null)
+			{
+				Matrix m = new Matrix(a, n, n);
+				switch (this)
+				{
+				case RREF:
+					return m.rref();
+				case INVERSE:
+					return m.inverse();
+				case DETERMINANT:
+					return m.determinant();
+				case LU:
+					return m.LU();
+				case LU_EXTENDED:
+					return m.LUextended();
+				case MULTIPLY:
+					return Matrix.multiply(m, m);
+				default:
+					throw new UnsupportedOperationException(this + " has no sequential form");
+				}
+			}
+			MultiMatrix m = new MultiMatrix(a, n, n, context);
+			switch (this)
+			{
+			case RREF:
+				return m.rref();
+			case INVERSE:
+				return m.inverse();
+			case DETERMINANT:
+				return m.determinant();
+			case LU:
+				return m.LU();
+			case MULTIPLY:
+				return MultiMatrix.multiply(m, m);
+			case GAUSS:
+				m.setFactorization(MultiMatrix.Factorization.PIPELINED);
+				return m.determinant();
+			default:
+				throw new UnsupportedOperationException(this + " has no parallel form");
+			}
+		}
+	}
+
+	/**
+	 * The measurements of one fork: the allocation over the measured invocations, or -1 if it
+	 * could not be counted, and the time of each measured invocation in nanoseconds.
+	 */
+	static class Sample
+	{
+		long allocatedBytes;
+		long[] nanos;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if (args.length > 0 && args[0].equals("-fork"))
+		{
+			runFork(args);
+			return;
+		}
+		List<Operation> ops = new ArrayList<Operation>();
+		List<Structure> structures = new ArrayList<Structure>();
+		int[] sizes = {128, 512};
+		int[] threads = {0, 1, Runtime.getRuntime().availableProcessors()};
+		int forks = 2;
+		int warmup = 5;
+		int iterations = 10;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if (args[i].equals("-ops"))
+			{
+				for (String s : value.split(","))
+					ops.add(Operation.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+			}
+			else if (args[i].equals("-structures"))
+			{
+				for (String s : value.split(","))
+					structures.add(Structure.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+			}
+			else if (args[i].equals("-sizes"))
+				sizes = parseInts(value);
+			else if (args[i].equals("-threads"))
+				threads = parseInts(value);
+			else if (args[i].equals("-forks"))
+				forks = Integer.parseInt(value);
+			else if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(value);
+			else if (args[i].equals("-iterations"))
+				iterations = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("unknown option " + args[i]);
+		}
+		if (ops.isEmpty())
+			ops.addAll(Arrays.asList(Operation.values()));
+		if (structures.isEmpty())
+			structures.addAll(Arrays.asList(Structure.values()));
+		threads = distinct(threads);
+
+		System.out.println("forks: " + forks + ", warmup: " + warmup + ", iterations: " + iterations
+				+ ", cores: " + Runtime.getRuntime().availableProcessors());
+		System.out.println("op\tstructure\tn\tthreads\tops/s\tmean ms\tp50 ms\tp90 ms\tp99 ms\tmax ms"
+				+ "\tB/op\tMB/s");
+		for (Operation op : ops)
+		{
+			for (Structure structure : structures)
+			{
+				for (int n : sizes)
+				{
+					for (int t : threads)
+					{
+						if (!op.supports(t))
+							continue;
+						List<Sample> samples = new ArrayList<Sample>();
+						for (int f = 0; f < Math.max(forks, 1); f++)
+						{
+							if (forks == 0)
+								samples.add(measure(op, structure, n, t, warmup, iterations, f));
+							else
+								samples.add(fork(op, structure, n, t, warmup, iterations, f));
+						}
+						System.out.println(report(op, structure, n, t, samples));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs one combination in a new JVM with this one's classpath and JVM options, and reads back
+	 * its sample. With -forks 0 main measures in its own JVM instead, which is only useful for
+	 * debugging, since the combinations measured earlier then warm up and pollute the later ones.
+	 */
+	static Sample fork(Operation op, Structure structure, int n, int threads, int warmup, int iterations,
+			int seed) throws IOException, InterruptedException
+	{
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(MatrixBenchmark.class.getName());
+		command.add("-fork");
+		command.add(op.name());
+		command.add(structure.name());
+		command.add(Integer.toString(n));
+		command.add(Integer.toString(threads));
+		command.add(Integer.toString(warmup));
+		command.add(Integer.toString(iterations));
+		command.add(Integer.toString(seed));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+		String result = null;
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				if (line.startsWith("RESULT "))
+					result = line;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		int exit = process.waitFor();
+		if (exit != 0 || result == null)
+			throw new IOException("fork for " + op + " " + structure + " n = " + n + " threads = " + threads
+					+ " failed with exit code " + exit);
+		String[] fields = result.split(" ");
+		Sample sample = new Sample();
+		sample.allocatedBytes = Long.parseLong(fields[1]);
+		sample.nanos = new long[fields.length - 2];
+		for (int i = 0; i < sample.nanos.length; i++)
+			sample.nanos[i] = Long.parseLong(fields[i + 2]);
+		return sample;
+	}
+
+	/**
+	 * The entry point of a forked JVM: measures the combination in its arguments and prints the
+	 * sample as one line, "RESULT allocatedBytes nanos...".
+	 */
+	private static void runFork(String[] args)
+	{
+		Sample sample = measure(Operation.valueOf(args[1]), Structure.valueOf(args[2]), Integer.parseInt(args[3]),
+				Integer.parseInt(args[4]), Integer.parseInt(args[5]), Integer.parseInt(args[6]),
+				Integer.parseInt(args[7]));
+		StringBuilder line = new StringBuilder("RESULT ").append(sample.allocatedBytes);
+		for (long t : sample.nanos)
+			line.append(' ').append(t);
+		System.out.println(line);
+	}
+
+	/**
+	 * Generates the input, then runs warmup untimed and iterations timed invocations.
+	 * @param seed : seeds the input, so that each fork sees a different matrix of the structure.
+	 */
+	static Sample measure(Operation op, Structure structure, int n, int threads, int warmup, int iterations,
+			int seed)
+	{
+		double[] a = structure.generate(n, new Random(seed));
+		ComputeContext context = threads > 0 ? new ComputeContext(threads) : null;
+		try
+		{
+			for (int i = 0; i < warmup; i++)
+				sink = op.run(a, n, context);
+			Sample sample = new Sample();
+			sample.nanos = new long[iterations];
+			long allocated = allocatedBytes();
+			for (int i = 0; i < iterations; i++)
+			{
+				long start = System.nanoTime();
+				sink = op.run(a, n, context);
+				sample.nanos[i] = System.nanoTime() - start;
+			}
+			long after = allocatedBytes();
+			sample.allocatedBytes = allocated < 0 || after < 0 ? -1 : after - allocated;
+			return sample;
+		}
+		finally
+		{
+			if (context != null)
+				context.shutdown();
+		}
+	}
+
+	/**
+	 * @return the bytes allocated so far by all live threads, or -1 if the JVM does not count them.
+	 */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+		if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+			return -1;
+		long total = 0;
+		for (long bytes : hotspot.getThreadAllocatedBytes(bean.getAllThreadIds()))
+		{
+			if (bytes > 0) // -1 for a thread that ended while being read
+				total += bytes;
+		}
+		return total;
+	}
+
+	/**
+	 * Formats the pooled samples of one combination as a row of the report.
+	 */
+	private static String report(Operation op, Structure structure, int n, int threads, List<Sample> samples)
+	{
+		int count = 0;
+		for (Sample s : samples)
+			count += s.nanos.length;
+		long[] all = new long[count];
+		long allocated = 0;
+		int k = 0;
+		for (Sample s : samples)
+		{
+			System.arraycopy(s.nanos, 0, all, k, s.nanos.length);
+			k += s.nanos.length;
+			allocated = allocated < 0 || s.allocatedBytes < 0 ? -1 : allocated + s.allocatedBytes;
+		}
+		Arrays.sort(all);
+		long total = 0;
+		for (long t : all)
+			total += t;
+		StringBuilder row = new StringBuilder();
+		row.append(op).append('\t').append(structure).append('\t').append(n).append('\t')
+				.append(threads == 0 ? "Matrix" : Integer.toString(threads));
+		if (count == 0)
+			return row.append("\t-").toString();
+		row.append('\t').append(format(count * 1e9 / total))
+				.append('\t').append(format(total / 1e6 / count))
+				.append('\t').append(format(percentile(all, 50) / 1e6))
+				.append('\t').append(format(percentile(all, 90) / 1e6))
+				.append('\t').append(format(percentile(all, 99) / 1e6))
+				.append('\t').append(format(all[count - 1] / 1e6));
+		if (allocated < 0)
+			row.append("\t-\t-");
+		else
+			row.append('\t').append(allocated / count).append('\t').append(format(allocated * 1e3 / total));
+		return row.toString();
+	}
+
+	/**
+	 * @return the nearest-rank percentile p of the sorted values.
+	 */
+	static long percentile(long[] sorted, double p)
+	{
+		int rank = (int) Math.ceil(p / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.4g", value);
+	}
+
+	private static int[] parseInts(String list)
+	{
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			values[i] = Integer.parseInt(parts[i].trim());
+		return values;
+	}
+
+	/**
+	 * @return the values with repeats removed, in their first order; the default thread counts
+	 * 	repeat 1 on a one-core machine.
+	 */
+	private static int[] distinct(int[] values)
+	{
+		int[] out = new int[values.length];
+		int count = 0;
+		outer:
+		for (int v : values)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				if (out[i] == v)
+					continue outer;
+			}
+			out[count++] = v;
+		}
+		return Arrays.copyOf(out, count);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,307 @@
+package matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes matrices in a compact binary file format, through memory-mapped I/O.
+ *
+ * A file is a 64 byte header followed by the elements as raw little-endian IEEE 754 doubles, the
+ * payload, which starts at a 64 byte boundary so that a mapping of it is aligned for doubles.
+ * All header fields are little-endian:
+ *
+ *  offset  size  field
+ *       0     4  magic, the bytes "MTRX"
+ *       4     2  version, 1
+ *       6     1  element type, 1 for 64-bit IEEE 754 doubles, the only one so far
+ *       7     1  layout, 0 for row-major and 1 for column-major
+ *       8     4  rows
+ *      12     4  columns
+ *      16     8  offset of the payload from the start of the file, 64
+ *      24     8  length of the payload in bytes, rows * columns * 8
+ *      32     8  checksum of the payload, see checksum()
+ *      40    24  reserved, 0
+ *
+ * Writing maps the file and copies each row straight into the mapping, so the cost is the copy
+ * and the disk, with nothing formatted or boxed; reading does the same in reverse, and map()
+ * opens a file without copying its payload at all. Mappings are limited to 2 GB each, so files
+ * are mapped in chunks of CHUNK bytes.
+ */
+public class MatrixFile
+{
+	static final int MAGIC = 0x5852544D; // "MTRX" read as a little-endian int
+	static final short VERSION = 1;
+	static final byte FLOAT64 = 1;
+	static final byte ROW_MAJOR = 0;
+	static final byte COLUMN_MAJOR = 1;
+	static final int HEADER = 64;
+	/** Bytes per mapping, a power of 2 below the 2 GB limit of a MappedByteBuffer. */
+	static final int CHUNK = 1 << 30;
+	/** Doubles per mapping. */
+	static final int CHUNK_ELEMENTS = CHUNK / 8;
+
+	private MatrixFile()
+	{
+	}
+
+	/**
+	 * Writes a matrix to a file, replacing anything already there.
+	 * @param file   : the file to write.
+	 * @param matrix : the matrix to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(File file, Matrix matrix) throws IOException
+	{
+		write(file, matrix.data(), matrix.stride(), matrix.rows(), matrix.cols());
+	}
+
+	/**
+	 * Writes a matrix to a file, replacing anything already there.
+	 * @param file   : the file to write.
+	 * @param matrix : the matrix to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(File file, MultiMatrix matrix) throws IOException
+	{
+		write(file, matrix.data(), matrix.stride(), matrix.rows(), matrix.cols());
+	}
+
+	/**
+	 * Writes the rows x cols row-major matrix held in a with the given row stride.
+	 */
+	static void write(File file, double[] a, int stride, int rows, int cols) throws IOException
+	{
+		long length = (long) rows * cols * 8;
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = out.getChannel();
+			out.setLength(0);
+			out.setLength(HEADER + length);
+			Checksum sum = new Checksum();
+			long element = 0; // the index in the payload of the next element to write
+			MappedByteBuffer mapped = null;
+			DoubleBuffer chunk = null;
+			for (int i = 0; i < rows; i++)
+			{
+				int off = i * stride;
+				int left = cols;
+				while (left > 0)
+				{
+					if (chunk == null || !chunk.hasRemaining())
+					{
+						if (mapped != null)
+							mapped.force();
+						mapped = map(channel, FileChannel.MapMode.READ_WRITE, element, length);
+						chunk = mapped.asDoubleBuffer();
+					}
+					int count = Math.min(left, chunk.remaining());
+					chunk.put(a, off, count);
+					sum.update(a, off, count);
+					off += count;
+					left -= count;
+					element += count;
+				}
+			}
+			// FileChannel.force need not flush writes made through a mapping, so each chunk is
+			// forced itself, and the payload is on disk before the header that describes it.
+			if (mapped != null)
+				mapped.force();
+			ByteBuffer header = header(rows, cols, ROW_MAJOR, sum.value());
+			channel.write(header, 0);
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps the payload from the given element on, up to CHUNK bytes of it.
+	 */
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long element, long length)
+			throws IOException
+	{
+		long position = element * 8;
+		MappedByteBuffer buffer = channel.map(mode, HEADER + position, Math.min(CHUNK, length - position));
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static ByteBuffer header(int rows, int cols, byte layout, long checksum)
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.put(FLOAT64);
+		header.put(layout);
+		header.putInt(rows);
+		header.putInt(cols);
+		header.putLong(HEADER);
+		header.putLong((long) rows * cols * 8);
+		header.putLong(checksum);
+		header.clear();
+		return header;
+	}
+
+	/**
+	 * Reads a matrix file into a Matrix, verifying its checksum.
+	 * @param file : the file to read.
+	 * @return the matrix.
+	 * @throws IOException if the file cannot be read, is not a matrix file, holds a matrix with
+	 * 	more elements than an array can hold, or fails its checksum.
+	 */
+	public static Matrix read(File file) throws IOException
+	{
+		MappedMatrix mapped = map(file);
+		return new Matrix(mapped.copy(true), mapped.rows(), mapped.cols());
+	}
+
+	/**
+	 * Reads a matrix file into a MultiMatrix on the given context, verifying its checksum.
+	 * @param file    : the file to read.
+	 * @param context : the threads the matrix is to compute on.
+	 * @return the matrix.
+	 * @throws IOException if the file cannot be read, is not a matrix file, holds a matrix with
+	 * 	more elements than an array can hold, or fails its checksum.
+	 */
+	public static MultiMatrix read(File file, ComputeContext context) throws IOException
+	{
+		MappedMatrix mapped = map(file);
+		return new MultiMatrix(mapped.copy(true), mapped.rows(), mapped.cols(), context);
+	}
+
+	/**
+	 * Opens a matrix file without reading its payload: the result reads elements straight from
+	 * the mapped file, which the operating system pages in as they are touched. The checksum is
+	 * not verified, since that would read the whole file; see MappedMatrix.verify().
+	 * @param file : the file to open.
+	 * @return a read-only view of the matrix in the file.
+	 * @throws IOException if the file cannot be read or is not a matrix file.
+	 */
+	public static MappedMatrix map(File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+			{
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException(file + " is too short to be a matrix file");
+			}
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a matrix file");
+			short version = header.getShort();
+			if (version != VERSION)
+				throw new IOException(file + " has unsupported version " + version);
+			byte type = header.get();
+			if (type != FLOAT64)
+				throw new IOException(file + " has unsupported element type " + type);
+			byte layout = header.get();
+			if (layout != ROW_MAJOR && layout != COLUMN_MAJOR)
+				throw new IOException(file + " has unknown layout " + layout);
+			int rows = header.getInt();
+			int cols = header.getInt();
+			long offset = header.getLong();
+			long length = header.getLong();
+			long checksum = header.getLong();
+			if (rows < 0 || cols < 0 || length != (long) rows * cols * 8 || offset % 8 != 0
+					|| offset < HEADER || offset + length > channel.size())
+				throw new IOException(file + " has an inconsistent header");
+
+			DoubleBuffer[] chunks = new DoubleBuffer[(int) ((length + CHUNK - 1) / CHUNK)];
+			for (int c = 0; c < chunks.length; c++)
+			{
+				long position = (long) c * CHUNK;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset + position,
+						Math.min(CHUNK, length - position));
+				chunks[c] = buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			return new MappedMatrix(chunks, rows, cols, layout == COLUMN_MAJOR, checksum);
+		} finally {
+			in.close(); // the mappings stay valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Returns the checksum the format uses for a payload: four interleaved running sums of the
+	 * bits of every fourth element, each step a multiply and a rotate so that the order of the
+	 * elements matters, mixed together at the end. Independent lanes keep it well ahead of the
+	 * disk, unlike a single running hash, each step of which would wait for the one before.
+	 * @return the checksum of the n elements of a from off on.
+	 */
+	static long checksum(double[] a, int off, int n)
+	{
+		Checksum sum = new Checksum();
+		sum.update(a, off, n);
+		return sum.value();
+	}
+
+	/**
+	 * The running state of checksum(), which can be fed a payload a piece at a time.
+	 */
+	static class Checksum
+	{
+		private static final long PRIME = 0x9E3779B97F4A7C15L;
+		private long h0 = 1;
+		private long h1 = 2;
+		private long h2 = 3;
+		private long h3 = 4;
+		/** The number of elements seen, which also fixes which lane the next one goes to. */
+		private long count;
+
+		void update(double[] a, int off, int n)
+		{
+			int i = 0;
+			while (i < n && (count & 3) != 0) // finish the group of four the last piece left open
+				add(Double.doubleToRawLongBits(a[off + i++]));
+			int whole = i;
+			for (; i <= n - 4; i += 4)
+			{
+				h0 = Long.rotateLeft((h0 ^ Double.doubleToRawLongBits(a[off + i])) * PRIME, 31);
+				h1 = Long.rotateLeft((h1 ^ Double.doubleToRawLongBits(a[off + i + 1])) * PRIME, 31);
+				h2 = Long.rotateLeft((h2 ^ Double.doubleToRawLongBits(a[off + i + 2])) * PRIME, 31);
+				h3 = Long.rotateLeft((h3 ^ Double.doubleToRawLongBits(a[off + i + 3])) * PRIME, 31);
+			}
+			count += i - whole;
+			for (; i < n; i++)
+				add(Double.doubleToRawLongBits(a[off + i]));
+		}
+
+		private void add(long bits)
+		{
+			switch ((int) (count & 3))
+			{
+			case 0:
+				h0 = Long.rotateLeft((h0 ^ bits) * PRIME, 31);
+				break;
+			case 1:
+				h1 = Long.rotateLeft((h1 ^ bits) * PRIME, 31);
+				break;
+			case 2:
+				h2 = Long.rotateLeft((h2 ^ bits) * PRIME, 31);
+				break;
+			default:
+				h3 = Long.rotateLeft((h3 ^ bits) * PRIME, 31);
+				break;
+			}
+			count++;
+		}
+
+		long value()
+		{
+			long h = count;
+			h = (h ^ h0) * PRIME;
+			h = (Long.rotateLeft(h, 27) ^ h1) * PRIME;
+			h = (Long.rotateLeft(h, 27) ^ h2) * PRIME;
+			h = (Long.rotateLeft(h, 27) ^ h3) * PRIME;
+			return h ^ (h >>> 29);
+		}
+	}
+}
\ No newline at end of file
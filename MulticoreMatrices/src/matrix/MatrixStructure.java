@@ -0,0 +1,280 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The shape of a square matrix's non-zero pattern, found in one pass over its entries.
+ *
+ * For every row the pass records the columns of its first and last non-zero, and it compares
+ * each entry below the diagonal with its mirror above. From those alone it tells whether the
+ * matrix is diagonal, upper or lower triangular, symmetric, or a row permutation of an upper
+ * or lower triangular matrix: the rows of a permuted upper triangular matrix all start in
+ * different columns, and sorting them by that column makes it upper triangular.
+ *
+ * The pass costs O(n^2) at most, and much less for a general matrix, since a row's first and
+ * last non-zero are usually its first and last entries and the symmetry test stops at the first
+ * mismatch. It is meant to be run once and cached: Matrix and MultiMatrix keep theirs until
+ * their entries change, and use it to send determinants, inverses and LU factorizations of
+ * triangular matrices to O(n^2) kernels in {@link Triangular}.
+ */
+public class MatrixStructure
+{
+	private final boolean square;
+	private final boolean upper;
+	private final boolean lower;
+	private final boolean symmetric;
+	private final int[] upperOrder;
+	private final int[] lowerOrder;
+
+	private MatrixStructure(boolean square, boolean upper, boolean lower, boolean symmetric,
+			int[] upperOrder, int[] lowerOrder)
+	{
+		this.square = square;
+		this.upper = upper;
+		this.lower = lower;
+		this.symmetric = symmetric;
+		this.upperOrder = upperOrder;
+		this.lowerOrder = lowerOrder;
+	}
+
+	/**
+	 * Analyzes the numRows x numCols row-major matrix held in a.
+	 * @param a       : the row-major array holding the matrix.
+	 * @param stride  : the row stride of a.
+	 * @param numRows : the number of rows of the matrix.
+	 * @param numCols : the number of columns of the matrix.
+	 * @param pool    : the pool to scan ranges of rows on in parallel, or null to scan sequentially.
+	 */
+	static MatrixStructure analyze(double[] a, int stride, int numRows, int numCols, ForkJoinPool pool)
+	{
+		if (numRows != numCols)
+			return new MatrixStructure(false, false, false, false, null, null);
+		int n = numRows;
+		Scan scan = new Scan(a, stride, n, 0, n);
+		if (pool == null || (long) n * n < 2 * LUFactorization.MIN_SOLVE_WORK)
+			scan.compute();
+		else
+			pool.invoke(scan);
+
+		boolean upper = true;
+		boolean lower = true;
+		for (int i = 0; i < n; i++)
+		{
+			upper &= scan.first[i] >= i; // an empty row starts at n
+			lower &= scan.last[i] <= i;  // and ends at -1
+		}
+		return new MatrixStructure(true, upper, lower, !scan.asymmetric,
+				order(scan.first, n), order(scan.last, n));
+	}
+
+	/**
+	 * Returns the row order that sorts the rows by the given column, if every row has a
+	 * different one, which is then a permutation of 0 .. n - 1.
+	 * @return order, where order[k] is the row whose column is k, or null.
+	 */
+	private static int[] order(int[] column, int n)
+	{
+		int[] order = new int[n];
+		for (int k = 0; k < n; k++)
+			order[k] = -1;
+		for (int i = 0; i < n; i++)
+		{
+			int k = column[i];
+			if (k < 0 || k >= n || order[k] >= 0)
+				return null;
+			order[k] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * @return true if the matrix is square.
+	 */
+	public boolean isSquare()
+	{
+		return square;
+	}
+
+	/**
+	 * @return true if every entry off the diagonal is 0.
+	 */
+	public boolean isDiagonal()
+	{
+		return upper && lower;
+	}
+
+	/**
+	 * @return true if every entry below the diagonal is 0.
+	 */
+	public boolean isUpperTriangular()
+	{
+		return upper;
+	}
+
+	/**
+	 * @return true if every entry above the diagonal is 0.
+	 */
+	public boolean isLowerTriangular()
+	{
+		return lower;
+	}
+
+	/**
+	 * @return true if the matrix is upper or lower triangular.
+	 */
+	public boolean isTriangular()
+	{
+		return upper || lower;
+	}
+
+	/**
+	 * Tells whether some ordering of the rows makes the matrix upper triangular with no 0 on the
+	 * diagonal. That includes upper triangular matrices with a non-zero diagonal themselves.
+	 * @return
+	 */
+	public boolean isPermutedUpperTriangular()
+	{
+		return upperOrder != null;
+	}
+
+	/**
+	 * Tells whether some ordering of the rows makes the matrix lower triangular with no 0 on the
+	 * diagonal. That includes lower triangular matrices with a non-zero diagonal themselves.
+	 * @return
+	 */
+	public boolean isPermutedLowerTriangular()
+	{
+		return lowerOrder != null;
+	}
+
+	/**
+	 * @return true if the matrix equals its transpose exactly.
+	 */
+	public boolean isSymmetric()
+	{
+		return symmetric;
+	}
+
+	/**
+	 * @return true if the matrix is triangular or a row permutation of a triangular matrix, so
+	 * 	that Triangular can factor, invert or take the determinant of it in O(n^2).
+	 */
+	boolean hasTriangularForm()
+	{
+		return upper || lower || upperOrder != null || lowerOrder != null;
+	}
+
+	/**
+	 * @return true if the triangular form is upper triangular, false if it is lower triangular.
+	 */
+	boolean triangularFormIsUpper()
+	{
+		return upper || (!lower && upperOrder != null);
+	}
+
+	/**
+	 * @return the rows in the order that gives the triangular form, or null if they are in it already.
+	 */
+	int[] triangularFormOrder()
+	{
+		if (upper || lower)
+			return null;
+		return upperOrder != null ? upperOrder : lowerOrder;
+	}
+
+	public String toString()
+	{
+		if (!square)
+			return "rectangular";
+		String shape;
+		if (upper && lower)
+			shape = "diagonal";
+		else if (upper)
+			shape = "upper triangular";
+		else if (lower)
+			shape = "lower triangular";
+		else if (upperOrder != null)
+			shape = "permuted upper triangular";
+		else if (lowerOrder != null)
+			shape = "permuted lower triangular";
+		else
+			shape = "general";
+		return symmetric ? shape + ", symmetric" : shape;
+	}
+
+	/**
+	 * Scans a range of rows, halving it until it holds about LUFactorization.MIN_SOLVE_WORK
+	 * entries. The ranges write disjoint parts of first and last, and only ever set asymmetric.
+	 */
+	private static class Scan extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] a;
+		final int stride;
+		final int n;
+		final int r0;
+		final int r1;
+		final int[] first;
+		final int[] last;
+		final Scan root;
+		volatile boolean asymmetric;
+
+		Scan(double[] a, int stride, int n, int r0, int r1)
+		{
+			this.a = a;
+			this.stride = stride;
+			this.n = n;
+			this.r0 = r0;
+			this.r1 = r1;
+			first = new int[n];
+			last = new int[n];
+			root = this;
+		}
+
+		private Scan(Scan parent, int r0, int r1)
+		{
+			a = parent.a;
+			stride = parent.stride;
+			n = parent.n;
+			this.r0 = r0;
+			this.r1 = r1;
+			first = parent.first;
+			last = parent.last;
+			root = parent.root;
+		}
+
+		protected void compute()
+		{
+			if (r1 - r0 > 1 && (long) (r1 - r0) * n >= 2 * LUFactorization.MIN_SOLVE_WORK)
+			{
+				int mid = (r0 + r1) >>> 1;
+				invokeAll(new Scan(this, r0, mid), new Scan(this, mid, r1));
+				return;
+			}
+			for (int i = r0; i < r1; i++)
+			{
+				int r = i * stride;
+				int j = 0;
+				while (j < n && a[r + j] == 0.0)
+					j++;
+				first[i] = j;
+				j = n - 1;
+				while (j >= 0 && a[r + j] == 0.0)
+					j--;
+				last[i] = j;
+				if (root.asymmetric)
+					continue;
+				for (j = 0; j < i; j++)
+				{
+					if (a[r + j] != a[j * stride + i])
+					{
+						root.asymmetric = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,329 @@
+package matrix;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of the MultiMatrix operations, published over JMX, and the hooks that feed
+ * the Flight Recorder events of {@link FlightEvents}.
+ *
+ * Metrics are off unless the JVM is started with -Dmatrix.metrics=true. ENABLED is a static
+ * final constant, so with it false the JIT folds every instrumentation point away and they cost
+ * nothing at all; nothing is registered either.
+ *
+ * With it true, each operation call is a Span on the calling thread, from begin() to close(),
+ * and the kernels the call goes through mark the phases it passes through with phase(), which
+ * ends the previous phase. For the call and for each phase, the wall time, the nominal flops
+ * added with flops(), the bytes the calling thread allocated, and the tasks handed to the
+ * context's executor with the time they waited in its queue are recorded into the
+ * OperationMetrics registered as matrix:type=Operation,name=operation,phase=phase. Fork-join
+ * work is not counted as tasks, as each kernel splits itself into a number of them that says
+ * nothing about overhead; its time shows in the phase it runs in.
+ *
+ * Recording costs about 0.3 microseconds per phase change, mostly the clock and allocation
+ * counter reads, and 0.1 per executor task, against phases of O(n^2) or more work: rref changes
+ * phase twice per column, so at n = 300, where a column takes about 200 microseconds, that is
+ * under 0.5%. Only much smaller matrices, and the one-task-per-element granularity, whose tasks
+ * are a single multiply-add, pay more than 1%.
+ *
+ * A call made from inside another, such as the LUfactorization() of inverse(), counts as part of
+ * the outer one.
+ *
+ * Spans are also made, without any of the above, while a Flight Recorder recording has the
+ * operation or elimination step event enabled, to carry the operation's event and that of the
+ * elimination step it is on, see step(). Those are behind FlightEvents.AVAILABLE, from
+ * -Dmatrix.jfr=true, instead of ENABLED, so that a continuous recording can have them without
+ * the metrics; with neither, begin() returns null and no Span is made.
+ */
+final class Metrics
+{
+	/** Whether anything is recorded, from the system property matrix.metrics. */
+	static final boolean ENABLED = Boolean.getBoolean("matrix.metrics");
+
+	/** The phases an operation's time is split into. */
+	enum Phase
+	{
+		/** Copying the operand before working on it in place. */
+		COPY("copy"),
+		/**
+		 * Choosing pivots: the pivot search and row interchanges of rref and determinant, and the
+		 * panel factorizations of the blocked LU, in which each column's search is interleaved
+		 * with the panel's own small elimination.
+		 */
+		PIVOT_SEARCH("pivot search"),
+		/** Eliminating below or around the pivots, including the trailing matrix updates. */
+		ELIMINATION("elimination"),
+		/** Forward and back substitution with the factors, in solve and inverse. */
+		BACK_SUBSTITUTION("back substitution");
+
+		final String label;
+
+		Phase(String label)
+		{
+			this.label = label;
+		}
+	}
+
+	private static final String TOTAL = "total";
+	private static final ConcurrentMap<String, OperationMetrics[]> operations =
+			new ConcurrentHashMap<String, OperationMetrics[]>();
+	private static final ThreadLocal<Span> current = new ThreadLocal<Span>();
+	private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+	private Metrics()
+	{
+	}
+
+	/**
+	 * @return the JVM's per-thread allocation counter, or null if it has none.
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter()
+	{
+		if (!ENABLED)
+			return null;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+		if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled())
+			return null;
+		return hotspot;
+	}
+
+	/**
+	 * @return the bytes the calling thread has allocated so far, or 0 if they are not counted.
+	 */
+	private static long allocatedBytes()
+	{
+		return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return the metrics of the operation, total first and then one per Phase, registering
+	 * 	them the first time the operation is seen.
+	 */
+	private static OperationMetrics[] metrics(String operation)
+	{
+		OperationMetrics[] metrics = operations.get(operation);
+		if (metrics != null)
+			return metrics;
+		Phase[] phases = Phase.values();
+		metrics = new OperationMetrics[phases.length + 1];
+		metrics[0] = new OperationMetrics(operation, TOTAL, threads != null);
+		for (Phase p : phases)
+			metrics[p.ordinal() + 1] = new OperationMetrics(operation, p.label, threads != null);
+		OperationMetrics[] raced = operations.putIfAbsent(operation, metrics);
+		if (raced != null)
+			return raced;
+		for (OperationMetrics m : metrics)
+		{
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(m, new ObjectName("matrix:type=Operation,name="
+						+ ObjectName.quote(operation) + ",phase=" + ObjectName.quote(m.getPhase())));
+			} catch (JMException e) { // already registered by another class loader: record unpublished
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Starts timing a call of an operation on the calling thread, for use in a try-with-resources
+	 * statement. The body never refers to the span, so the methods doing so suppress javac's
+	 * "try" lint warning.
+	 * @param operation : the name to publish the call under.
+	 * @param rows      : the number of rows of the matrix operated on, for the Flight Recorder event.
+	 * @param cols      : the number of columns of the matrix operated on.
+	 * @return the span, or null if metrics are off and no recording wants the call's events, or a
+	 * 	call is already being timed on this thread.
+	 */
+	static Span begin(String operation, int rows, int cols)
+	{
+		if (!(ENABLED || FlightEvents.AVAILABLE) || current.get() != null)
+			return null;
+		if (!ENABLED && !FlightEvents.recording())
+			return null;
+		Span span = new Span(ENABLED ? metrics(operation) : null, operation, rows, cols);
+		current.set(span);
+		return span;
+	}
+
+	/**
+	 * Ends the current phase of the call being timed on this thread, if any, and starts another.
+	 */
+	static void phase(Phase phase)
+	{
+		if (!ENABLED)
+			return;
+		Span span = current.get();
+		if (span != null)
+			span.enter(phase.ordinal() + 1);
+	}
+
+	/**
+	 * Marks the start of an elimination step of the call on this thread, if any, for the
+	 * matrix.EliminationStep event, ending the previous step's.
+	 * @param step : the pivot, or the first column of the block, the step eliminates with.
+	 */
+	static void step(int step)
+	{
+		if (!FlightEvents.AVAILABLE)
+			return;
+		Span span = current.get();
+		if (span != null)
+			span.step(step);
+	}
+
+	/**
+	 * Marks the end of the last elimination step of the call on this thread, if any, so that
+	 * what follows, such as substitution, is not counted as part of it.
+	 */
+	static void endStep()
+	{
+		if (!FlightEvents.AVAILABLE)
+			return;
+		Span span = current.get();
+		if (span != null)
+			span.endStep();
+	}
+
+	/**
+	 * Reports the executor saturated, as a matrix.PoolSaturation event, if it has too many tasks
+	 * queued; see FlightEvents.checkSaturation.
+	 */
+	static void checkSaturation(ExecutorService executor)
+	{
+		if (!FlightEvents.AVAILABLE)
+			return;
+		Span span = current.get();
+		FlightEvents.checkSaturation(executor, span == null ? null : span.operation);
+	}
+
+	/**
+	 * Adds nominal flops to the current phase and to the call being timed on this thread, if any.
+	 */
+	static void flops(double flops)
+	{
+		if (!ENABLED)
+			return;
+		Span span = current.get();
+		if (span != null)
+		{
+			span.metrics[span.phase].flops.add((long) flops);
+			if (span.phase != 0)
+				span.metrics[0].flops.add((long) flops);
+		}
+	}
+
+	/**
+	 * Counts a task about to be handed to an executor against the call being timed on this thread.
+	 * @return the task, wrapped to record how long it waits to start, or the task itself if no
+	 * 	call is being timed.
+	 */
+	static Runnable submitted(final Runnable task)
+	{
+		if (!ENABLED)
+			return task;
+		Span span = current.get();
+		if (span == null)
+			return task;
+		final OperationMetrics total = span.metrics[0];
+		final OperationMetrics phase = span.phase == 0 ? null : span.metrics[span.phase];
+		total.tasks.increment();
+		if (phase != null)
+			phase.tasks.increment();
+		final long submitted = System.nanoTime();
+		return new Runnable()
+		{
+			public void run()
+			{
+				long wait = System.nanoTime() - submitted;
+				total.recordQueueWait(wait);
+				if (phase != null)
+					phase.recordQueueWait(wait);
+				task.run();
+			}
+		};
+	}
+
+	/**
+	 * One call of an operation being timed, with the phase and the elimination step it is in.
+	 */
+	static final class Span implements AutoCloseable
+	{
+		/** The call's metrics, or null if metrics are off and the span only carries events. */
+		final OperationMetrics[] metrics;
+		final String operation;
+		private final int rows;
+		private final int cols;
+		private final Object event;
+		/** Whether a recording wanted elimination step events when the call began. */
+		private final boolean steps;
+		private Object stepEvent;
+		private int step;
+		private final long start;
+		private final long startBytes;
+		/** The index in metrics of the current phase, or 0 before the first. */
+		int phase;
+		private long phaseStart;
+		private long phaseBytes;
+
+		Span(OperationMetrics[] metrics, String operation, int rows, int cols)
+		{
+			this.metrics = metrics;
+			this.operation = operation;
+			this.rows = rows;
+			this.cols = cols;
+			event = FlightEvents.beginOperation();
+			steps = FlightEvents.recordingSteps();
+			startBytes = metrics == null ? 0 : allocatedBytes();
+			start = System.nanoTime();
+		}
+
+		void step(int next)
+		{
+			if (!steps)
+				return;
+			FlightEvents.commitStep(stepEvent, operation, step, rows, cols);
+			stepEvent = FlightEvents.beginStep();
+			step = next;
+		}
+
+		void endStep()
+		{
+			FlightEvents.commitStep(stepEvent, operation, step, rows, cols);
+			stepEvent = null;
+		}
+
+		void enter(int next)
+		{
+			long now = System.nanoTime();
+			long bytes = allocatedBytes();
+			if (phase != 0)
+				metrics[phase].record(now - phaseStart, bytes - phaseBytes);
+			phase = next;
+			phaseStart = now;
+			phaseBytes = bytes;
+		}
+
+		/**
+		 * Ends the current phase and the call.
+		 */
+		public void close()
+		{
+			if (metrics != null)
+			{
+				enter(0);
+				metrics[0].record(phaseStart - start, phaseBytes - startBytes);
+			}
+			endStep();
+			FlightEvents.commitOperation(event, operation, rows, cols);
+			current.remove();
+		}
+	}
+}
\ No newline at end of file
@@ -1,32 +1,118 @@
 package matrix;
 
 import java.util.ArrayList;
+import java.util.Formatter;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 public class MultiMatrix {
 
-	private static ExecutorService threadPool;
-	private Double[][] matrix;
+	/**
+	 * How the row operations of an elimination step are split into tasks.
+	 */
+	public enum Granularity
+	{
+		/** One task per element, the original scheme. Kept mainly as a benchmark baseline. */
+		ELEMENT,
+		/** One task per contiguous range of rows or columns, sized from the thread count and MIN_TASK_WORK. */
+		RANGE
+	}
+
+	/**
+	 * Which parallel algorithm factors the matrix for LUfactorization, and so for LU, solve,
+	 * inverse and the determinants.
+	 */
+	public enum Factorization
+	{
+		/** Blocked right-looking LU whose trailing updates are fork-join matrix multiplies. */
+		BLOCKED,
+		/** The pipelined elimination of the context's PipelinedElimination engine, with lookahead. */
+		PIPELINED,
+		/** A graph of tile kernels run as a dataflow, with tiles of getTileSize() rows and columns. */
+		TILED
+	}
+
+	/**
+	 * The least number of multiply-adds worth handing to a thread. Steps with less work than this
+	 * run on the calling thread, and larger steps are never split into tasks smaller than this.
+	 */
+	static final int MIN_TASK_WORK = 1 << 14;
+
+	/**
+	 * Elements are stored contiguously in row-major order, so element (i, j)
+	 * lives at matrix[i * stride + j].
+	 */
+	private double[] matrix;
 	private int row;
 	private int col;
-	private List<Future> futures;
-	private int numThreads;
+	private int stride;
+	/** The threads this matrix computes on, shared with every matrix derived from it. */
+	private ComputeContext context;
+	/** The context's executor, which the row operation tasks are submitted to. */
+	private ExecutorService threadPool;
+	private Granularity granularity = Granularity.RANGE;
+	private Factorization factorization = Factorization.BLOCKED;
+	private int tileSize = TiledLU.DEFAULT_TILE;
+	/** The shape of the non-zero pattern, found on first use and dropped when the entries change. */
+	private MatrixStructure structure;
 
+	/**
+	 * Creates a matrix on the process-wide context with the given number of threads,
+	 * see {@link ComputeContext#shared(int)}. No threads are created per matrix.
+	 * @param mat        : the elements, which are copied.
+	 * @param numThreads : the parallelism of the context to use.
+	 */
 	public MultiMatrix(Double[][] mat, int numThreads)
 	{
-		threadPool = Executors.newFixedThreadPool(numThreads, new DaemonThreadFactory());
-//		threadPool = Executors.newCachedThreadPool(new DaemonThreadFactory());
-		row = mat.length;
-		col = mat[0].length;
-		matrix = new Double[row][col];
-		matrixCopy(mat, matrix);
-		futures = new ArrayList<Future>(row);
-		this.numThreads = numThreads;
+		this(mat, ComputeContext.shared(numThreads));
+	}
+
+	/**
+	 * Creates a matrix that computes on the given context.
+	 * @param mat     : the elements, which are copied.
+	 * @param context : the threads to compute on, which the caller keeps ownership of.
+	 */
+	public MultiMatrix(Double[][] mat, ComputeContext context)
+	{
+		this(new double[mat.length * mat[0].length], mat.length, mat[0].length, context);
+		StepScheduler steps = new StepScheduler(threadPool);
+		for (int i = 0; i < row; i++)
+		{
+			steps.submit(new UnboxThread(mat[i], matrix, i * stride));
+		}
+		steps.awaitStep();
+	}
+
+	/**
+	 * Wraps an existing row-major array without copying it.
+	 * @param data       : the backing array, at least numRows * numCols long.
+	 * @param numRows    : number of rows in the matrix.
+	 * @param numCols    : number of columns in the matrix, which is also the row stride.
+	 * @param numThreads : the parallelism of the shared context to use.
+	 */
+	MultiMatrix(double[] data, int numRows, int numCols, int numThreads)
+	{
+		this(data, numRows, numCols, ComputeContext.shared(numThreads));
+	}
+
+	/**
+	 * Wraps an existing row-major array without copying it.
+	 * @param data    : the backing array, at least numRows * numCols long.
+	 * @param numRows : number of rows in the matrix.
+	 * @param numCols : number of columns in the matrix, which is also the row stride.
+	 * @param context : the threads to compute on.
+	 */
+	MultiMatrix(double[] data, int numRows, int numCols, ComputeContext context)
+	{
+		row = numRows;
+		col = numCols;
+		stride = numCols;
+		matrix = data;
+		this.context = context;
+		threadPool = context.executor();
 	}
 
 	/**
@@ -35,10 +121,148 @@ public class MultiMatrix {
 	public Double[][] clone()
 	{
 		Double[][] ret = new Double[row][col];
-		matrixCopy(matrix, ret);
+		for (int i = 0; i < row; i++)
+		{
+			for (int j = 0; j < col; j++)
+			{
+				ret[i][j] = matrix[i * stride + j];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the number of rows in the matrix.
+	 */
+	public int rows()
+	{
+		return row;
+	}
+
+	/**
+	 * @return the number of columns in the matrix.
+	 */
+	public int cols()
+	{
+		return col;
+	}
+
+	public Double get(int i, int j)
+	{
+		return matrix[i * stride + j];
+	}
+
+	/**
+	 * Wraps the result of an operation on this matrix, on the same context and with the same
+	 * granularity, factorization and tile size.
+	 */
+	private MultiMatrix derived(double[] data, int numRows, int numCols)
+	{
+		MultiMatrix ret = new MultiMatrix(data, numRows, numCols, context);
+		ret.granularity = granularity;
+		ret.factorization = factorization;
+		ret.tileSize = tileSize;
 		return ret;
 	}
 
+	/**
+	 * @return the row-major backing array of this matrix.
+	 */
+	double[] data()
+	{
+		return matrix;
+	}
+
+	/**
+	 * @return the distance, in elements, between the starts of two consecutive rows.
+	 */
+	int stride()
+	{
+		return stride;
+	}
+
+	/**
+	 * Returns the shape of this matrix's non-zero pattern: whether it is diagonal, triangular,
+	 * a row permutation of a triangular matrix, or symmetric. It is found the first time it is
+	 * asked for, with ranges of rows scanned in parallel, and kept until the entries change.
+	 * determinant(), inverse() and LUfactorization() use it to handle triangular matrices in O(n^2).
+	 * @return the structure of this matrix.
+	 */
+	public MatrixStructure structure()
+	{
+		if (structure == null)
+			structure = MatrixStructure.analyze(matrix, stride, row, col, context.forkJoinPool());
+		return structure;
+	}
+
+	/**
+	 * @return how row operations are split into tasks.
+	 */
+	public Granularity getGranularity()
+	{
+		return granularity;
+	}
+
+	/**
+	 * Sets how row operations are split into tasks. Matrices produced by this
+	 * matrix's operations, and products with it on the left, inherit the setting.
+	 * @param granularity : ELEMENT for one task per element, RANGE for one task per block of rows.
+	 */
+	public void setGranularity(Granularity granularity)
+	{
+		this.granularity = granularity;
+	}
+
+	/**
+	 * @return the algorithm LUfactorization uses.
+	 */
+	public Factorization getFactorization()
+	{
+		return factorization;
+	}
+
+	/**
+	 * Chooses the algorithm LUfactorization uses, which LU, solve, inverse and both determinants
+	 * go through. With PIPELINED the lookahead depth is the engine's, see
+	 * {@link ComputeContext#pipeline()}, and with TILED the tile size is setTileSize's.
+	 * Matrices produced by this matrix's operations, and products with it on the left, inherit
+	 * the setting.
+	 * @param factorization : BLOCKED, PIPELINED or TILED.
+	 */
+	public void setFactorization(Factorization factorization)
+	{
+		this.factorization = factorization;
+	}
+
+	/**
+	 * @return the number of rows and columns in a tile of the TILED factorization.
+	 */
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	/**
+	 * Sets the number of rows and columns in a tile of the TILED factorization. Smaller tiles
+	 * give the scheduler more tasks to overlap but run the kernels less efficiently; the
+	 * statistics of a tiled factorization, LUFactorization.getStatistics(), show the balance.
+	 * @param tileSize : at least 1.
+	 */
+	public void setTileSize(int tileSize)
+	{
+		if (tileSize < 1)
+			throw new IllegalArgumentException("tileSize must be at least 1, not " + tileSize);
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return the threads this matrix computes on.
+	 */
+	public ComputeContext getContext()
+	{
+		return context;
+	}
+
 	/**
 	 * Creates a deep copy of a matrix by copying each element of src into
 	 * the same position in dest.
@@ -48,20 +272,30 @@ public class MultiMatrix {
 	 */
 	public static void matrixCopy(Double[][] src, Double[][] dest)
 	{
-		List<Future> futures = new ArrayList<Future>(src.length);
+		ExecutorService threadPool = ComputeContext.getDefault().executor();
+		StepScheduler steps = new StepScheduler(threadPool);
 		for (int i = 0; i < src.length; i++)
 		{
-			futures.add(threadPool.submit(new CopyThread(src[i], dest[i])));
-		}
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
+			steps.submit(new CopyThread(src[i], 0, dest[i], 0, src[i].length));
 		}
+		steps.awaitStep();
+
+	}
 
+	/**
+	 * Returns a contiguous copy of the backing array, copied one row per task.
+	 */
+	private double[] copyData()
+	{
+		Metrics.phase(Metrics.Phase.COPY);
+		double[] ret = new double[row * col];
+		StepScheduler steps = new StepScheduler(threadPool);
+		for (int i = 0; i < row; i++)
+		{
+			steps.submit(new CopyThread(matrix, i * stride, ret, i * col, col));
+		}
+		steps.awaitStep();
+		return ret;
 	}
 
 	/**
@@ -81,7 +315,7 @@ public class MultiMatrix {
 	 */
 	public String toString(int precision)
 	{
-		String mat = "";
+		StringBuilder mat = new StringBuilder(row * col * (precision + 5));
 		List<Future<String>> rowStrings = new ArrayList<Future<String>>(row);
 
 		for (int i = 0; i < row; i++)
@@ -91,102 +325,161 @@ public class MultiMatrix {
 		try {
 			for (int i = 0; i < row; i++)
 			{
-				mat += rowStrings.get(i).get();
+				mat.append(rowStrings.get(i).get());
 			}
 		} catch (InterruptedException e) {
-			System.err.println("Error: Thread Interrupted.");
+			Thread.currentThread().interrupt();
+			throw new ComputationException("Interrupted formatting the matrix", e);
 		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception.");
+			throw new ComputationException("Formatting a row failed", e.getCause());
 		}
-		return mat;
+		return mat.toString();
 	}
 
 	/**
 	 * Interchanges two rows, that is if given row1 and row2, all the values of
 	 * row1 are placed in row2 and vice versa.
+	 * @param mat   : the row-major array holding the rows.
+	 * @param width : the number of columns (and row stride) of mat.
 	 * @param the first row to be interchanged
 	 * @param the second row to be interchanged
 	 * @return -1 if the two rows are interchanged or 1 if they are not, that is it returns 1 if
 	 * row1 and row2 are the same.
 	 */
-	private int rowInterchange(Double[][] mat, int row1, int row2)
+	private int rowInterchange(double[] mat, int width, int row1, int row2)
 	{
 		if (row1 == row2)
 			return 1;
-		Double[] temp = mat[row1];
-		mat[row1] = mat[row2];
-		mat[row2] = temp;
+		Kernels.swap(width, mat, row1 * width, mat, row2 * width);
 		return -1;
 	}
 
 	/**
 	 * Scales a specific row of a matrix by a given amount and returns the value
 	 * of the scaleFactor.
+	 * @param steps : the scheduler of the elimination this row operation is a step of.
+	 * @param mat   : the row-major array holding the row.
+	 * @param width : the number of columns (and row stride) of mat.
 	 * @param rowNum the number of the row to scale, between 0 and n-1 for a matrix with n rows
 	 * @param scaleFactor the factor by which the row is to be scaled
 	 * @return the value by which the row was scaled.
 	 */
-	private double rowScale(Double[] row, double scaleFactor)
+	private double rowScale(StepScheduler steps, double[] mat, int width, int rowNum, double scaleFactor)
 	{
-		for (int i = 0; i < row.length; i++)
+		if (granularity == Granularity.ELEMENT)
 		{
-			//			mat[rowNum][i] = mat[rowNum][i] * scaleFactor + 0.0;
-			futures.add(threadPool.submit(new ScaleThread(row, i, scaleFactor)));
+			for (int i = 0; i < width; i++)
+			{
+				steps.submit(new ScaleThread(mat, rowNum * width + i, scaleFactor));
+			}
 		}
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
+		else
+		{
+			int[] bounds = partition(0, width, 1);
+			if (bounds.length == 2) // too little work to be worth a task
+			{
+				new ScaleRangeThread(mat, rowNum * width, 0, width, scaleFactor).run();
+				return scaleFactor;
+			}
+			for (int t = 0; t + 1 < bounds.length; t++)
+			{
+				steps.submit(new ScaleRangeThread(mat, rowNum * width, bounds[t], bounds[t + 1], scaleFactor));
+			}
 		}
+		steps.awaitStep();
 		return scaleFactor;
 	}
 
 	/**
-	 * Adds rows indexed by rowTo and rowFrom together, where rowFrom
-	 * is scaled by scaleFactor, element by element and stores the result in rowTo.
-	 * @param rowTo       : one row to be added, and destination.
-	 * @param rowFrom     : one row to be scaled and added.
-	 * @param scaleFactor : amount to scale rowFrom.
-	 * @return            : 1 unless rowTo = rowFrom, in which case it returns scaleFactor + 1.
+	 * Eliminates column pivotCol from every row in [firstRow, numRows) other than pivotRow, by adding
+	 * the multiple of pivotRow that makes the entry 0, and then storing an exact 0 there.
+	 * The multipliers are saved in column pivotCol of L when L is not null.
+	 * @param steps    : the scheduler of the elimination this row operation is a step of.
+	 * @param mat      : the row-major array holding the rows.
+	 * @param width    : the number of columns (and row stride) of mat.
+	 * @param numRows  : the number of rows in mat.
+	 * @param pivotRow : the row holding the pivot.
+	 * @param pivotCol : the column holding the pivot.
+	 * @param firstRow : the first row to eliminate.
+	 * @param L        : a numRows x numRows row-major array receiving the multipliers, or null.
 	 */
-	private double rowAdd(Double[][] mat, int rowTo, int rowFrom, double scaleFactor)
+	private void eliminate(StepScheduler steps, double[] mat, int width, int numRows, int pivotRow, int pivotCol, int firstRow, double[] L)
 	{
-		List<Future> futures = new ArrayList<Future>(col);
-		if (rowTo == rowFrom)
-			return rowScale(mat[rowTo], scaleFactor + 1) + 0.0;
-		for (int i = 0; i < mat[0].length; i++)
+		if (granularity == Granularity.ELEMENT)
 		{
-			//			mat[rowTo][i] = mat[rowTo][i] + mat[rowFrom][i] * scaleFactor + 0.0;
-			futures.add(threadPool.submit(new AddThread(mat, rowTo, rowFrom, i, scaleFactor)));
+			double pivot = mat[pivotRow * width + pivotCol];
+			for (int k = firstRow; k < numRows; k++)
+			{
+				if (k == pivotRow)
+					continue;
+				// Each row's multiplier is read before any of that row's tasks are submitted.
+				double factor = mat[k * width + pivotCol] / pivot;
+				if (L != null)
+					L[k * numRows + pivotCol] = factor;
+				for (int i = 0; i < width; i++)
+				{
+					steps.submit(new AddThread(mat, k * width + i, pivotRow * width + i, -factor));
+				}
+			}
+			steps.awaitStep();
+			for (int k = firstRow; k < numRows; k++)
+			{
+				if (k != pivotRow)
+					mat[k * width + pivotCol] = 0.0; // Ensure it is 0, regardless of rounding error.
+			}
+			return;
 		}
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
+
+		int[] bounds = partition(firstRow, numRows, width);
+		if (bounds.length == 2) // too little work to be worth a task
+		{
+			new RowRangeThread(mat, width, numRows, pivotRow, pivotCol, firstRow, numRows, L).run();
+			return;
+		}
+		for (int t = 0; t + 1 < bounds.length; t++)
+		{
+			steps.submit(new RowRangeThread(mat, width, numRows, pivotRow, pivotCol, bounds[t], bounds[t + 1], L));
+		}
+		steps.awaitStep();
+	}
+
+	/**
+	 * Splits [first, last) into contiguous ranges, one per task. There are never more ranges than
+	 * threads, and never so many that a range holds less than MIN_TASK_WORK multiply-adds.
+	 * @param first        : the first index of the range.
+	 * @param last         : one past the last index of the range.
+	 * @param workPerIndex : the number of multiply-adds needed for each index.
+	 * @return the boundaries of the ranges, so range t is [bounds[t], bounds[t + 1]).
+	 */
+	int[] partition(int first, int last, long workPerIndex)
+	{
+		int count = Math.max(last - first, 0);
+		long byWork = count * Math.max(workPerIndex, 1) / MIN_TASK_WORK;
+		int tasks = (int) Math.max(1, Math.min(Math.min(context.parallelism(), count), byWork));
+		int[] bounds = new int[tasks + 1];
+		for (int t = 0; t <= tasks; t++)
+		{
+			bounds[t] = first + (int) ((long) count * t / tasks);
 		}
-		return 1.0;
+		return bounds;
 	}
 
 	/**
 	 * Returns the index of the row you should swap with if there is a valid
 	 * row to swap, that is if a row below the current row has a non-zero entry in column col.
 	 * If there is on such row, returns -1.
-	 * @param mat : the Double[][] to search for row for swapping
+	 * @param mat     : the row-major array to search for row for swapping
+	 * @param width   : the number of columns (and row stride) of mat.
+	 * @param numRows : the number of rows in mat.
 	 * @param row : the current row
 	 * @param col : the current column
 	 * @return
 	 */
-	private int determineRowSwap(Double[][] mat, int row, int col)
+	private int determineRowSwap(double[] mat, int width, int numRows, int row, int col)
 	{
-		for (int i = row + 1; i < mat.length; i++)
+		for (int i = row + 1; i < numRows; i++)
 		{
-			if (mat[i][col] != 0)
+			if (mat[i * width + col] != 0)
 				return i;
 		}
 		return -1;
@@ -196,478 +489,576 @@ public class MultiMatrix {
 	 * Returns the reduced row echelon form of this matrix.
 	 * @return
 	 */
+	@SuppressWarnings("try")
 	public MultiMatrix rref()
 	{
-		Double[][] mat = this.clone();
-
-		int j = 0;
-		for (int i = 0; i < row && j < col; i++)
+		try (Metrics.Span span = Metrics.begin("rref", row, col))
 		{
-			for (; j < col; j++)
+			double[] mat = copyData();
+			StepScheduler steps = new StepScheduler(threadPool);
+
+			int j = 0;
+			for (int i = 0; i < row && j < col; i++)
 			{
-				if (mat[i][j] == 0) // pivot can't be 0
-				{
-					int swap = determineRowSwap(mat, i, j);
-					if (swap == -1) // no pivot in this column
-						continue;
-					else
-						rowInterchange(mat, i, swap); // swap with row with pivot in this column
-				}
-				rowScale(mat[i], 1 / mat[i][j]); // make pivot 1
-				mat[i][j] = 1.0; // ensure it is one, regardless of rounding error
-				for (int k = 0; k < row; k++) // eliminate all other values in this column
+				Metrics.step(i);
+				for (; j < col; j++)
 				{
-					if (k == i)	// don't alter current row
-						continue;
-					futures.add(threadPool.submit(new RowAddThread(mat, k, i, j, -mat[k][j])));
-					//					rowAdd(mat, k, i, -mat[k][j]);
-					//					mat[k][j] = 0.0; // Ensure it is 0, regardless of rounding error. 
+					Metrics.phase(Metrics.Phase.PIVOT_SEARCH);
+					if (mat[i * col + j] == 0) // pivot can't be 0
+					{
+						int swap = determineRowSwap(mat, col, row, i, j);
+						if (swap == -1) // no pivot in this column
+							continue;
+						else
+							rowInterchange(mat, col, i, swap); // swap with row with pivot in this column
+					}
+					Metrics.phase(Metrics.Phase.ELIMINATION);
+					Metrics.flops(2.0 * row * (col - j));
+					rowScale(steps, mat, col, i, 1 / mat[i * col + j]); // make pivot 1
+					mat[i * col + j] = 1.0; // ensure it is one, regardless of rounding error
+					eliminate(steps, mat, col, row, i, j, 0, null); // eliminate all other values in this column
+					break;
 				}
-				try {
-					for (Future f : futures)
-						f.get();
-				} catch (InterruptedException e) {
-					System.err.println("Error: Interrupted Exception");
-				} catch (ExecutionException e) {
-					System.err.println("Error: Execution Exception");
-				}
-				break;
+				j++;
 			}
-			j++;
-		}
+			Metrics.endStep();
 
-		return new MultiMatrix(mat, numThreads);
+			MultiMatrix ret = derived(mat, row, col);
+			return ret;
+		}
 	}
-	
+
 	/**
 	 * Returns the inverse of this matrix if it has one, or null otherwise.
+	 * The matrix is factored once in parallel as P * A = L * U, and ranges of rows of the
+	 * inverse are then formed from the factors in parallel, see {@link LUFactorization#inverse()}.
+	 * A matrix whose smallest pivot is within rounding error of 0 counts as singular.
 	 * @return
 	 */
+	@SuppressWarnings("try")
 	public MultiMatrix inverse()
 	{
-		if (row != col) // Can't invert a matrix that's not square.
-			return null;
-		
-		Double[][] mat = new Double[row][col * 2];
-		for (int i = 0; i < row; i++)
-		{
-			futures.add(threadPool.submit(new CopyThread(matrix[i], mat[i])));
-			futures.add(threadPool.submit(new IdentityCopyThread(mat[i], i)));
-		}
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
-		}
-		
-		MultiMatrix rref = new MultiMatrix(mat, numThreads);
-		rref = rref.rref();
-		
-		List<Future<Boolean>> invertible = new ArrayList<Future<Boolean>>(row);
-		for (int i = 0; i < row; i++) // first half of matrix should now be identity if invertible
+		try (Metrics.Span span = Metrics.begin("inverse", row, col))
 		{
-			invertible.add(threadPool.submit(new InvertibleThread(rref.matrix[i], i)));
-		}
-		try {
-			for (Future<Boolean> f : invertible)
-				if(f.get() == false)
-					return null;
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
-		}
+			if (row != col) // Can't invert a matrix that's not square.
+				return null;
 
-		Double[][] ret = new Double[row][col];
-		for (int i = 0; i < row; i++)
-		{
-			futures.add(threadPool.submit(new CopyInverseThread(rref.matrix[i], ret[i])));
+			Matrix inverse;
+			if (structure().hasTriangularForm())
+				inverse = Triangular.inverse(structure, matrix, stride, row, context.forkJoinPool());
+			else
+				inverse = LUfactorization().inverse();
+			if (inverse == null)
+				return null;
+			return derived(inverse.data(), row, col);
 		}
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
-		}
-
-		return new MultiMatrix(ret, numThreads);
 	}
-	
+
 	/**
 	 * Returns the determinant of a matrix. If the matrix
 	 * is not square, returns null.
+	 * With the PIPELINED or TILED factorization it is the product of the pivots of that LU.
+	 * A triangular matrix, or a row permutation of one, skips elimination: its determinant is
+	 * the product of the diagonal.
 	 * @return
 	 */
+	@SuppressWarnings("try")
 	public Double determinant()
 	{
-		if (row != col)
-			return null;
-		
-		double det = 1;
-		
-		Double[][] mat = new Double[row][col];
-		matrixCopy(matrix, mat);
-		
-		// The following code is a near copy of rref.
-		// Some differences will include computing the determinant as we go, 
-		// and only finding the row echelon form, not reduced row echelon form.
-		for (int i = 0, j = 0; i < row && j < col; i++, j++)
-		{
-			if (mat[i][j] == 0) // pivot can't be 0
-			{
-				int swap = determineRowSwap(mat, i, j);
-				if (swap == -1) // no pivot in this column
-					return 0.0;
-				else
-					det *= rowInterchange(mat, i, swap); // swap with row with pivot in this column
-			}
-			for (int k = i + 1; k < row; k++) // eliminate all other values in this column below this row
+		try (Metrics.Span span = Metrics.begin("determinant", row, col))
+		{
+			if (row != col)
+				return null;
+			if (structure().hasTriangularForm())
+				return Triangular.determinant(structure, matrix, stride, row);
+			if (factorization != Factorization.BLOCKED)
+				return LUfactorization().determinant();
+
+			double det = 1;
+
+			double[] mat = copyData();
+			StepScheduler steps = new StepScheduler(threadPool);
+
+			// The following code is a near copy of rref.
+			// Some differences will include computing the determinant as we go,
+			// and only finding the row echelon form, not reduced row echelon form.
+			for (int i = 0, j = 0; i < row && j < col; i++, j++)
 			{
-				futures.add(threadPool.submit(new RowAddThread(mat, k, i, j, -mat[k][j] / mat[i][j])));
-//				det *= rowAdd(mat, k, i, -mat[k][j] / mat[i][j]);
-			}
-			try {
-				for (Future f : futures)
-					f.get();
-			} catch (InterruptedException e) {
-				System.err.println("Error: Interrupted Exception");
-			} catch (ExecutionException e) {
-				System.err.println("Error: Execution Exception");
+				Metrics.step(i);
+				Metrics.phase(Metrics.Phase.PIVOT_SEARCH);
+				if (mat[i * col + j] == 0) // pivot can't be 0
+				{
+					int swap = determineRowSwap(mat, col, row, i, j);
+					if (swap == -1) // no pivot in this column
+						return 0.0;
+					else
+						det *= rowInterchange(mat, col, i, swap); // swap with row with pivot in this column
+				}
+				Metrics.phase(Metrics.Phase.ELIMINATION);
+				Metrics.flops(2.0 * (row - i - 1) * col);
+				eliminate(steps, mat, col, row, i, j, i + 1, null); // eliminate all other values in this column below this row
 			}
-		}
-		
-		for (int i = 0; i < row; i++)
-		{
-			for (int j = 0; j < i; j++)
+			Metrics.endStep();
+
+			for (int i = 0; i < row; i++)
 			{
-				if (mat[i][j] != 0.0) // not invertible
-					return 0.0;
+				for (int j = 0; j < i; j++)
+				{
+					if (mat[i * col + j] != 0.0) // not invertible
+						return 0.0;
+				}
 			}
-		}
-		
-		for (int i = 0; i < row; i++)
-			det *= mat[i][i];
 
-		return det;
+			for (int i = 0; i < row; i++)
+				det *= mat[i * col + i];
+
+			return det;
+		}
 	}
-	
+
 	/**
-	 * Determines the LUP decomposition of a matrix. 
-	 * @return an array of Matrix objects where arr[0] = L and arr[1] = U in the determined LU decomposition.
-	 * 	If a permutation is required for this matrix, it further includes arr[2] = P.
-	 *		Returns null if matrix is either rectangular or singular. 	
+	 * Returns the determinant as its sign and the logarithm of its magnitude, computed from a
+	 * partially pivoted LU factorization. Unlike determinant() it cannot overflow or underflow,
+	 * which it does for most random matrices larger than about 200 x 200. The matrix is factored
+	 * in parallel, and for large matrices the diagonal is reduced in parallel too.
+	 * @return the log determinant, or null if the matrix is not square.
 	 */
-	public MultiMatrix[] LU()
+	@SuppressWarnings("try")
+	public LogDeterminant logAbsDeterminant()
 	{
-		if (col != row)
-			return null;
-		
-		Double[][] L = new Double[row][row];
-		Double[][] U = new Double[row][col];
-		ArrayList<Integer[]> swaps = new ArrayList<Integer[]>();
-		
-		for (int i = 0; i < row; i++)
+		try (Metrics.Span span = Metrics.begin("logAbsDeterminant", row, col))
 		{
-			futures.add(threadPool.submit(new CopyThread(matrix[i], U[i])));
-			futures.add(threadPool.submit(new LowerCopyThread(L[i], i)));
-		}
-		
-		try {
-			for (Future f : futures)
-				f.get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
+			LUFactorization lu = LUfactorization();
+			if (lu == null)
+				return null;
+			return lu.logAbsDeterminant();
 		}
+	}
 
-		for (int i = 0; i < row; i++)
+	/**
+	 * Factors this matrix as P * A = L * U, pivoting on the largest entry in each column.
+	 * With the BLOCKED factorization the row interchanges, triangular solves and trailing updates
+	 * of each step run in parallel; with PIPELINED the context's PipelinedElimination engine
+	 * overlaps the steps themselves; with TILED a dependency-driven scheduler runs the tile kernels
+	 * of all steps as soon as their inputs are ready, and records statistics in the result.
+	 * Either way the factorization's later solves run in parallel. A triangular matrix, or a row
+	 * permutation of one, needs no elimination and is factored in O(n^2) whatever the setting.
+	 * @return the factorization, or null if the matrix is rectangular. A singular matrix still
+	 * 	factors; see LUFactorization.isSingular().
+	 */
+	@SuppressWarnings("try")
+	public LUFactorization LUfactorization()
+	{
+		try (Metrics.Span span = Metrics.begin("LUfactorization", row, col))
 		{
-			if (U[i][i] == 0) // pivot can't be 0
-			{
-				int swap = determineRowSwap(U, i, i);
-				if (swap == -1) // no pivot in this column
-				{
-					return null;
-				}
-				else
-				{
-					Integer[] temp = {i, swap};
-					swaps.add(temp);
-					rowInterchange(U, i, swap); // swap with row with pivot in this column
-				}
-			}
-			for (int k = i + 1; k < row; k++) // eliminate all other values in this column below this row
+			if (col != row)
+				return null;
+			if (structure().hasTriangularForm())
 			{
-				futures.add(threadPool.submit(new LUAddThread(L, U, k, i)));
-			}
-			try {
-				for (Future f : futures)
-					f.get();
-			} catch (InterruptedException e) {
-				System.err.println("Error: Interrupted Exception");
-			} catch (ExecutionException e) {
-				System.err.println("Error: Execution Exception");
+				LUFactorization lu = Triangular.factor(structure, matrix, stride, row, context.forkJoinPool());
+				if (lu != null)
+					return lu;
 			}
+			if (factorization == Factorization.PIPELINED)
+				return context.pipeline().factor(copyData(), row, context.forkJoinPool());
+			if (factorization == Factorization.TILED)
+				return TiledLU.factor(copyData(), row, tileSize, context);
+			return LUFactorization.factor(copyData(), row, context.forkJoinPool());
 		}
-		
-		MultiMatrix[] LUP;
-		List<Future<MultiMatrix>> lup;
-		if (swaps.size() > 0)
-		{
-			Double[][] P = new Double[row][col];
-			for (int i = 0; i < row; i++)
-			{
-				futures.add(threadPool.submit(new LowerCopyThread(P[i], i)));
-			}
-			try {
-				for (Future f : futures)
-					f.get();
-			} catch (InterruptedException e) {
-				System.err.println("Error: Interrupted Exception");
-			} catch (ExecutionException e) {
-				System.err.println("Error: Execution Exception");
-			}
+	}
 
-			for (int i = 0; i < swaps.size(); i++)
-			{
-				Integer[] temp = swaps.get(i);
-				rowInterchange(P, temp[0], temp[1]);
-			}
-			LUP = new MultiMatrix[3];
-			lup = new ArrayList<Future<MultiMatrix>>(3);
-			lup.add(threadPool.submit(new NewMatrixThread(L)));
-			lup.add(threadPool.submit(new NewMatrixThread(U)));
-			lup.add(threadPool.submit(new NewMatrixThread(P)));
-		}
-		else
+	/**
+	 * Solves the linear system A * x = b, where A is this matrix, with one parallel LU
+	 * factorization followed by forward and back substitution.
+	 * To solve against many right-hand sides, factor once with LUfactorization() and call its
+	 * solve method for each one instead.
+	 * @param b : the right-hand side, with as many entries as the matrix has rows.
+	 * @return x, or null if the matrix is rectangular or singular, or b has the wrong length.
+	 */
+	@SuppressWarnings("try")
+	public double[] solve(double[] b)
+	{
+		try (Metrics.Span span = Metrics.begin("solve", row, col))
 		{
-			LUP = new MultiMatrix[2];
-			lup = new ArrayList<Future<MultiMatrix>>(2);
-			lup.add(threadPool.submit(new NewMatrixThread(L)));
-			lup.add(threadPool.submit(new NewMatrixThread(U)));
+			LUFactorization lu = LUfactorization();
+			if (lu == null)
+				return null;
+			return lu.solve(b);
 		}
-		try {
-			for (int i = 0; i < LUP.length; i++)
-				LUP[i] = lup.get(i).get();
-		} catch (InterruptedException e) {
-			System.err.println("Error: Interrupted Exception");
-		} catch (ExecutionException e) {
-			System.err.println("Error: Execution Exception");
-		}
-		
-		return LUP;
-
 	}
 
-	private class NewMatrixThread implements Callable<MultiMatrix>
+	/**
+	 * Solves A * X = B, where A is this matrix, for every column of B with a single LU factorization.
+	 * The columns of B are split into ranges that are substituted in parallel.
+	 * @param B : the right-hand sides, with as many rows as the matrix.
+	 * @return X, or null if the matrix is rectangular or singular, or B has the wrong number of rows.
+	 */
+	@SuppressWarnings("try")
+	public MultiMatrix solve(MultiMatrix B)
 	{
-		Double[][] mat;
-		
-		public NewMatrixThread(Double[][] mat)
+		try (Metrics.Span span = Metrics.begin("solve", row, col))
 		{
-			this.mat = mat;
-		}
-		
-		public MultiMatrix call()
-		{
-			return new MultiMatrix(mat, numThreads);
+			LUFactorization lu = LUfactorization();
+			if (lu == null || lu.isSingular() || B.row != row)
+				return null;
+			double[] X = B.copyData();
+			lu.solveInPlace(X, B.col);
+			MultiMatrix ret = derived(X, row, B.col);
+			return ret;
 		}
 	}
-	
-	private class LUAddThread implements Runnable
+
+	/**
+	 * Factors this matrix as A = L * L^T, where L is lower triangular, if it is symmetric and
+	 * positive-definite. Only the lower triangle is factored, with half the flops of LU(). The
+	 * tile kernels run in parallel as their inputs become ready, with tiles of getTileSize() rows
+	 * and columns, and the factorization's later solves run in parallel too.
+	 * @return the factorization, or null if the matrix is not square, not exactly symmetric or
+	 * 	not positive-definite.
+	 */
+	public CholeskyFactorization cholesky()
 	{
-		Double L[][];
-		Double U[][];
-		int rowTo;
-		int rowFrom;
-		
-		public LUAddThread(Double[][] L, Double[][] U, int rowTo, int rowFrom)
-		{
-			this.L = L;
-			this.U = U;
-			this.rowTo = rowTo;
-			this.rowFrom = rowFrom;
-		}
-		
-		public void run()
-		{
-			L[rowTo][rowFrom] = U[rowTo][rowFrom] / U[rowFrom][rowFrom];
-			rowAdd(U, rowTo, rowFrom, -U[rowTo][rowFrom] / U[rowFrom][rowFrom]);
-			U[rowTo][rowFrom] = 0.0; // Ensure it is 0, regardless of rounding error.
-		}
-		
+		if (!structure().isSymmetric())
+			return null;
+		double[] lower = CholeskyFactorization.lowerTriangle(matrix, stride, row);
+		return TiledCholesky.factor(lower, row, tileSize, context);
 	}
-	
-	private class LowerCopyThread implements Runnable
+
+	/**
+	 * Factors this matrix as A = Q * R with blocked Householder reflectors. The reflectors of each
+	 * panel are applied to the trailing columns as a few matrix multiplies, which run in parallel.
+	 * @return the factorization.
+	 */
+	public QRFactorization qr()
 	{
-		Double[] dest;
-		int rowNum;
-		
-		public LowerCopyThread(Double[] dest, int rowNum)
+		return QRFactorization.factor(copyData(), row, col, context.forkJoinPool());
+	}
+
+	/**
+	 * Factors this matrix as A = Q * R with a tall-skinny QR: the rows are split into one block
+	 * per thread, the blocks are factored in parallel and their R factors are merged pairwise.
+	 * This suits matrices with many more rows than columns, whose blocked QR would be bound by
+	 * its sequential panels.
+	 * @return the factorization, or null if the matrix has fewer rows than columns.
+	 */
+	public TallSkinnyQR tallSkinnyQR()
+	{
+		if (row < col)
+			return null;
+		return TallSkinnyQR.factor(matrix, stride, row, col, context.forkJoinPool());
+	}
+
+	/**
+	 * Finds the x that minimizes ||A * x - b||, where A is this matrix. Matrices tall enough to
+	 * give every thread a block of at least twice as many rows as columns go through
+	 * tallSkinnyQR(), and the others through qr().
+	 * @param b : the right-hand side, with as many entries as the matrix has rows.
+	 * @return x, or null if the matrix has fewer rows than columns or is rank deficient, or b has
+	 * 	the wrong length.
+	 */
+	public double[] leastSquares(double[] b)
+	{
+		if (row < col)
+			return null;
+		if (context.parallelism() > 1 && row / context.parallelism() >= 2 * col)
+			return tallSkinnyQR().leastSquares(b);
+		return qr().leastSquares(b);
+	}
+
+	/**
+	 * Determines the LUP decomposition of a matrix.
+	 * The factorization is blocked and pivots on the largest entry in each column, so P * A = L * U.
+	 * @return an array of Matrix objects where arr[0] = L and arr[1] = U in the determined LU decomposition.
+	 * 	If a permutation is required for this matrix, it further includes arr[2] = P.
+	 *		Returns null if matrix is either rectangular or singular.
+	 */
+	@SuppressWarnings("try")
+	public MultiMatrix[] LU()
+	{
+		try (Metrics.Span span = Metrics.begin("LU", row, col))
 		{
-			this.dest = dest;
-			this.rowNum = rowNum;
+			LUFactorization lu = LUfactorization();
+			if (lu == null || lu.isSingular())
+				return null;
+
+			MultiMatrix[] LUP = new MultiMatrix[lu.hasRowInterchanges() ? 3 : 2];
+			LUP[0] = derived(lu.getL().data(), row, row);
+			LUP[1] = derived(lu.getU().data(), row, row);
+			if (LUP.length == 3)
+				LUP[2] = derived(lu.getP().data(), row, row);
+			return LUP;
 		}
-		
-		public void run()
+	}
+
+	/**
+	 * Returns the product x * y, or null if the number of columns of x does not
+	 * match the number of rows of y.
+	 * The product is computed by recursively splitting the result into tiles on a
+	 * work-stealing pool with as many workers as x has threads.
+	 * @param x : the left operand.
+	 * @param y : the right operand.
+	 * @return
+	 */
+	public static MultiMatrix multiply(MultiMatrix x, MultiMatrix y)
+	{
+		return multiply(x, false, y, false);
+	}
+
+	/**
+	 * Returns the product op(x) * op(y), where op(m) is m itself or its transpose.
+	 * @param x          : the left operand.
+	 * @param transposeX : whether to use the transpose of x.
+	 * @param y          : the right operand.
+	 * @param transposeY : whether to use the transpose of y.
+	 * @return the product, or null if the inner dimensions do not match.
+	 */
+	@SuppressWarnings("try")
+	public static MultiMatrix multiply(MultiMatrix x, boolean transposeX, MultiMatrix y, boolean transposeY)
+	{
+		try (Metrics.Span span = Metrics.begin("multiply", transposeX ? x.col : x.row, transposeY ? y.row : y.col))
 		{
-			for (int j = 0; j < dest.length; j++)
-			{
-				dest[j] = rowNum == j ? 1.0 : 0.0;
-			}
+			int m = transposeX ? x.col : x.row;
+			int k = transposeX ? x.row : x.col;
+			int n = transposeY ? y.row : y.col;
+			if (k != (transposeY ? y.col : y.row))
+				return null;
+			double[] mat = new double[m * n];
+			Metrics.flops(2.0 * m * n * k);
+			ParallelGemm.gemm(x.context.forkJoinPool(), transposeX, transposeY, m, n, k, 1.0,
+					x.matrix, 0, x.stride, y.matrix, 0, y.stride, 0.0, mat, 0, n);
+			return x.derived(mat, m, n);
 		}
 	}
 
-	private class CopyInverseThread implements Runnable
+	/**
+	 * Returns the product x * y, computed with the given algorithm. With STRASSEN the products of
+	 * the top levels of the recursion are forked on x's pool, and the leaves run the sequential
+	 * kernel. It does fewer flops on large products but is less accurate, with errors bounded only
+	 * relative to ||x|| * ||y|| rather than entry by entry; see Strassen for the details.
+	 * @param x         : the left operand.
+	 * @param y         : the right operand.
+	 * @param algorithm : the algorithm to multiply with.
+	 * @return the product, or null if the inner dimensions do not match.
+	 */
+	@SuppressWarnings("try")
+	public static MultiMatrix multiply(MultiMatrix x, MultiMatrix y, MultiplyAlgorithm algorithm)
 	{
-		Double[] dest;
-		Double[] src;
-
-		public CopyInverseThread(Double[] src, Double[] dest)
+		try (Metrics.Span span = Metrics.begin("multiply", x.row, y.col))
 		{
-			this.dest = dest;
-			this.src = src;
+			if (algorithm == MultiplyAlgorithm.CLASSICAL
+					|| (algorithm == MultiplyAlgorithm.AUTO && !Strassen.worthwhile(x.row, y.col, x.col)))
+				return multiply(x, y);
+			if (x.col != y.row)
+				return null;
+			double[] mat = new double[x.row * y.col];
+			Metrics.flops(2.0 * x.row * y.col * x.col);
+			Strassen.multiply(x.row, y.col, x.col, x.matrix, 0, x.stride, y.matrix, 0, y.stride,
+					mat, 0, y.col, x.context.forkJoinPool());
+			return x.derived(mat, x.row, y.col);
 		}
+	}
 
-		public void run()
+	/**
+	 * Computes c = alpha * a * b + beta * c in parallel, overwriting c.
+	 * c must not share its storage with a or b.
+	 * @param alpha : the amount to scale the product by.
+	 * @param a     : the left operand.
+	 * @param b     : the right operand.
+	 * @param beta  : the amount to scale c by before the product is added.
+	 * @param c     : the matrix to accumulate into.
+	 * @return c, or null if the dimensions do not agree, in which case c is left unchanged.
+	 */
+	public static MultiMatrix multiplyAdd(double alpha, MultiMatrix a, MultiMatrix b, double beta, MultiMatrix c)
+	{
+		return multiplyAdd(alpha, a, false, b, false, beta, c);
+	}
+
+	/**
+	 * Computes c = alpha * op(a) * op(b) + beta * c in parallel, overwriting c,
+	 * where op(m) is m itself or its transpose.
+	 * c must not share its storage with a or b.
+	 * @param alpha      : the amount to scale the product by.
+	 * @param a          : the left operand.
+	 * @param transposeA : whether to use the transpose of a.
+	 * @param b          : the right operand.
+	 * @param transposeB : whether to use the transpose of b.
+	 * @param beta       : the amount to scale c by before the product is added.
+	 * @param c          : the matrix to accumulate into.
+	 * @return c, or null if the dimensions do not agree, in which case c is left unchanged.
+	 */
+	@SuppressWarnings("try")
+	public static MultiMatrix multiplyAdd(double alpha, MultiMatrix a, boolean transposeA,
+			MultiMatrix b, boolean transposeB, double beta, MultiMatrix c)
+	{
+		try (Metrics.Span span = Metrics.begin("multiplyAdd", c.row, c.col))
 		{
-			System.arraycopy(src, dest.length, dest, 0, dest.length);
+			int m = transposeA ? a.col : a.row;
+			int k = transposeA ? a.row : a.col;
+			int n = transposeB ? b.row : b.col;
+			if (k != (transposeB ? b.col : b.row) || c.row != m || c.col != n)
+				return null;
+			Metrics.flops(2.0 * m * n * k);
+			ParallelGemm.gemm(c.context.forkJoinPool(), transposeA, transposeB, m, n, k, alpha,
+					a.matrix, 0, a.stride, b.matrix, 0, b.stride, beta, c.matrix, 0, c.stride);
+			c.structure = null;
+			return c;
 		}
 	}
 
-	private class InvertibleThread implements Callable<Boolean>
+	/**
+	 * Eliminates the pivot column from a contiguous range of rows in one tight loop.
+	 * Each row's multiplier depends only on that row and the pivot row, which no task writes,
+	 * so ranges can run concurrently.
+	 */
+	private class RowRangeThread implements Runnable
 	{
-		Double[] row;
-		int numRow;
-		int length;
-		
-		public InvertibleThread(Double[] row, int numRow)
+		double[] mat;
+		int width;
+		int numRows;
+		int pivotRow;
+		int pivotCol;
+		int first;
+		int last;
+		double[] L;
+
+		public RowRangeThread(double[] mat, int width, int numRows, int pivotRow, int pivotCol, int first, int last, double[] L)
 		{
-			this.row = row;
-			this.numRow = numRow;
-			length = row.length / 2;
+			this.mat = mat;
+			this.width = width;
+			this.numRows = numRows;
+			this.pivotRow = pivotRow;
+			this.pivotCol = pivotCol;
+			this.first = first;
+			this.last = last;
+			this.L = L;
 		}
-		
-		public Boolean call()
+
+		public void run()
 		{
-			for (int j = 0; j < length; j++)
+			int from = pivotRow * width;
+			double pivot = mat[from + pivotCol];
+			for (int k = first; k < last; k++)
 			{
-				if ((j != numRow && row[j] != 0.0) || (j == numRow && row[j] != 1.0))
-					return false;
+				if (k == pivotRow)
+					continue;
+				int to = k * width;
+				double factor = mat[to + pivotCol] / pivot;
+				if (L != null)
+					L[k * numRows + pivotCol] = factor;
+				Kernels.rowAxpy(width, -factor, mat, from, mat, to);
+				mat[to + pivotCol] = 0.0; // Ensure it is 0, regardless of rounding error.
 			}
-			return true;
 		}
 	}
-	
-	private class RowAddThread implements Runnable
+
+	private class ScaleRangeThread implements Runnable
 	{
-		Double[][] mat;
-		int rowTo;
-		int rowFrom;
-		int col;
+		double[] mat;
+		int start;
+		int first;
+		int last;
 		double scaleFactor;
 
-		public RowAddThread(Double[][] mat, int rowTo, int rowFrom, int col, double scaleFactor)
+		public ScaleRangeThread(double[] mat, int start, int first, int last, double scaleFactor)
 		{
 			this.mat = mat;
-			this.rowTo = rowTo;
-			this.rowFrom = rowFrom;
-			this.col = col;
+			this.start = start;
+			this.first = first;
+			this.last = last;
 			this.scaleFactor = scaleFactor;
 		}
 
 		public void run()
 		{
-			rowAdd(mat, rowTo, rowFrom, scaleFactor);
-			mat[rowTo][col] = 0.0;
+			Kernels.rowScal(last - first, scaleFactor, mat, start + first);
 		}
-
 	}
 
 	private class AddThread implements Runnable
 	{
-		Double[][] mat;
-		int rowTo;
-		int rowFrom;
-		int colNum;
+		double[] mat;
+		int to;
+		int from;
 		double scaleFactor;
 
-		public AddThread(Double[][] mat, int rowTo, int rowFrom, int colNum, double scaleFactor)
+		public AddThread(double[] mat, int to, int from, double scaleFactor)
 		{
 			this.mat = mat;
-			this.rowTo = rowTo;
-			this.rowFrom = rowFrom;
+			this.to = to;
+			this.from = from;
 			this.scaleFactor = scaleFactor;
-			this.colNum = colNum;
 		}
 
 		public void run()
 		{
-			mat[rowTo][colNum] = mat[rowTo][colNum] + mat[rowFrom][colNum] * scaleFactor + 0.0;
+			mat[to] = mat[to] + mat[from] * scaleFactor + 0.0;
 		}
 	}
 
 	private class ScaleThread implements Runnable
 	{
-		Double[] row;
-		int colNum;
+		double[] mat;
+		int index;
 		double scaleFactor;
 
-		ScaleThread(Double[] row, int colNum, double scaleFactor)
+		ScaleThread(double[] mat, int index, double scaleFactor)
 		{
-			this.row = row;
-			this.colNum = colNum;
+			this.mat = mat;
+			this.index = index;
 			this.scaleFactor = scaleFactor;
 		}
 
 		public void run()
 		{
-			row[colNum] = row[colNum] * scaleFactor + 0.0;
+			mat[index] = mat[index] * scaleFactor + 0.0;
 		}
 	}
 
-	private class IdentityCopyThread implements Runnable
+	private static class CopyThread implements Runnable
 	{
-		Double[] dest;
-		int rowNum;
+		Object src;
+		int srcPos;
+		Object dest;
+		int destPos;
 		int length;
-		
-		public IdentityCopyThread(Double[] dest, int rowNum)
+
+		/**
+		 * Copies length elements between two arrays of the same type.
+		 */
+		public CopyThread(Object src, int srcPos, Object dest, int destPos, int length)
 		{
+			this.src = src;
+			this.srcPos = srcPos;
 			this.dest = dest;
-			this.rowNum = rowNum;
-			length = dest.length / 2;
+			this.destPos = destPos;
+			this.length = length;
 		}
-		
+
 		public void run()
 		{
-			for (int j = 0; j < length; j++) // copy row*row identity matrix into second half of mat
-			{
-				dest[j + length] = rowNum == j ? 1.0 : 0.0;
-			}
+			System.arraycopy(src, srcPos, dest, destPos, length);
 		}
 	}
-	
-	private static class CopyThread implements Runnable
+
+	private static class UnboxThread implements Runnable
 	{
-		Double[] dest;
 		Double[] src;
+		double[] dest;
+		int destPos;
 
-		public CopyThread(Double[] src, Double[] dest)
+		public UnboxThread(Double[] src, double[] dest, int destPos)
 		{
-			this.dest = dest;
 			this.src = src;
+			this.dest = dest;
+			this.destPos = destPos;
 		}
 
 		public void run()
 		{
-			System.arraycopy(src, 0, dest, 0, src.length);
+			for (int j = 0; j < src.length; j++)
+			{
+				dest[destPos + j] = src[j];
+			}
 		}
 	}
 
@@ -684,13 +1075,15 @@ public class MultiMatrix {
 
 		public String call()
 		{
-			String rowString = "";
+			StringBuilder rowString = new StringBuilder(col * (precision + 5));
+			Formatter format = new Formatter(rowString);
+			String element = "% ." + precision + "f\t";
 			for (int i = 0; i < col; i++)
 			{
-				rowString += String.format("% ." + precision + "f\t", matrix[rowNum][i]);
+				format.format(element, matrix[rowNum * stride + i]);
 			}
-			rowString += "\n";
-			return rowString;
+			rowString.append('\n');
+			return rowString.toString();
 		}
 	}
 
@@ -700,14 +1093,17 @@ public class MultiMatrix {
 			return true;
 		if (this == null || mat == null)
 			return false;
-		
+
 		if (this.row != mat.rows() || this.col != mat.cols())
 			return false;
+		double[] other = mat.data();
+		int otherStride = mat.stride();
 		for (int i = 0; i < row; i++)
 		{
 			for (int j = 0; j < col; j++)
 			{
-				if (!matrix[i][j].equals(mat.get(i, j)))
+				// Same comparison Double.equals makes, without boxing either side.
+				if (Double.doubleToLongBits(matrix[i * stride + j]) != Double.doubleToLongBits(other[i * otherStride + j]))
 					return false;
 			}
 		}
@@ -0,0 +1,18 @@
+package matrix;
+
+/**
+ * Which algorithm a matrix product is computed with, for the multiply overloads of Matrix and
+ * MultiMatrix that take one.
+ */
+public enum MultiplyAlgorithm
+{
+	/** The packed, blocked O(n^3) kernel, which the plain multiply always uses. */
+	CLASSICAL,
+	/**
+	 * Strassen-Winograd recursion down to a cutoff, then the classical kernel. Fewer flops on
+	 * large products at some cost in accuracy; see {@link Strassen}.
+	 */
+	STRASSEN,
+	/** STRASSEN when every dimension is large enough for at least one level to pay, else CLASSICAL. */
+	AUTO
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package matrix;
+
+/**
+ * Measures how MultiMatrix.multiply scales with the number of threads.
+ *
+ * For each size, every thread count from 1 up to the number of cores (doubling each time,
+ * plus the core count itself) is timed, and the speedup is reported against both the
+ * one-thread run and the sequential Matrix.multiply.
+ * Usage: MultiplyBenchmark [maxSize] [repetitions]
+ */
+public class MultiplyBenchmark
+{
+	public static void main(String[] args)
+	{
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+		int reps = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("cores: " + cores);
+		System.out.println("n\tthreads\tms\tGFLOP/s\tspeedup\tvs Matrix");
+		for (int n = 256; n <= maxSize; n *= 2)
+		{
+			Matrix x = Matrix.randomMatrix(n, n, -10, 10);
+			Matrix y = Matrix.randomMatrix(n, n, -10, 10);
+			double flops = 2.0 * n * n * n;
+
+			Matrix.multiply(x, y); // warm up
+			long sequential = Long.MAX_VALUE;
+			Timer timer = new Timer();
+			for (int r = 0; r < reps; r++)
+			{
+				timer.start();
+				Matrix.multiply(x, y);
+				timer.stop();
+				sequential = Math.min(sequential, timer.duration());
+			}
+			System.out.println(n + "\tMatrix\t" + sequential / 1000000. + "\t" + flops / sequential);
+
+			long single = 0;
+			for (int threads = 1; threads <= cores; threads = next(threads, cores))
+			{
+				MultiMatrix xm = new MultiMatrix(x.data(), n, n, threads);
+				MultiMatrix ym = new MultiMatrix(y.data(), n, n, threads);
+				MultiMatrix.multiply(xm, ym); // warm up
+				long best = Long.MAX_VALUE;
+				for (int r = 0; r < reps; r++)
+				{
+					timer.start();
+					MultiMatrix.multiply(xm, ym);
+					timer.stop();
+					best = Math.min(best, timer.duration());
+				}
+				if (threads == 1)
+					single = best;
+				System.out.println(n + "\t" + threads + "\t" + best / 1000000. + "\t" + flops / best
+						+ "\t" + (double) single / best + "\t" + (double) sequential / best);
+			}
+		}
+	}
+
+	/**
+	 * Doubles the thread count, making sure the core count itself is always measured.
+	 */
+	private static int next(int threads, int cores)
+	{
+		if (threads == cores)
+			return cores + 1;
+		return Math.min(threads * 2, cores);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package matrix;
+
+/**
+ * The counters behind an OperationMetricsMXBean, which the threads of any number of concurrent
+ * calls record into at once.
+ */
+class OperationMetrics implements OperationMetricsMXBean
+{
+	private final String operation;
+	private final String phase;
+	final StripedCounter count = new StripedCounter();
+	final StripedCounter time = new StripedCounter();
+	final LogHistogram timeHistogram = new LogHistogram();
+	final StripedCounter tasks = new StripedCounter();
+	final StripedCounter queueWait = new StripedCounter();
+	final LogHistogram queueWaitHistogram = new LogHistogram();
+	final StripedCounter flops = new StripedCounter();
+	final StripedCounter bytes = new StripedCounter();
+	/** Whether the JVM counts allocated bytes, and so whether bytes means anything. */
+	private final boolean countsBytes;
+
+	OperationMetrics(String operation, String phase, boolean countsBytes)
+	{
+		this.operation = operation;
+		this.phase = phase;
+		this.countsBytes = countsBytes;
+	}
+
+	/**
+	 * Records one call, or one pass through the phase.
+	 */
+	void record(long nanos, long allocated)
+	{
+		count.increment();
+		time.add(nanos);
+		timeHistogram.record(nanos);
+		if (allocated > 0)
+			bytes.add(allocated);
+	}
+
+	/**
+	 * Records one task starting after waiting nanos in the executor's queue.
+	 */
+	void recordQueueWait(long nanos)
+	{
+		queueWait.add(nanos);
+		queueWaitHistogram.record(nanos);
+	}
+
+	public String getOperation()
+	{
+		return operation;
+	}
+
+	public String getPhase()
+	{
+		return phase;
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public long getTotalTimeNanos()
+	{
+		return time.sum();
+	}
+
+	public double getMeanTimeMillis()
+	{
+		long n = count.sum();
+		return n == 0 ? 0 : time.sum() / 1e6 / n;
+	}
+
+	public double getMedianTimeMillis()
+	{
+		return timeHistogram.percentile(50) / 1e6;
+	}
+
+	public double getP99TimeMillis()
+	{
+		return timeHistogram.percentile(99) / 1e6;
+	}
+
+	public long[] getTimeHistogram()
+	{
+		return timeHistogram.counts();
+	}
+
+	public long getTasksSubmitted()
+	{
+		return tasks.sum();
+	}
+
+	public long getQueueWaitNanos()
+	{
+		return queueWait.sum();
+	}
+
+	public double getMeanQueueWaitMicros()
+	{
+		long n = tasks.sum();
+		return n == 0 ? 0 : queueWait.sum() / 1e3 / n;
+	}
+
+	public long[] getQueueWaitHistogram()
+	{
+		return queueWaitHistogram.counts();
+	}
+
+	public long getFlops()
+	{
+		return flops.sum();
+	}
+
+	public double getGflops()
+	{
+		long t = time.sum();
+		return t == 0 ? 0 : (double) flops.sum() / t;
+	}
+
+	public long getBytesAllocated()
+	{
+		return countsBytes ? bytes.sum() : -1;
+	}
+
+	public void reset()
+	{
+		count.reset();
+		time.reset();
+		timeHistogram.reset();
+		tasks.reset();
+		queueWait.reset();
+		queueWaitHistogram.reset();
+		flops.reset();
+		bytes.reset();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package matrix;
+
+/**
+ * What was measured of one MultiMatrix operation, or of one phase of it, across all its calls
+ * since the last reset. Published under matrix:type=Operation,name=operation,phase=phase, where
+ * phase "total" covers the whole call; see {@link Metrics}. Times are wall times.
+ */
+public interface OperationMetricsMXBean
+{
+	/**
+	 * @return the operation, for example "inverse".
+	 */
+	String getOperation();
+
+	/**
+	 * @return the phase: total, copy, pivot search, elimination or back substitution.
+	 */
+	String getPhase();
+
+	/**
+	 * @return how many times the operation was called, or the phase entered.
+	 */
+	long getCount();
+
+	long getTotalTimeNanos();
+
+	double getMeanTimeMillis();
+
+	/**
+	 * @return the median time, to within a factor of 2.
+	 */
+	double getMedianTimeMillis();
+
+	/**
+	 * @return the 99th percentile time, to within a factor of 2.
+	 */
+	double getP99TimeMillis();
+
+	/**
+	 * @return the count of times in each power-of-2 bucket of nanoseconds: [0] counts 0 and [b]
+	 * 	counts [2^(b - 1), 2^b).
+	 */
+	long[] getTimeHistogram();
+
+	/**
+	 * @return the number of tasks handed to the context's executor.
+	 */
+	long getTasksSubmitted();
+
+	/**
+	 * @return the total time those tasks waited between being submitted and starting.
+	 */
+	long getQueueWaitNanos();
+
+	double getMeanQueueWaitMicros();
+
+	/**
+	 * @return the count of queue waits in each power-of-2 bucket of nanoseconds.
+	 */
+	long[] getQueueWaitHistogram();
+
+	/**
+	 * @return the nominal floating point operations done, counted from the dimensions.
+	 */
+	long getFlops();
+
+	/**
+	 * @return getFlops() per nanosecond of getTotalTimeNanos().
+	 */
+	double getGflops();
+
+	/**
+	 * @return the bytes allocated by the calling thread, or -1 if the JVM does not count them.
+	 * 	Allocations made by pool threads on its behalf are not included.
+	 */
+	long getBytesAllocated();
+
+	/**
+	 * Sets every count back to 0.
+	 */
+	void reset();
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join driver for {@link Gemm}, computing C = alpha * op(A) * op(B) + beta * C on a work-stealing pool.
+ *
+ * The output is split recursively into 2D tiles, always halving the longer side, until a tile is
+ * small enough to hand to the sequential blocked kernel. Because the leaves own disjoint tiles of C
+ * no synchronization is needed beyond the joins.
+ *
+ * When C is too small to keep every worker busy but the inner dimension is long (a tall-skinny
+ * A^T * B, for example) the k range is split instead. Each half computes a partial product, the
+ * left half straight into C and the right half into a temporary, and the temporary is added in
+ * when both halves have joined, so the reduction forms a binary tree.
+ */
+class ParallelGemm
+{
+	/** Tiles with at most this many multiply-adds are computed sequentially. */
+	static final long SEQUENTIAL_FLOPS = 1L << 21;
+	/** Tiles are never split below this many rows or columns. */
+	static final int MIN_TILE = 32;
+	/** A k range is never split below this length. */
+	static final int MIN_K = 256;
+
+	private ParallelGemm()
+	{
+	}
+
+	/**
+	 * Computes C = alpha * op(A) * op(B) + beta * C on the given pool. The arguments are
+	 * the same as for {@link Gemm#gemm}.
+	 */
+	static void gemm(ForkJoinPool pool, boolean transA, boolean transB, int m, int n, int k, double alpha,
+			double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double beta, double[] c, int cOff, int ldc)
+	{
+		if (m <= 0 || n <= 0)
+			return;
+		Operands ops = new Operands(transA, transB, alpha, a, aOff, lda, b, bOff, ldb);
+		int tiles = ((m + MIN_TILE - 1) / MIN_TILE) * ((n + MIN_TILE - 1) / MIN_TILE);
+		int parallelism = pool.getParallelism();
+		if (tiles < parallelism && k >= 2 * MIN_K)
+		{
+			int parts = Math.min(parallelism, k / MIN_K);
+			pool.invoke(new KSplitTask(ops, 0, m, 0, n, 0, k, parts, beta, c, cOff, ldc));
+		}
+		else
+		{
+			pool.invoke(new TileTask(ops, 0, m, 0, n, 0, k, beta, c, cOff, ldc));
+		}
+	}
+
+	/**
+	 * The fixed inputs of one product, shared by every task working on it.
+	 */
+	private static class Operands
+	{
+		final boolean transA;
+		final boolean transB;
+		final double alpha;
+		final double[] a;
+		final int aOff;
+		final int lda;
+		final double[] b;
+		final int bOff;
+		final int ldb;
+
+		Operands(boolean transA, boolean transB, double alpha, double[] a, int aOff, int lda,
+				double[] b, int bOff, int ldb)
+		{
+			this.transA = transA;
+			this.transB = transB;
+			this.alpha = alpha;
+			this.a = a;
+			this.aOff = aOff;
+			this.lda = lda;
+			this.b = b;
+			this.bOff = bOff;
+			this.ldb = ldb;
+		}
+
+		/**
+		 * Runs the sequential kernel on rows [i0, i1) and columns [j0, j1) of the output,
+		 * restricted to the inner range [p0, p1).
+		 */
+		void kernel(int i0, int i1, int j0, int j1, int p0, int p1, double beta, double[] c, int cIdx, int ldc)
+		{
+			int aIdx = transA ? aOff + p0 * lda + i0 : aOff + i0 * lda + p0;
+			int bIdx = transB ? bOff + j0 * ldb + p0 : bOff + p0 * ldb + j0;
+			Gemm.gemm(transA, transB, i1 - i0, j1 - j0, p1 - p0, alpha,
+					a, aIdx, lda, b, bIdx, ldb, beta, c, cIdx, ldc);
+		}
+	}
+
+	/**
+	 * Computes one 2D tile of C, splitting it in half along its longer side until it reaches the cutoff.
+	 * The tile's top left corner is at cIdx.
+	 */
+	private static class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Operands ops;
+		final int i0, i1, j0, j1, p0, p1;
+		final double beta;
+		final double[] c;
+		final int cIdx;
+		final int ldc;
+
+		TileTask(Operands ops, int i0, int i1, int j0, int j1, int p0, int p1,
+				double beta, double[] c, int cIdx, int ldc)
+		{
+			this.ops = ops;
+			this.i0 = i0;
+			this.i1 = i1;
+			this.j0 = j0;
+			this.j1 = j1;
+			this.p0 = p0;
+			this.p1 = p1;
+			this.beta = beta;
+			this.c = c;
+			this.cIdx = cIdx;
+			this.ldc = ldc;
+		}
+
+		protected void compute()
+		{
+			int m = i1 - i0;
+			int n = j1 - j0;
+			if ((long) m * n * (p1 - p0) <= SEQUENTIAL_FLOPS || (m <= MIN_TILE && n <= MIN_TILE))
+			{
+				ops.kernel(i0, i1, j0, j1, p0, p1, beta, c, cIdx, ldc);
+				return;
+			}
+			if (m >= n)
+			{
+				int mid = i0 + split(m, Gemm.MR);
+				invokeAll(new TileTask(ops, i0, mid, j0, j1, p0, p1, beta, c, cIdx, ldc),
+						new TileTask(ops, mid, i1, j0, j1, p0, p1, beta, c, cIdx + (mid - i0) * ldc, ldc));
+			}
+			else
+			{
+				int mid = j0 + split(n, Gemm.NR);
+				invokeAll(new TileTask(ops, i0, i1, j0, mid, p0, p1, beta, c, cIdx, ldc),
+						new TileTask(ops, i0, i1, mid, j1, p0, p1, beta, c, cIdx + (mid - j0), ldc));
+			}
+		}
+	}
+
+	/**
+	 * Computes the contribution of the inner range [p0, p1) to a tile of C by splitting the range
+	 * into parts pieces and summing their partial products pairwise.
+	 */
+	private static class KSplitTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Operands ops;
+		final int i0, i1, j0, j1, p0, p1;
+		final int parts;
+		final double beta;
+		final double[] c;
+		final int cIdx;
+		final int ldc;
+
+		KSplitTask(Operands ops, int i0, int i1, int j0, int j1, int p0, int p1, int parts,
+				double beta, double[] c, int cIdx, int ldc)
+		{
+			this.ops = ops;
+			this.i0 = i0;
+			this.i1 = i1;
+			this.j0 = j0;
+			this.j1 = j1;
+			this.p0 = p0;
+			this.p1 = p1;
+			this.parts = parts;
+			this.beta = beta;
+			this.c = c;
+			this.cIdx = cIdx;
+			this.ldc = ldc;
+		}
+
+		protected void compute()
+		{
+			if (parts <= 1)
+			{
+				new TileTask(ops, i0, i1, j0, j1, p0, p1, beta, c, cIdx, ldc).compute();
+				return;
+			}
+			int m = i1 - i0;
+			int n = j1 - j0;
+			int leftParts = parts / 2;
+			int mid = p0 + (int) ((long) (p1 - p0) * leftParts / parts);
+			double[] partial = new double[m * n];
+			invokeAll(new KSplitTask(ops, i0, i1, j0, j1, p0, mid, leftParts, beta, c, cIdx, ldc),
+					new KSplitTask(ops, i0, i1, j0, j1, mid, p1, parts - leftParts, 0.0, partial, 0, n));
+			for (int i = 0; i < m; i++)
+			{
+				int r = cIdx + i * ldc;
+				int s = i * n;
+				for (int j = 0; j < n; j++)
+					c[r + j] += partial[s + j];
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the first half when splitting length in two, rounded to a whole
+	 * number of micro-kernel tiles so that only the last tile of a row or column is ragged.
+	 */
+	private static int split(int length, int multiple)
+	{
+		int half = length / 2;
+		int rounded = (half + multiple - 1) / multiple * multiple;
+		return rounded > 0 && rounded < length ? rounded : half;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,413 @@
+package matrix;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pipelined LU factorization with partial pivoting on a fixed set of workers, the elimination
+ * pipeline of MatrixDeterminant's Gauss made reusable.
+ *
+ * Columns are dealt out to the workers in blocks of BLOCK, cyclically, and each worker applies
+ * every elimination step to its own columns and to nothing else, so no two workers ever write the
+ * same element and no locks guard the data. Step k begins when the owner of column k, having
+ * brought that column up to date, picks the entry of largest magnitude on or below the diagonal
+ * as pivot, stores the multipliers below it and publishes the step. The other workers then apply
+ * the row interchange and the update to their own columns at their own pace.
+ *
+ * Rather than waiting for every worker to finish step k before step k + 1 can begin, the owner of
+ * column k + 1 updates that column first, factors it and publishes step k + 1 at once, so each
+ * pivot search overlaps the bulk of the previous step's updates. The lookahead depth bounds how far
+ * this runs: step k is only published once every worker has finished step k - lookahead. A depth
+ * of 1 makes every pivot wait for the previous step to finish everywhere, like a barrier; greater
+ * depths let the fastest workers run further ahead of the slowest.
+ *
+ * The calling thread works as worker 0, and the others run on threads the engine owns, so
+ * factorizations on one engine run one at a time.
+ */
+public class PipelinedElimination
+{
+	/** Width of the column blocks dealt out to the workers. */
+	static final int BLOCK = 32;
+	/** The lookahead depth of a new engine. */
+	public static final int DEFAULT_LOOKAHEAD = 2;
+
+	private final int workers;
+	private final ExecutorService threads;
+	private volatile int lookahead = DEFAULT_LOOKAHEAD;
+
+	/**
+	 * @param workers : the number of workers, including the calling thread.
+	 */
+	public PipelinedElimination(int workers)
+	{
+		if (workers < 1)
+			throw new IllegalArgumentException("workers must be at least 1, not " + workers);
+		this.workers = workers;
+		threads = workers > 1 ? Executors.newFixedThreadPool(workers - 1, new DaemonThreadFactory()) : null;
+	}
+
+	/**
+	 * @return the number of workers, including the calling thread.
+	 */
+	public int workers()
+	{
+		return workers;
+	}
+
+	/**
+	 * @return how many steps a pivot may be published ahead of the slowest worker.
+	 */
+	public int getLookahead()
+	{
+		return lookahead;
+	}
+
+	/**
+	 * Sets how many steps a pivot may be published ahead of the slowest worker. It applies from
+	 * the next factorization on.
+	 * @param lookahead : 1 to finish each step everywhere before the next pivot, or more.
+	 */
+	public void setLookahead(int lookahead)
+	{
+		if (lookahead < 1)
+			throw new IllegalArgumentException("lookahead must be at least 1, not " + lookahead);
+		this.lookahead = lookahead;
+	}
+
+	/**
+	 * Factors a square matrix, which is not modified.
+	 * @param a : the matrix to factor.
+	 * @return the factorization, or null if the matrix is not square.
+	 */
+	public LUFactorization factor(Matrix a)
+	{
+		if (a.rows() != a.cols())
+			return null;
+		return factor(a.copyData(), a.rows(), null);
+	}
+
+	/**
+	 * Factors the n x n row-major matrix held in a, overwriting a with the packed factors.
+	 * @param a    : the matrix to factor, which becomes the factorization's buffer.
+	 * @param n    : the number of rows and columns of a.
+	 * @param pool : the pool for the factorization's later operations, or null.
+	 * @throws ComputationException if a worker fails or the caller is interrupted.
+	 */
+	synchronized LUFactorization factor(double[] a, int n, ForkJoinPool pool)
+	{
+		Metrics.phase(Metrics.Phase.ELIMINATION);
+		Metrics.flops(2.0 * n * n * n / 3);
+		int[] piv = new int[n];
+		int blocks = (n + BLOCK - 1) / BLOCK;
+		final Run run = new Run(a, n, piv, Math.max(1, Math.min(workers, blocks)), lookahead);
+		final CountDownLatch finished = new CountDownLatch(run.workers - 1);
+		for (int w = 1; w < run.workers; w++)
+		{
+			final int worker = w;
+			threads.execute(new Runnable()
+			{
+				public void run()
+				{
+					try {
+						run.work(worker);
+					} finally {
+						finished.countDown();
+					}
+				}
+			});
+		}
+		run.work(0);
+
+		boolean interrupted = false;
+		while (true)
+		{
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+				run.abort(e); // stop the others, then wait for them to leave the data alone
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (run.failure != null)
+			throw new ComputationException("Pipelined elimination failed", run.failure);
+
+		// Bring the multipliers of each column in line with the interchanges made after it.
+		for (int k = 1; k < n; k++)
+		{
+			if (piv[k] != k)
+				BlockedLU.swapRows(a, 0, n, k, piv[k], 0, k);
+		}
+		return new LUFactorization(a, piv, n, run.singular, pool);
+	}
+
+	/**
+	 * Stops the engine's threads once any factorization in progress has finished.
+	 */
+	public void shutdown()
+	{
+		if (threads != null)
+			threads.shutdown();
+	}
+
+	/**
+	 * The state of one factorization, shared by its workers.
+	 */
+	private static class Run
+	{
+		final double[] a;
+		final int n;
+		final int[] piv;
+		final int workers;
+		final int lookahead;
+		final ReentrantLock lock = new ReentrantLock();
+		final Condition progress = lock.newCondition();
+		/** The number of steps whose pivots are published. Guarded by lock. */
+		int published;
+		/** The number of steps each worker has finished. Guarded by lock. */
+		final int[] done;
+		/** The first column without a non-zero pivot, or -1. Guarded by lock. */
+		int singular = -1;
+		volatile Throwable failure;
+
+		Run(double[] a, int n, int[] piv, int workers, int lookahead)
+		{
+			this.a = a;
+			this.n = n;
+			this.piv = piv;
+			this.workers = workers;
+			this.lookahead = lookahead;
+			done = new int[workers];
+		}
+
+		int owner(int column)
+		{
+			return column / BLOCK % workers;
+		}
+
+		/**
+		 * Runs every step on the columns owned by worker w.
+		 */
+		void work(int w)
+		{
+			try {
+				int ahead = -1; // the column this worker factored early, if any
+				for (int k = 0; k < n; k++)
+				{
+					if (owner(k) == w)
+					{
+						if (ahead != k)
+						{
+							awaitDone(k - lookahead);
+							factorColumn(k);
+							publish(k);
+						}
+					}
+					else
+					{
+						awaitPublished(k);
+					}
+
+					int from = k + 1;
+					if (lookahead > 1 && from < n && owner(from) == w)
+					{
+						// Bring the next pivot column up to date first, and start the next step early if allowed.
+						apply(w, k, from, from + 1);
+						if (isDone(from - lookahead))
+						{
+							factorColumn(from);
+							publish(from);
+							ahead = from;
+						}
+						from++;
+					}
+					apply(w, k, from, n);
+					finish(w, k);
+				}
+			} catch (Throwable t) {
+				abort(t);
+			}
+		}
+
+		/**
+		 * Chooses the pivot of column k, which must be up to date through step k - 1,
+		 * interchanges it into place within the column and stores the multipliers below it.
+		 */
+		void factorColumn(int k)
+		{
+			int p = k;
+			double max = Math.abs(a[k * n + k]);
+			for (int i = k + 1; i < n; i++)
+			{
+				double val = Math.abs(a[i * n + k]);
+				if (val > max)
+				{
+					max = val;
+					p = i;
+				}
+			}
+			piv[k] = p;
+			if (max == 0.0) // nothing to eliminate, the whole column below the diagonal is already 0
+			{
+				lock.lock();
+				try {
+					if (singular < 0 || k < singular)
+						singular = k;
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			if (p != k)
+			{
+				double temp = a[k * n + k];
+				a[k * n + k] = a[p * n + k];
+				a[p * n + k] = temp;
+			}
+			double pivot = a[k * n + k];
+			for (int i = k + 1; i < n; i++)
+				a[i * n + k] /= pivot;
+		}
+
+		/**
+		 * Applies step k, its interchange and its update, to worker w's columns in [c0, c1).
+		 */
+		void apply(int w, int k, int c0, int c1)
+		{
+			if (c0 >= c1)
+				return;
+			int p = piv[k];
+			int firstBlock = c0 / BLOCK;
+			firstBlock += ((w - firstBlock % workers) + workers) % workers; // the first block w owns
+			int lastBlock = (c1 - 1) / BLOCK;
+			if (firstBlock > lastBlock)
+				return;
+
+			if (p != k)
+			{
+				for (int b = firstBlock; b <= lastBlock; b += workers)
+					BlockedLU.swapRows(a, 0, n, k, p, Math.max(c0, b * BLOCK), Math.min(c1, (b + 1) * BLOCK));
+			}
+			int rk = k * n;
+			for (int i = k + 1; i < n; i++)
+			{
+				int ri = i * n;
+				double l = a[ri + k];
+				if (l == 0.0)
+					continue;
+				for (int b = firstBlock; b <= lastBlock; b += workers)
+				{
+					int start = Math.max(c0, b * BLOCK);
+					int end = Math.min(c1, (b + 1) * BLOCK);
+					Kernels.axpy(end - start, -l, a, rk + start, a, ri + start);
+				}
+			}
+		}
+
+		void publish(int k)
+		{
+			lock.lock();
+			try {
+				published = k + 1;
+				progress.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void finish(int w, int k)
+		{
+			lock.lock();
+			try {
+				done[w] = k + 1;
+				progress.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void awaitPublished(int k) throws InterruptedException
+		{
+			lock.lock();
+			try {
+				while (published <= k && failure == null)
+					progress.await();
+			} finally {
+				lock.unlock();
+			}
+			checkFailure();
+		}
+
+		/**
+		 * Waits until every worker has finished step k. Steps before 0 are always finished.
+		 */
+		void awaitDone(int k) throws InterruptedException
+		{
+			if (k < 0)
+				return;
+			lock.lock();
+			try {
+				while (slowest() <= k && failure == null)
+					progress.await();
+			} finally {
+				lock.unlock();
+			}
+			checkFailure();
+		}
+
+		boolean isDone(int k)
+		{
+			if (k < 0)
+				return true;
+			lock.lock();
+			try {
+				return slowest() > k;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return the number of steps every worker has finished. Call with lock held.
+		 */
+		private int slowest()
+		{
+			int min = Integer.MAX_VALUE;
+			for (int d : done)
+				min = Math.min(min, d);
+			return min;
+		}
+
+		void abort(Throwable t)
+		{
+			lock.lock();
+			try {
+				if (failure == null)
+					failure = t;
+				progress.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void checkFailure()
+		{
+			if (failure != null)
+				throw new Aborted();
+		}
+	}
+
+	/**
+	 * Unwinds a worker after another worker has failed. The original failure is the one reported.
+	 */
+	private static class Aborted extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,214 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A Householder QR factorization A = Q * R of an m x n matrix, rectangular or not.
+ *
+ * R and the Householder vectors share one m x n buffer, R on and above the diagonal and the
+ * vectors below it, so Q is never formed unless asked for. With k = min(m, n), the economy-size
+ * factors are Q, m x k with orthonormal columns, and R, k x n and upper triangular.
+ *
+ * For m >= n, leastSquares finds the x minimizing ||A * x - b|| as R^-1 times the first n entries
+ * of Q^T * b, without forming the normal equations A^T * A, which would square the condition number.
+ */
+public class QRFactorization
+{
+	private final double[] qr;
+	private final double[] tau;
+	private final int m;
+	private final int n;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param qr   : the packed factors, m x n and row-major.
+	 * @param tau  : the reflectors' scale factors.
+	 * @param m    : the number of rows of the factored matrix.
+	 * @param n    : the number of columns of the factored matrix.
+	 * @param pool : the pool to run later operations on, or null to run them sequentially.
+	 */
+	QRFactorization(double[] qr, double[] tau, int m, int n, ForkJoinPool pool)
+	{
+		this.qr = qr;
+		this.tau = tau;
+		this.m = m;
+		this.n = n;
+		this.pool = pool;
+	}
+
+	/**
+	 * Factors the m x n row-major matrix held in a, overwriting a with the packed factors.
+	 * @param a    : the matrix to factor, which becomes the factorization's buffer.
+	 * @param m    : the number of rows of a.
+	 * @param n    : the number of columns of a.
+	 * @param pool : the pool to run the trailing updates on, or null to factor sequentially.
+	 */
+	static QRFactorization factor(double[] a, int m, int n, ForkJoinPool pool)
+	{
+		double[] tau = new double[Math.min(m, n)];
+		BlockedQR.factor(a, m, n, tau, pool);
+		return new QRFactorization(a, tau, m, n, pool);
+	}
+
+	/**
+	 * @return the number of rows of the factored matrix.
+	 */
+	public int rows()
+	{
+		return m;
+	}
+
+	/**
+	 * @return the number of columns of the factored matrix.
+	 */
+	public int cols()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the economy-size upper triangular factor R, min(m, n) x n.
+	 */
+	public Matrix getR()
+	{
+		int k = Math.min(m, n);
+		double[] R = new double[k * n];
+		for (int i = 0; i < k; i++)
+			System.arraycopy(qr, i * n + i, R, i * n + i, n - i);
+		return new Matrix(R, k, n);
+	}
+
+	/**
+	 * Forms the economy-size Q, m x min(m, n) with orthonormal columns, by applying the
+	 * reflectors block by block, last block first, to the first columns of the identity.
+	 * @return
+	 */
+	public Matrix getQ()
+	{
+		int k = Math.min(m, n);
+		double[] Q = new double[m * k];
+		for (int i = 0; i < k; i++)
+			Q[i * k + i] = 1.0;
+		int last = (k - 1) / BlockedQR.BLOCK * BlockedQR.BLOCK;
+		for (int j0 = last; j0 >= 0; j0 -= BlockedQR.BLOCK)
+		{
+			int jb = Math.min(BlockedQR.BLOCK, k - j0);
+			double[] V = BlockedQR.reflectors(qr, m, n, j0, jb);
+			double[] T = BlockedQR.triangularFactor(V, m - j0, jb, tau, j0);
+			// Columns left of j0 are still those of the identity in rows j0 and below, all 0.
+			BlockedQR.applyBlock(V, T, m - j0, jb, false, Q, j0 * k + j0, k, k - j0, pool);
+		}
+		return new Matrix(Q, m, k);
+	}
+
+	/**
+	 * Tells whether R has a diagonal entry no larger in magnitude than max(m, n) * EPSILON times
+	 * its largest entry, in which case A does not have full rank to working precision.
+	 * @return
+	 */
+	public boolean isRankDeficient()
+	{
+		int k = Math.min(m, n);
+		double max = 0.0;
+		for (int i = 0; i < k; i++)
+		{
+			for (int j = i; j < n; j++)
+				max = Math.max(max, Math.abs(qr[i * n + j]));
+		}
+		double threshold = Math.max(m, n) * LUFactorization.EPSILON * max;
+		for (int i = 0; i < k; i++)
+		{
+			if (Math.abs(qr[i * n + i]) <= threshold)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Overwrites the m long vector b with Q^T * b, one reflector at a time.
+	 */
+	void applyQT(double[] b)
+	{
+		int k = Math.min(m, n);
+		for (int j = 0; j < k; j++)
+		{
+			double t = tau[j];
+			if (t == 0.0)
+				continue;
+			double w = b[j];
+			for (int i = j + 1; i < m; i++)
+				w += qr[i * n + j] * b[i];
+			w *= t;
+			b[j] -= w;
+			for (int i = j + 1; i < m; i++)
+				b[i] -= qr[i * n + j] * w;
+		}
+	}
+
+	/**
+	 * Overwrites the m x nc row-major matrix B with Q^T * B, a block of reflectors at a time.
+	 */
+	void applyQT(double[] B, int nc)
+	{
+		int k = Math.min(m, n);
+		for (int j0 = 0; j0 < k; j0 += BlockedQR.BLOCK)
+		{
+			int jb = Math.min(BlockedQR.BLOCK, k - j0);
+			double[] V = BlockedQR.reflectors(qr, m, n, j0, jb);
+			double[] T = BlockedQR.triangularFactor(V, m - j0, jb, tau, j0);
+			BlockedQR.applyBlock(V, T, m - j0, jb, true, B, j0 * nc, nc, nc, pool);
+		}
+	}
+
+	/**
+	 * Overwrites the first n rows of the nc column row-major X with R^-1 times themselves.
+	 */
+	void backSubstitute(double[] X, int nc)
+	{
+		for (int i = n - 1; i >= 0; i--)
+		{
+			int ri = i * nc;
+			for (int p = i + 1; p < n; p++)
+				Kernels.axpy(nc, -qr[i * n + p], X, p * nc, X, ri);
+			double d = qr[i * n + i];
+			for (int c = 0; c < nc; c++)
+				X[ri + c] /= d;
+		}
+	}
+
+	/**
+	 * Finds the x of length n that minimizes ||A * x - b||, which for a square A solves A * x = b.
+	 * @param b : the right-hand side, m long. It is not modified.
+	 * @return x, or null if m < n, A is rank deficient or b has the wrong length.
+	 */
+	public double[] leastSquares(double[] b)
+	{
+		if (m < n || b.length != m || isRankDeficient())
+			return null;
+		double[] c = b.clone();
+		applyQT(c);
+		backSubstitute(c, 1);
+		double[] x = new double[n];
+		System.arraycopy(c, 0, x, 0, n);
+		return x;
+	}
+
+	/**
+	 * Finds, for every column of B, the x minimizing ||A * x - b||.
+	 * @param B : the right-hand sides, with m rows. It is not modified.
+	 * @return X, n x B.cols(), or null if m < n, A is rank deficient or B has the wrong number of rows.
+	 */
+	public Matrix leastSquares(Matrix B)
+	{
+		if (m < n || B.rows() != m || isRankDeficient())
+			return null;
+		int nc = B.cols();
+		double[] C = new double[m * nc];
+		Matrix.copy(B.data(), B.stride(), C, nc, m, nc);
+		applyQT(C, nc);
+		backSubstitute(C, nc);
+		double[] X = new double[n * nc];
+		System.arraycopy(C, 0, X, 0, n * nc);
+		return new Matrix(X, n, nc);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+package matrix;
+
+/**
+ * Compares one task per element against one task per range of rows for the
+ * elimination in MultiMatrix.determinant and MultiMatrix.rref, with the sequential
+ * Matrix versions as the reference.
+ *
+ * The crossover reported at the end is the smallest size at which each granularity
+ * beats the sequential code. Per-element runs above elementLimit are skipped, since
+ * they submit about n^3 / 3 tasks for a determinant and take minutes.
+ * Usage: RowOperationBenchmark [maxSize] [threads] [elementLimit]
+ */
+public class RowOperationBenchmark
+{
+	public static void main(String[] args)
+	{
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int elementLimit = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+
+		System.out.println("threads: " + threads);
+		System.out.println("op\tn\tMatrix ms\tELEMENT ms\tRANGE ms");
+		int[] elementCrossover = {-1, -1};
+		int[] rangeCrossover = {-1, -1};
+		for (int n = 8; n <= maxSize; n *= 2)
+		{
+			Matrix single = Matrix.randomMatrix(n, n, -10, 10);
+			MultiMatrix multi = new MultiMatrix(single.copyData(), n, n, threads);
+			for (int op = 0; op < 2; op++)
+			{
+				long sequential = time(single, null, op);
+				long element = -1;
+				if (n <= elementLimit)
+				{
+					multi.setGranularity(MultiMatrix.Granularity.ELEMENT);
+					element = time(null, multi, op);
+				}
+				multi.setGranularity(MultiMatrix.Granularity.RANGE);
+				long range = time(null, multi, op);
+
+				if (element >= 0 && element < sequential && elementCrossover[op] < 0)
+					elementCrossover[op] = n;
+				if (range < sequential && rangeCrossover[op] < 0)
+					rangeCrossover[op] = n;
+				System.out.println((op == 0 ? "det" : "rref") + "\t" + n + "\t" + sequential / 1000000.
+						+ "\t" + (element < 0 ? "-" : "" + element / 1000000.) + "\t" + range / 1000000.);
+			}
+		}
+		for (int op = 0; op < 2; op++)
+		{
+			System.out.println((op == 0 ? "det" : "rref") + " crossover: ELEMENT "
+					+ describe(elementCrossover[op]) + ", RANGE " + describe(rangeCrossover[op]));
+		}
+	}
+
+	/**
+	 * Returns the best of three timed runs, in nanoseconds, after one warm up run.
+	 */
+	private static long time(Matrix single, MultiMatrix multi, int op)
+	{
+		Timer timer = new Timer();
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < 4; r++)
+		{
+			timer.start();
+			if (single != null)
+			{
+				if (op == 0)
+					single.determinant();
+				else
+					single.rref();
+			}
+			else
+			{
+				if (op == 0)
+					multi.determinant();
+				else
+					multi.rref();
+			}
+			timer.stop();
+			if (r > 0)
+				best = Math.min(best, timer.duration());
+		}
+		return best;
+	}
+
+	private static String describe(int n)
+	{
+		return n < 0 ? "never" : "n = " + n;
+	}
+}
\ No newline at end of file
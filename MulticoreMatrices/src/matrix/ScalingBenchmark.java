@@ -0,0 +1,260 @@
+package matrix;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sweeps thread counts and matrix sizes for the operations of MatrixBenchmark and writes the
+ * scaling curves as CSV, one row per point:
+ *
+ * mode,operation,structure,n,threads,median_ms,gflops,speedup,efficiency,karp_flatt,vs_matrix
+ *
+ * Strong scaling keeps n fixed as the threads grow, so speedup is T(1) / T(p). Weak scaling
+ * keeps the work per thread fixed: all the operations are O(n^3), so p threads get
+ * n * p^(1/3), rounded, and speedup is the scaled speedup, the rate of useful flops on p threads
+ * over the rate on one, which corrects for the rounding of the size. In both modes efficiency is
+ * speedup / p, and karp_flatt is the experimentally determined serial fraction
+ * (1 / speedup - 1 / p) / (1 - 1 / p) of Karp and Flatt, which stays flat if the loss is a fixed
+ * serial part of the work and grows with p if it is overhead that does, such as synchronization.
+ * In both modes each size also gets a row for the sequential Matrix, with threads 0, when the
+ * operation has one, and vs_matrix is how many times faster than it each thread count runs; in
+ * weak mode that is the ratio of the flop rates, as for speedup. Operations only one of the
+ * classes has, such as lu_extended, get only that class's rows.
+ *
+ * gflops counts the operation's nominal flops: 2n^3 for multiply and inverse, n^3 for rref and
+ * 2n^3 / 3 for the factorizations and determinants, whatever shortcut a structure allows. Each
+ * point is the median of the invocations of all its forks, measured as MatrixBenchmark does.
+ *
+ * Usage: ScalingBenchmark [-ops multiply,lu,...] [-structure random] [-minSize 128]
+ * 	[-maxSize 1024] [-maxThreads cores] [-modes strong,weak] [-forks 1] [-warmup 3]
+ * 	[-iterations 5] [-out scaling.csv]
+ */
+public class ScalingBenchmark
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		List<MatrixBenchmark.Operation> ops = new ArrayList<MatrixBenchmark.Operation>();
+		MatrixBenchmark.Structure structure = MatrixBenchmark.Structure.RANDOM;
+		int minSize = 128;
+		int maxSize = 1024;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		boolean strong = true;
+		boolean weak = true;
+		int forks = 1;
+		int warmup = 3;
+		int iterations = 5;
+		String out = null;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if (args[i].equals("-ops"))
+			{
+				for (String s : value.split(","))
+					ops.add(MatrixBenchmark.Operation.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+			}
+			else if (args[i].equals("-structure"))
+				structure = MatrixBenchmark.Structure.valueOf(value.trim().toUpperCase(Locale.ROOT));
+			else if (args[i].equals("-minSize"))
+				minSize = Integer.parseInt(value);
+			else if (args[i].equals("-maxSize"))
+				maxSize = Integer.parseInt(value);
+			else if (args[i].equals("-maxThreads"))
+				maxThreads = Integer.parseInt(value);
+			else if (args[i].equals("-modes"))
+			{
+				List<String> modes = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+				strong = modes.contains("strong");
+				weak = modes.contains("weak");
+			}
+			else if (args[i].equals("-forks"))
+				forks = Integer.parseInt(value);
+			else if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(value);
+			else if (args[i].equals("-iterations"))
+				iterations = Integer.parseInt(value);
+			else if (args[i].equals("-out"))
+				out = value;
+			else
+				throw new IllegalArgumentException("unknown option " + args[i]);
+		}
+		if (ops.isEmpty())
+		{
+			ops.addAll(Arrays.asList(MatrixBenchmark.Operation.values()));
+		}
+
+		ScalingBenchmark sweep = new ScalingBenchmark(structure, forks, warmup, iterations,
+				out == null ? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(out)));
+		sweep.csv.println("mode,operation,structure,n,threads,median_ms,gflops,speedup,efficiency,karp_flatt,vs_matrix");
+		for (MatrixBenchmark.Operation op : ops)
+		{
+			for (int n = minSize; n <= maxSize; n *= 2)
+			{
+				if (strong)
+					sweep.strong(op, n, maxThreads);
+				if (weak)
+					sweep.weak(op, n, maxThreads);
+			}
+		}
+		sweep.csv.flush();
+		if (out != null)
+			sweep.csv.close();
+	}
+
+	private final MatrixBenchmark.Structure structure;
+	private final int forks;
+	private final int warmup;
+	private final int iterations;
+	private final PrintWriter csv;
+
+	private ScalingBenchmark(MatrixBenchmark.Structure structure, int forks, int warmup, int iterations,
+			PrintWriter csv)
+	{
+		this.structure = structure;
+		this.forks = forks;
+		this.warmup = warmup;
+		this.iterations = iterations;
+		this.csv = csv;
+	}
+
+	/**
+	 * Measures one size on every thread count, and on the sequential Matrix if the operation has one.
+	 */
+	private void strong(MatrixBenchmark.Operation op, int n, int maxThreads) throws IOException, InterruptedException
+	{
+		double flops = flops(op, n);
+		long sequential = -1;
+		if (op.supports(0))
+		{
+			sequential = median(op, n, 0);
+			row("strong", op, n, 0, sequential, flops, -1, -1);
+		}
+		long single = 0;
+		for (int p = 1; p <= maxThreads && op.supports(p); p = next(p, maxThreads))
+		{
+			long time = median(op, n, p);
+			if (p == 1)
+				single = time;
+			row("strong", op, n, p, time, flops, (double) single / time,
+					sequential < 0 ? -1 : (double) sequential / time);
+		}
+	}
+
+	/**
+	 * Measures n on one thread, and on the sequential Matrix if the operation has one, and
+	 * n * p^(1/3) on p threads, so that each thread has the same work.
+	 */
+	private void weak(MatrixBenchmark.Operation op, int n, int maxThreads) throws IOException, InterruptedException
+	{
+		double sequentialRate = -1;
+		if (op.supports(0))
+		{
+			double flops = flops(op, n);
+			long time = median(op, n, 0);
+			sequentialRate = flops / time;
+			row("weak", op, n, 0, time, flops, -1, -1);
+		}
+		double singleRate = 0;
+		for (int p = 1; p <= maxThreads && op.supports(p); p = next(p, maxThreads))
+		{
+			int size = (int) Math.round(n * Math.cbrt(p));
+			double flops = flops(op, size);
+			long time = median(op, size, p);
+			double rate = flops / time;
+			if (p == 1)
+				singleRate = rate;
+			row("weak", op, size, p, time, flops, rate / singleRate,
+					sequentialRate < 0 ? -1 : rate / sequentialRate);
+		}
+	}
+
+	/**
+	 * @return the median time of the operation in nanoseconds, over the invocations of all forks.
+	 */
+	private long median(MatrixBenchmark.Operation op, int n, int threads) throws IOException, InterruptedException
+	{
+		List<long[]> samples = new ArrayList<long[]>();
+		int count = 0;
+		for (int f = 0; f < Math.max(forks, 1); f++)
+		{
+			MatrixBenchmark.Sample sample = forks == 0
+					? MatrixBenchmark.measure(op, structure, n, threads, warmup, iterations, f)
+					: MatrixBenchmark.fork(op, structure, n, threads, warmup, iterations, f);
+			samples.add(sample.nanos);
+			count += sample.nanos.length;
+		}
+		long[] all = new long[count];
+		int k = 0;
+		for (long[] s : samples)
+		{
+			System.arraycopy(s, 0, all, k, s.length);
+			k += s.length;
+		}
+		Arrays.sort(all);
+		return MatrixBenchmark.percentile(all, 50);
+	}
+
+	/**
+	 * Writes one point. A speedup or vs_matrix below 0 leaves the column, and those derived from
+	 * it, empty; so does karp_flatt on one thread, where it is 0 / 0.
+	 */
+	private void row(String mode, MatrixBenchmark.Operation op, int n, int threads, long nanos, double flops,
+			double speedup, double vsMatrix)
+	{
+		StringBuilder line = new StringBuilder();
+		line.append(mode).append(',').append(op).append(',').append(structure).append(',').append(n)
+				.append(',').append(threads).append(',').append(format(nanos / 1e6))
+				.append(',').append(format(flops / nanos)).append(',');
+		if (speedup >= 0)
+		{
+			line.append(format(speedup)).append(',').append(format(speedup / threads)).append(',');
+			if (threads > 1)
+				line.append(format((1 / speedup - 1.0 / threads) / (1 - 1.0 / threads)));
+		}
+		else
+		{
+			line.append(",,");
+		}
+		line.append(',');
+		if (vsMatrix >= 0)
+			line.append(format(vsMatrix));
+		csv.println(line);
+	}
+
+	/**
+	 * @return the nominal flop count of the operation on an n x n matrix.
+	 */
+	static double flops(MatrixBenchmark.Operation op, int n)
+	{
+		double cube = (double) n * n * n;
+		switch (op)
+		{
+		case MULTIPLY:
+		case INVERSE:
+			return 2 * cube;
+		case RREF:
+			return cube;
+		default:
+			return 2 * cube / 3;
+		}
+	}
+
+	/**
+	 * Doubles the thread count, making sure the maximum itself is always measured.
+	 */
+	private static int next(int threads, int max)
+	{
+		if (threads == max)
+			return max + 1;
+		return Math.min(threads * 2, max);
+	}
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.4g", value);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package matrix;
+
+/**
+ * What a tile scheduler measured while running one task graph. All times are in nanoseconds.
+ *
+ * The critical path is the longest chain of dependent tasks, weighted by how long each task
+ * actually took, so no schedule on any number of workers could have finished sooner. Comparing
+ * it with the wall time separates time lost to the shape of the graph from time lost to
+ * scheduling: busy / criticalPath is the most parallelism the graph had to offer, and
+ * busy / (workers * wall) is how much of the workers' time was put to use.
+ */
+public class ScheduleStatistics
+{
+	private final int workers;
+	private final int tasks;
+	private final int tileSize;
+	private final long wallTime;
+	private final long busyTime;
+	private final long criticalPath;
+
+	ScheduleStatistics(int workers, int tasks, int tileSize, long wallTime, long busyTime, long criticalPath)
+	{
+		this.workers = workers;
+		this.tasks = tasks;
+		this.tileSize = tileSize;
+		this.wallTime = wallTime;
+		this.busyTime = busyTime;
+		this.criticalPath = criticalPath;
+	}
+
+	/**
+	 * @return the number of threads that ran tasks, including the caller.
+	 */
+	public int workers()
+	{
+		return workers;
+	}
+
+	/**
+	 * @return the number of tasks in the graph.
+	 */
+	public int tasks()
+	{
+		return tasks;
+	}
+
+	/**
+	 * @return the number of rows and columns in a tile.
+	 */
+	public int tileSize()
+	{
+		return tileSize;
+	}
+
+	/**
+	 * @return the time from the start of the first task to the end of the last.
+	 */
+	public long wallTime()
+	{
+		return wallTime;
+	}
+
+	/**
+	 * @return the time spent running tasks, summed over all workers.
+	 */
+	public long busyTime()
+	{
+		return busyTime;
+	}
+
+	/**
+	 * @return the time workers spent waiting for a task to become ready, summed over all workers.
+	 */
+	public long idleTime()
+	{
+		return Math.max(0, workers * wallTime - busyTime);
+	}
+
+	/**
+	 * @return the length of the longest chain of dependent tasks.
+	 */
+	public long criticalPath()
+	{
+		return criticalPath;
+	}
+
+	/**
+	 * @return busy time over critical path, the speedup an unlimited number of workers could reach.
+	 */
+	public double averageParallelism()
+	{
+		return criticalPath == 0 ? 0.0 : (double) busyTime / criticalPath;
+	}
+
+	/**
+	 * @return the fraction of the workers' time spent running tasks.
+	 */
+	public double efficiency()
+	{
+		return wallTime == 0 ? 0.0 : (double) busyTime / ((double) workers * wallTime);
+	}
+
+	public String toString()
+	{
+		return tasks + " tasks on " + workers + " workers, tile " + tileSize
+				+ ": wall " + wallTime / 1000000. + " ms, busy " + busyTime / 1000000.
+				+ " ms, idle " + idleTime() / 1000000. + " ms, critical path " + criticalPath / 1000000.
+				+ " ms, efficiency " + efficiency();
+	}
+}
\ No newline at end of file
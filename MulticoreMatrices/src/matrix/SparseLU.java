@@ -0,0 +1,340 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * A sparse LU factorization P * A = L * U with partial pivoting, computed column by column with
+ * the left-looking algorithm of Gilbert and Peierls.
+ *
+ * Column k of L and U comes from solving L * x = A(:, k) against the columns of L found so far.
+ * The non-zeros of x are found first, as the nodes reachable from the non-zeros of A(:, k) in
+ * the graph of L, by a depth-first search that also puts them in an order the solve can follow.
+ * The solve then only ever touches those entries, so the whole factorization takes time
+ * proportional to its flops and not to n^2. The entries of x in rows that have already been
+ * pivoted on form U(:, k); the largest of the others becomes the pivot, and the rest, divided
+ * by it, form L(:, k).
+ *
+ * L and U are kept in CSC form and grow as fill-in appears. The columns of A are taken in their
+ * given order; fill-in depends a great deal on that order, and no fill-reducing ordering is
+ * applied.
+ */
+public class SparseLU
+{
+	private final int n;
+	private final int[] lp;
+	private final int[] li;
+	private final double[] lx;
+	private final int[] up;
+	private final int[] ui;
+	private final double[] ux;
+	private final int[] pinv;
+
+	private SparseLU(int n, int[] lp, int[] li, double[] lx, int[] up, int[] ui, double[] ux, int[] pinv)
+	{
+		this.n = n;
+		this.lp = lp;
+		this.li = li;
+		this.lx = lx;
+		this.up = up;
+		this.ui = ui;
+		this.ux = ux;
+		this.pinv = pinv;
+	}
+
+	/**
+	 * Factors a square sparse matrix.
+	 * @param A : the matrix to factor. It is not modified.
+	 * @return the factorization, or null if a column has no usable pivot, so A is singular.
+	 */
+	static SparseLU factor(SparseMatrix A)
+	{
+		int n = A.rows();
+		int[] ap = A.columnPointers();
+		int[] ai = A.rowIndices();
+		double[] ax = A.columnValues();
+
+		int capacity = Math.max(4 * ap[n] + n, 16);
+		int[] lp = new int[n + 1];
+		int[] li = new int[capacity];
+		double[] lx = new double[capacity];
+		int[] up = new int[n + 1];
+		int[] ui = new int[capacity];
+		double[] ux = new double[capacity];
+		int[] pinv = new int[n];
+		for (int i = 0; i < n; i++)
+			pinv[i] = -1;
+
+		double[] x = new double[n];  // dense work vector, 0 outside the current pattern
+		int[] xi = new int[n];       // pattern of x, in xi[top .. n)
+		int[] stack = new int[n];
+		int[] pstack = new int[n];
+		int[] mark = new int[n];     // mark[j] == k + 1 once j is visited for column k
+		int lnz = 0;
+		int unz = 0;
+		for (int k = 0; k < n; k++)
+		{
+			lp[k] = lnz;
+			up[k] = unz;
+			if (lnz + n > li.length)
+			{
+				int grown = Math.max(2 * li.length, lnz + n);
+				li = Arrays.copyOf(li, grown);
+				lx = Arrays.copyOf(lx, grown);
+			}
+			if (unz + n > ui.length)
+			{
+				int grown = Math.max(2 * ui.length, unz + n);
+				ui = Arrays.copyOf(ui, grown);
+				ux = Arrays.copyOf(ux, grown);
+			}
+
+			// The pattern of x: everything reachable from A(:, k) in the graph of L.
+			int top = n;
+			for (int p = ap[k]; p < ap[k + 1]; p++)
+			{
+				if (mark[ai[p]] != k + 1)
+					top = reach(ai[p], k + 1, top, lp, li, pinv, xi, stack, pstack, mark);
+			}
+			for (int p = ap[k]; p < ap[k + 1]; p++)
+				x[ai[p]] = ax[p];
+			// L * x = A(:, k), in the topological order the search left in xi.
+			for (int q = top; q < n; q++)
+			{
+				int j = xi[q];
+				int col = pinv[j];
+				if (col < 0)
+					continue;
+				double xj = x[j]; // L's diagonal, the first entry of each column, is 1
+				if (xj == 0.0)
+					continue;
+				for (int p = lp[col] + 1; p < lp[col + 1]; p++)
+					x[li[p]] -= lx[p] * xj;
+			}
+
+			int pivot = -1;
+			double max = 0.0;
+			for (int q = top; q < n; q++)
+			{
+				int i = xi[q];
+				if (pinv[i] < 0)
+				{
+					if (Math.abs(x[i]) > max)
+					{
+						max = Math.abs(x[i]);
+						pivot = i;
+					}
+				}
+				else
+				{
+					ui[unz] = pinv[i];
+					ux[unz++] = x[i];
+				}
+			}
+			if (pivot < 0)
+				return null;
+			double d = x[pivot];
+			ui[unz] = k;
+			ux[unz++] = d;
+			pinv[pivot] = k;
+			li[lnz] = pivot;
+			lx[lnz++] = 1.0;
+			for (int q = top; q < n; q++)
+			{
+				int i = xi[q];
+				if (pinv[i] < 0)
+				{
+					li[lnz] = i;
+					lx[lnz++] = x[i] / d;
+				}
+				x[i] = 0.0;
+			}
+		}
+		lp[n] = lnz;
+		up[n] = unz;
+		for (int p = 0; p < lnz; p++) // rows of L in pivoted order, so that L is lower triangular
+			li[p] = pinv[li[p]];
+		sortColumns(n, up, ui, ux); // U's diagonal goes last in each column
+		sortColumns(n, lp, li, lx);
+		return new SparseLU(n, lp, li, lx, up, ui, ux, pinv);
+	}
+
+	/**
+	 * Depth-first search of the graph of L from node j, without recursion. Node j has an edge to
+	 * every row in column pinv[j] of L, or none if j has not been pivoted on yet. Each node is
+	 * written to xi[--top] once all the nodes it reaches have been, so xi[top .. n) ends up in
+	 * topological order.
+	 * @return the new top.
+	 */
+	private static int reach(int j, int stamp, int top, int[] lp, int[] li, int[] pinv,
+			int[] xi, int[] stack, int[] pstack, int[] mark)
+	{
+		int head = 0;
+		stack[0] = j;
+		while (head >= 0)
+		{
+			j = stack[head];
+			int col = pinv[j];
+			if (mark[j] != stamp)
+			{
+				mark[j] = stamp;
+				pstack[head] = col < 0 ? 0 : lp[col] + 1;
+			}
+			boolean done = true;
+			int end = col < 0 ? 0 : lp[col + 1];
+			for (int p = pstack[head]; p < end; p++)
+			{
+				int i = li[p];
+				if (mark[i] == stamp)
+					continue;
+				pstack[head] = p + 1;
+				stack[++head] = i;
+				done = false;
+				break;
+			}
+			if (done)
+			{
+				head--;
+				xi[--top] = j;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Sorts the indices of every column, with their values, by insertion sort; the columns are
+	 * short and nearly sorted.
+	 */
+	private static void sortColumns(int n, int[] ptr, int[] idx, double[] val)
+	{
+		for (int j = 0; j < n; j++)
+		{
+			for (int p = ptr[j] + 1; p < ptr[j + 1]; p++)
+			{
+				int i = idx[p];
+				double v = val[p];
+				int q = p - 1;
+				while (q >= ptr[j] && idx[q] > i)
+				{
+					idx[q + 1] = idx[q];
+					val[q + 1] = val[q];
+					q--;
+				}
+				idx[q + 1] = i;
+				val[q + 1] = v;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows and columns of the factored matrix.
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of entries stored in L and U together, fill-in included.
+	 */
+	public int nonZeros()
+	{
+		return lp[n] + up[n];
+	}
+
+	/**
+	 * @return the unit lower triangular factor L.
+	 */
+	public SparseMatrix getL()
+	{
+		return SparseMatrix.fromColumns(n, n, lp, li, lx);
+	}
+
+	/**
+	 * @return the upper triangular factor U.
+	 */
+	public SparseMatrix getU()
+	{
+		return SparseMatrix.fromColumns(n, n, up, ui, ux);
+	}
+
+	/**
+	 * Returns the pivot vector: row i of P * A is row getPivots()[i] of A.
+	 * @return
+	 */
+	public int[] getPivots()
+	{
+		int[] p = new int[n];
+		for (int i = 0; i < n; i++)
+			p[pinv[i]] = i;
+		return p;
+	}
+
+	/**
+	 * Returns the determinant as its sign and the logarithm of its magnitude: the product of
+	 * U's diagonal, negated if P is an odd permutation.
+	 * @return
+	 */
+	public LogDeterminant logAbsDeterminant()
+	{
+		LogDeterminant det = new LogDeterminant();
+		for (int k = 0; k < n; k++)
+			det.multiply(ux[up[k + 1] - 1]);
+		boolean[] seen = new boolean[n];
+		int transpositions = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int length = 0;
+			for (int j = i; !seen[j]; j = pinv[j])
+			{
+				seen[j] = true;
+				length++;
+			}
+			if (length > 0)
+				transpositions += length - 1;
+		}
+		if ((transpositions & 1) != 0)
+			det.negate();
+		return det;
+	}
+
+	/**
+	 * @return the determinant, which is infinite or 0 if it does not fit in a double.
+	 */
+	public double determinant()
+	{
+		return logAbsDeterminant().value();
+	}
+
+	/**
+	 * Solves A * x = b as L * y = P * b and then U * x = y, touching only the stored entries.
+	 * @param b : the right-hand side, n long. It is not modified.
+	 * @return x, or null if b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		if (b.length != n)
+			return null;
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++)
+			x[pinv[i]] = b[i];
+		for (int j = 0; j < n; j++) // L * y = P * b
+		{
+			double xj = x[j];
+			if (xj == 0.0)
+				continue;
+			for (int p = lp[j] + 1; p < lp[j + 1]; p++)
+				x[li[p]] -= lx[p] * xj;
+		}
+		for (int j = n - 1; j >= 0; j--) // U * x = y
+		{
+			int diag = up[j + 1] - 1;
+			double xj = x[j] / ux[diag];
+			x[j] = xj;
+			if (xj == 0.0)
+				continue;
+			for (int p = up[j]; p < diag; p++)
+				x[ui[p]] -= ux[p] * xj;
+		}
+		return x;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,521 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A matrix that stores only its non-zero entries, in compressed sparse row (CSR) form: the
+ * column indices and values of row i are colIdx[rowPtr[i] .. rowPtr[i + 1]) and the same range of
+ * values, sorted by column. The compressed sparse column (CSC) form, the same layout by columns,
+ * is built from it the first time it is needed and kept, since the sparse LU reads A by columns.
+ *
+ * Storage and the cost of every operation grow with the number of non-zeros rather than with
+ * rows * cols, so triangular, diagonal and banded matrices, and the systems that come out of
+ * finite element meshes, cost a fraction of what they do as a {@link Matrix}.
+ *
+ * Like Matrix, a SparseMatrix is not modified once built; operations return new matrices.
+ */
+public class SparseMatrix
+{
+	/** Number of multiply-adds below which a product is not split further between threads. */
+	static final int MIN_WORK = 1 << 14;
+
+	private final int rows;
+	private final int cols;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private int[] colPtr;
+	private int[] rowIdx;
+	private double[] colValues;
+
+	/**
+	 * Wraps CSR arrays without copying them. The indices of every row must be sorted and distinct.
+	 * @param rows   : number of rows in the matrix.
+	 * @param cols   : number of columns in the matrix.
+	 * @param rowPtr : where each row starts in colIdx and values, rows + 1 long.
+	 * @param colIdx : the column of each non-zero.
+	 * @param values : the value of each non-zero.
+	 */
+	SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values)
+	{
+		this.rows = rows;
+		this.cols = cols;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.values = values;
+	}
+
+	/**
+	 * Constructs a sparse copy of a dense matrix, keeping only its non-zero entries.
+	 * @param dense
+	 */
+	public SparseMatrix(Matrix dense)
+	{
+		this(dense.data(), dense.stride(), dense.rows(), dense.cols());
+	}
+
+	/**
+	 * Constructs a sparse copy of a two dimensional array, keeping only its non-zero entries.
+	 * @param mat
+	 */
+	public SparseMatrix(double[][] mat)
+	{
+		this(new Matrix(mat));
+	}
+
+	private SparseMatrix(double[] a, int stride, int numRows, int numCols)
+	{
+		rows = numRows;
+		cols = numCols;
+		rowPtr = new int[rows + 1];
+		int nnz = 0;
+		for (int i = 0; i < rows; i++)
+		{
+			for (int j = 0; j < cols; j++)
+			{
+				if (a[i * stride + j] != 0.0)
+					nnz++;
+			}
+		}
+		colIdx = new int[nnz];
+		values = new double[nnz];
+		int p = 0;
+		for (int i = 0; i < rows; i++)
+		{
+			for (int j = 0; j < cols; j++)
+			{
+				double v = a[i * stride + j];
+				if (v != 0.0)
+				{
+					colIdx[p] = j;
+					values[p++] = v;
+				}
+			}
+			rowPtr[i + 1] = p;
+		}
+	}
+
+	/**
+	 * Builds a matrix from (row, column, value) triplets, in any order. Triplets at the same
+	 * position are added together, which is how element matrices are assembled into a finite
+	 * element system.
+	 * @param numRows : number of rows in the matrix.
+	 * @param numCols : number of columns in the matrix.
+	 * @param r       : the row of each triplet.
+	 * @param c       : the column of each triplet.
+	 * @param v       : the value of each triplet.
+	 * @return the matrix, or null if the arrays differ in length or an index is out of range.
+	 */
+	public static SparseMatrix fromTriplets(int numRows, int numCols, int[] r, int[] c, double[] v)
+	{
+		if (r.length != c.length || r.length != v.length)
+			return null;
+		for (int t = 0; t < r.length; t++)
+		{
+			if (r[t] < 0 || r[t] >= numRows || c[t] < 0 || c[t] >= numCols)
+				return null;
+		}
+		// Bucket the triplets by column, then by row, so that each row comes out sorted.
+		int[] byCol = new int[numCols + 1];
+		for (int t = 0; t < c.length; t++)
+			byCol[c[t] + 1]++;
+		for (int j = 0; j < numCols; j++)
+			byCol[j + 1] += byCol[j];
+		int[] order = new int[c.length];
+		int[] next = byCol.clone();
+		for (int t = 0; t < c.length; t++)
+			order[next[c[t]]++] = t;
+		int[] ptr = new int[numRows + 1];
+		for (int t = 0; t < r.length; t++)
+			ptr[r[t] + 1]++;
+		for (int i = 0; i < numRows; i++)
+			ptr[i + 1] += ptr[i];
+		int[] idx = new int[r.length];
+		double[] val = new double[r.length];
+		next = ptr.clone();
+		for (int q = 0; q < order.length; q++)
+		{
+			int t = order[q];
+			int i = r[t];
+			int p = next[i];
+			if (p > ptr[i] && idx[p - 1] == c[t])
+			{
+				val[p - 1] += v[t];
+				continue;
+			}
+			idx[p] = c[t];
+			val[p] = v[t];
+			next[i]++;
+		}
+		// Squeeze out the slots that duplicates left unused.
+		int nnz = 0;
+		int[] rowStart = new int[numRows + 1];
+		for (int i = 0; i < numRows; i++)
+		{
+			rowStart[i] = nnz;
+			for (int p = ptr[i]; p < next[i]; p++)
+			{
+				idx[nnz] = idx[p];
+				val[nnz++] = val[p];
+			}
+		}
+		rowStart[numRows] = nnz;
+		int[] colIdx = new int[nnz];
+		double[] values = new double[nnz];
+		System.arraycopy(idx, 0, colIdx, 0, nnz);
+		System.arraycopy(val, 0, values, 0, nnz);
+		return new SparseMatrix(numRows, numCols, rowStart, colIdx, values);
+	}
+
+	/**
+	 * Builds a matrix from CSC arrays, which it does not keep.
+	 */
+	static SparseMatrix fromColumns(int numRows, int numCols, int[] ptr, int[] idx, double[] val)
+	{
+		int nnz = ptr[numCols];
+		int[] rowPtr = new int[numRows + 1];
+		int[] colIdx = new int[nnz];
+		double[] values = new double[nnz];
+		compress(numCols, numRows, ptr, idx, val, rowPtr, colIdx, values);
+		return new SparseMatrix(numRows, numCols, rowPtr, colIdx, values);
+	}
+
+	/**
+	 * Switches a compressed matrix between its row and column forms: given the n compressed
+	 * vectors of ptr, idx and val, each indexed up to m, fills outPtr, outIdx and outVal with the
+	 * m vectors of the other form, with sorted indices.
+	 */
+	private static void compress(int n, int m, int[] ptr, int[] idx, double[] val,
+			int[] outPtr, int[] outIdx, double[] outVal)
+	{
+		for (int p = 0; p < ptr[n]; p++)
+			outPtr[idx[p] + 1]++;
+		for (int i = 0; i < m; i++)
+			outPtr[i + 1] += outPtr[i];
+		int[] next = new int[m];
+		System.arraycopy(outPtr, 0, next, 0, m);
+		for (int j = 0; j < n; j++)
+		{
+			for (int p = ptr[j]; p < ptr[j + 1]; p++)
+			{
+				int q = next[idx[p]]++;
+				outIdx[q] = j;
+				outVal[q] = val[p];
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows in the matrix.
+	 */
+	public int rows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @return the number of columns in the matrix.
+	 */
+	public int cols()
+	{
+		return cols;
+	}
+
+	/**
+	 * @return the number of entries that are stored.
+	 */
+	public int nonZeros()
+	{
+		return rowPtr[rows];
+	}
+
+	/**
+	 * @return the fraction of the entries that are stored.
+	 */
+	public double density()
+	{
+		return rows == 0 || cols == 0 ? 0.0 : (double) nonZeros() / ((double) rows * cols);
+	}
+
+	/**
+	 * Returns the value of an entry, found by binary search within its row.
+	 * @param i : the row of the entry.
+	 * @param j : the column of the entry.
+	 * @return
+	 */
+	public double get(int i, int j)
+	{
+		int lo = rowPtr[i];
+		int hi = rowPtr[i + 1] - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (colIdx[mid] < j)
+				lo = mid + 1;
+			else if (colIdx[mid] > j)
+				hi = mid - 1;
+			else
+				return values[mid];
+		}
+		return 0.0;
+	}
+
+	int[] rowPointers()
+	{
+		return rowPtr;
+	}
+
+	int[] columnIndices()
+	{
+		return colIdx;
+	}
+
+	double[] values()
+	{
+		return values;
+	}
+
+	/**
+	 * @return where each column starts in the CSC form, cols + 1 long.
+	 */
+	synchronized int[] columnPointers()
+	{
+		if (colPtr == null)
+		{
+			int[] ptr = new int[cols + 1];
+			int[] idx = new int[nonZeros()];
+			double[] val = new double[nonZeros()];
+			compress(rows, cols, rowPtr, colIdx, values, ptr, idx, val);
+			rowIdx = idx;
+			colValues = val;
+			colPtr = ptr;
+		}
+		return colPtr;
+	}
+
+	/**
+	 * @return the row of each non-zero in the CSC form.
+	 */
+	int[] rowIndices()
+	{
+		columnPointers();
+		return rowIdx;
+	}
+
+	/**
+	 * @return the value of each non-zero in the CSC form.
+	 */
+	double[] columnValues()
+	{
+		columnPointers();
+		return colValues;
+	}
+
+	/**
+	 * @return a dense copy of this matrix.
+	 */
+	public Matrix toMatrix()
+	{
+		double[] dense = new double[rows * cols];
+		for (int i = 0; i < rows; i++)
+		{
+			for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++)
+				dense[i * cols + colIdx[p]] = values[p];
+		}
+		return new Matrix(dense, rows, cols);
+	}
+
+	/**
+	 * @return the transpose of this matrix, whose CSR form is this matrix's CSC form.
+	 */
+	public SparseMatrix transpose()
+	{
+		return new SparseMatrix(cols, rows, columnPointers(), rowIndices(), columnValues());
+	}
+
+	/**
+	 * Computes A * x on the calling thread.
+	 * @param x : the vector to multiply, as long as the matrix has columns.
+	 * @return A * x, or null if x has the wrong length.
+	 */
+	public double[] multiply(double[] x)
+	{
+		if (x.length != cols)
+			return null;
+		double[] y = new double[rows];
+		multiplyRows(x, y, 0, rows);
+		return y;
+	}
+
+	/**
+	 * Computes A * x with the rows split between the context's threads into ranges holding about
+	 * the same number of non-zeros, so that a few dense rows do not leave the others idle.
+	 * @param x       : the vector to multiply, as long as the matrix has columns.
+	 * @param context : the threads to multiply on.
+	 * @return A * x, or null if x has the wrong length.
+	 */
+	public double[] multiply(double[] x, ComputeContext context)
+	{
+		if (x.length != cols)
+			return null;
+		double[] y = new double[rows];
+		run(context.forkJoinPool(), new ProductTask(x, y, 1, 0, rows));
+		return y;
+	}
+
+	/**
+	 * Computes A * B, where B is dense, on the calling thread.
+	 * @param B : the matrix to multiply, with as many rows as this matrix has columns.
+	 * @return A * B, or null if B has the wrong number of rows.
+	 */
+	public Matrix multiply(Matrix B)
+	{
+		if (B.rows() != cols)
+			return null;
+		int n = B.cols();
+		double[] C = new double[rows * n];
+		multiplyRows(B.copyData(), n, C, 0, rows);
+		return new Matrix(C, rows, n);
+	}
+
+	/**
+	 * Computes A * B, where B is dense, with the rows of A split between the context's threads.
+	 * @param B       : the matrix to multiply, with as many rows as this matrix has columns.
+	 * @param context : the threads to multiply on.
+	 * @return A * B, or null if B has the wrong number of rows.
+	 */
+	public Matrix multiply(Matrix B, ComputeContext context)
+	{
+		if (B.rows() != cols)
+			return null;
+		int n = B.cols();
+		double[] C = new double[rows * n];
+		run(context.forkJoinPool(), new ProductTask(B.copyData(), C, n, 0, rows));
+		return new Matrix(C, rows, n);
+	}
+
+	private void run(ForkJoinPool pool, ProductTask task)
+	{
+		if ((long) nonZeros() * task.n < 2 * MIN_WORK)
+			task.compute();
+		else
+			pool.invoke(task);
+	}
+
+	/**
+	 * Sets y[i] to row i of A times x, for the rows in [r0, r1).
+	 */
+	private void multiplyRows(double[] x, double[] y, int r0, int r1)
+	{
+		for (int i = r0; i < r1; i++)
+		{
+			double sum = 0.0;
+			for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++)
+				sum += values[p] * x[colIdx[p]];
+			y[i] = sum;
+		}
+	}
+
+	/**
+	 * Sets rows [r0, r1) of the n column row-major C to those rows of A times B.
+	 */
+	private void multiplyRows(double[] B, int n, double[] C, int r0, int r1)
+	{
+		for (int i = r0; i < r1; i++)
+		{
+			int ci = i * n;
+			for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++)
+			{
+				double a = values[p];
+				int bk = colIdx[p] * n;
+				for (int j = 0; j < n; j++)
+					C[ci + j] += a * B[bk + j];
+			}
+		}
+	}
+
+	/**
+	 * Factors this matrix as P * A = L * U, storing only the non-zeros of L and U.
+	 * @return the factorization, or null if the matrix is rectangular or singular.
+	 */
+	public SparseLU lu()
+	{
+		if (rows != cols)
+			return null;
+		return SparseLU.factor(this);
+	}
+
+	/**
+	 * Solves A * x = b with a sparse LU factorization.
+	 * To solve against many right-hand sides, factor once with lu() and call its solve method
+	 * for each one instead.
+	 * @param b : the right-hand side, with as many entries as the matrix has rows.
+	 * @return x, or null if the matrix is rectangular or singular, or b has the wrong length.
+	 */
+	public double[] solve(double[] b)
+	{
+		SparseLU lu = lu();
+		if (lu == null)
+			return null;
+		return lu.solve(b);
+	}
+
+	/**
+	 * Multiplies a range of rows by n right-hand side columns, halving it, at the row that
+	 * splits its non-zeros in two, until it holds about MIN_WORK multiply-adds.
+	 */
+	private class ProductTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] x;
+		final double[] y;
+		final int n;
+		final int r0;
+		final int r1;
+
+		ProductTask(double[] x, double[] y, int n, int r0, int r1)
+		{
+			this.x = x;
+			this.y = y;
+			this.n = n;
+			this.r0 = r0;
+			this.r1 = r1;
+		}
+
+		protected void compute()
+		{
+			long work = (long) (rowPtr[r1] - rowPtr[r0]) * n;
+			if (r1 - r0 > 1 && work >= 2 * MIN_WORK)
+			{
+				int mid = splitRow();
+				invokeAll(new ProductTask(x, y, n, r0, mid), new ProductTask(x, y, n, mid, r1));
+				return;
+			}
+			if (n == 1)
+				multiplyRows(x, y, r0, r1);
+			else
+				multiplyRows(x, n, y, r0, r1);
+		}
+
+		/**
+		 * Finds the row in (r0, r1) before which half of the range's non-zeros lie.
+		 */
+		private int splitRow()
+		{
+			int half = (rowPtr[r0] + rowPtr[r1]) >>> 1;
+			int lo = r0 + 1;
+			int hi = r1 - 1;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (rowPtr[mid] < half)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+}
\ No newline at end of file
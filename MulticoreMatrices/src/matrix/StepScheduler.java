@@ -0,0 +1,101 @@
+package matrix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the tasks of a stepwise computation, such as one elimination step after another, and
+ * waits for each step's tasks on their own.
+ *
+ * One scheduler serves a whole computation. A step is every task submitted since the previous
+ * awaitStep(). Its tasks count down a pending counter, and whichever finishes last, or the caller
+ * if the step is already done when it asks, arrives at a two-party Phaser that the caller is
+ * waiting on. That advances the phaser to the next step, so the same barrier is reused for every
+ * step, a wait costs the same however many steps came before, and the number of tasks in a step
+ * is not limited by the phaser's party count.
+ *
+ * A task that throws does not stop the rest of its step. The first failure is kept and thrown from
+ * awaitStep() once the step's other tasks are done, so nothing is left running on the data.
+ */
+class StepScheduler
+{
+	private final ExecutorService executor;
+	/** Party 0 is the waiting caller, party 1 the current step's tasks as a group. */
+	private final Phaser phaser = new Phaser(2);
+	/** The current step's unfinished tasks, plus 1 held by the caller until it starts waiting. */
+	private final AtomicInteger pending = new AtomicInteger(1);
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * @param executor : the pool to run tasks on.
+	 */
+	StepScheduler(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds a task to the current step and starts it.
+	 */
+	void submit(final Runnable task)
+	{
+		pending.incrementAndGet();
+		try {
+			executor.execute(Metrics.submitted(new Runnable()
+			{
+				public void run()
+				{
+					try {
+						task.run();
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						finish();
+					}
+				}
+			}));
+		} catch (RuntimeException e) { // rejected, the context was shut down
+			finish();
+			throw e;
+		}
+	}
+
+	private void finish()
+	{
+		if (pending.decrementAndGet() == 0)
+			phaser.arrive();
+	}
+
+	/**
+	 * Waits until every task of the current step has finished, and starts the next step.
+	 * @throws ComputationException if a task of the step threw, or the wait was interrupted.
+	 */
+	void awaitStep()
+	{
+		int step = phaser.getPhase();
+		Metrics.checkSaturation(executor);
+		finish();
+		try {
+			phaser.awaitAdvanceInterruptibly(phaser.arrive());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ComputationException("Interrupted waiting for step " + step, e);
+		}
+		pending.set(1);
+		Throwable t = failure.getAndSet(null);
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t != null)
+			throw new ComputationException("A task of step " + step + " failed", t);
+	}
+
+	/**
+	 * @return the number of steps completed so far.
+	 */
+	int steps()
+	{
+		return phaser.getPhase();
+	}
+}
\ No newline at end of file
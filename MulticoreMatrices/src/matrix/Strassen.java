@@ -0,0 +1,251 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Strassen-Winograd matrix multiplication on row-major arrays, computing C = A * B.
+ *
+ * Each level splits A, B and C into quadrants and forms C from 7 quadrant products and 15
+ * quadrant additions instead of 8 products, so n x n products cost O(n^2.807) rather than
+ * O(n^3). Once any of m, k or n is at most the cutoff, the recursion hands over to {@link Gemm},
+ * whose packed kernel is faster on blocks that small than the additions it would save.
+ *
+ * Odd dimensions are peeled rather than padded: the even leading part recurses, and the odd last
+ * row, column or inner index is added by a thin Gemm call.
+ *
+ * Memory: the sequential levels follow the schedule of Boyer, Dumas, Pernet and Zhou, which
+ * computes products straight into the quadrants of C and needs only two temporaries, the size of
+ * a quadrant of A and of B, per level; in all, about (m * k + k * n + m * n) / 3 extra doubles.
+ * A parallel level forks the 7 products as independent tasks, so it keeps all 8 operand sums and
+ * 3 of the products at once, m * k + k * n + 3 / 4 * m * n doubles, and only as many levels are
+ * parallel as it takes to give every thread a product.
+ *
+ * Accuracy: Strassen-Winograd is not as accurate as the classical product. The classical error
+ * in each entry is bounded by k * EPSILON * (|A| * |B|) for that entry, whereas Strassen's is
+ * only bounded in norm, by a factor that grows about 12-fold per level times EPSILON * ||A|| *
+ * ||B||. Measured against products computed exactly, for random n x n matrices of entries in
+ * [-1, 1] and a cutoff of 128, the largest entry error of the classical product stays near 2e-14
+ * from n = 256 to 2048, while Strassen's grows about fourfold per level: 1.3e-13 at n = 512,
+ * 4.5e-13 at 1024 and 1.6e-12 at 2048. It is a poor choice when the entries of A or B span many
+ * orders of magnitude, where small entries of the result can lose all their digits.
+ */
+class Strassen
+{
+	/** The default cutoff, the largest dimension at which products go to Gemm. */
+	static final int DEFAULT_CUTOFF = 128;
+	/** The cutoff in use: the system property matrix.strassen.cutoff, or DEFAULT_CUTOFF. */
+	static final int CUTOFF = Math.max(16, Integer.getInteger("matrix.strassen.cutoff", DEFAULT_CUTOFF));
+	/** The most levels that fork their products, however many threads there are. */
+	static final int MAX_PARALLEL_LEVELS = 2;
+
+	private Strassen()
+	{
+	}
+
+	/**
+	 * Tells whether recursing pays for an m x k by k x n product: whether at least one level of
+	 * Strassen would run before the cutoff.
+	 */
+	static boolean worthwhile(int m, int n, int k)
+	{
+		return Math.min(m, Math.min(n, k)) > 2 * CUTOFF;
+	}
+
+	/**
+	 * Computes C = A * B, where A is m x k, B is k x n and C is m x n. C is not read.
+	 * @param pool : the pool to fork the products of the top levels on, or null to run sequentially.
+	 */
+	static void multiply(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc, ForkJoinPool pool)
+	{
+		int levels = 0;
+		if (pool != null)
+		{
+			for (int tasks = 1; tasks < pool.getParallelism() && levels < MAX_PARALLEL_LEVELS; tasks *= 7)
+				levels++;
+		}
+		Product top = new Product(m, n, k, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, levels);
+		if (levels == 0)
+			top.compute();
+		else
+			pool.invoke(top);
+	}
+
+	/**
+	 * One product C = A * B, recursing as far as the cutoff allows, with the given number of
+	 * levels forking their products.
+	 */
+	private static void recurse(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+			double[] c, int cOff, int ldc, int parallelLevels)
+	{
+		if (Math.min(m, Math.min(n, k)) <= CUTOFF)
+		{
+			Gemm.gemm(false, false, m, n, k, 1.0, a, aOff, lda, b, bOff, ldb, 0.0, c, cOff, ldc);
+			return;
+		}
+		int m2 = m & ~1;
+		int n2 = n & ~1;
+		int k2 = k & ~1;
+		if (parallelLevels > 0)
+			parallelStep(m2 / 2, n2 / 2, k2 / 2, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, parallelLevels);
+		else
+			sequentialStep(m2 / 2, n2 / 2, k2 / 2, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+
+		if (k2 < k) // C[0:m2, 0:n2] += A[0:m2, k2] * B[k2, 0:n2]
+			Gemm.gemm(false, false, m2, n2, 1, 1.0, a, aOff + k2, lda, b, bOff + k2 * ldb, ldb, 1.0, c, cOff, ldc);
+		if (n2 < n) // C[0:m2, n2] = A[0:m2, :] * B[:, n2]
+			Gemm.gemm(false, false, m2, 1, k, 1.0, a, aOff, lda, b, bOff + n2, ldb, 0.0, c, cOff + n2, ldc);
+		if (m2 < m) // C[m2, :] = A[m2, :] * B
+			Gemm.gemm(false, false, 1, n, k, 1.0, a, aOff + m2 * lda, lda, b, bOff, ldb, 0.0, c, cOff + m2 * ldc, ldc);
+	}
+
+	/**
+	 * One sequential level on the even leading part, with quadrants of hm x hk, hk x hn and hm x hn.
+	 * X holds the sums of A's quadrants and then P1; Y holds the sums of B's quadrants.
+	 */
+	private static void sequentialStep(int hm, int hn, int hk, double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb, double[] c, int cOff, int ldc)
+	{
+		int a11 = aOff, a12 = aOff + hk, a21 = aOff + hm * lda, a22 = a21 + hk;
+		int b11 = bOff, b12 = bOff + hn, b21 = bOff + hk * ldb, b22 = b21 + hn;
+		int c11 = cOff, c12 = cOff + hn, c21 = cOff + hm * ldc, c22 = c21 + hn;
+		int ldx = Math.max(hk, hn);
+		double[] X = new double[hm * ldx];
+		double[] Y = new double[hk * hn];
+
+		add(hm, hk, a, a11, lda, -1, a, a21, lda, X, 0, ldx);            // S3 = A11 - A21
+		add(hk, hn, b, b22, ldb, -1, b, b12, ldb, Y, 0, hn);             // T3 = B22 - B12
+		recurse(hm, hn, hk, X, 0, ldx, Y, 0, hn, c, c21, ldc, 0);         // P7 = S3 * T3 in C21
+		add(hm, hk, a, a21, lda, 1, a, a22, lda, X, 0, ldx);             // S1 = A21 + A22
+		add(hk, hn, b, b12, ldb, -1, b, b11, ldb, Y, 0, hn);             // T1 = B12 - B11
+		recurse(hm, hn, hk, X, 0, ldx, Y, 0, hn, c, c22, ldc, 0);         // P5 = S1 * T1 in C22
+		add(hk, hn, b, b22, ldb, -1, Y, 0, hn, Y, 0, hn);                // T2 = B22 - T1
+		add(hm, hk, X, 0, ldx, -1, a, a11, lda, X, 0, ldx);              // S2 = S1 - A11
+		recurse(hm, hn, hk, X, 0, ldx, Y, 0, hn, c, c12, ldc, 0);         // P6 = S2 * T2 in C12
+		add(hm, hk, a, a12, lda, -1, X, 0, ldx, X, 0, ldx);              // S4 = A12 - S2
+		recurse(hm, hn, hk, X, 0, ldx, b, b22, ldb, c, c11, ldc, 0);      // P3 = S4 * B22 in C11
+		recurse(hm, hn, hk, a, a11, lda, b, b11, ldb, X, 0, ldx, 0);      // P1 = A11 * B11 in X
+		add(hm, hn, X, 0, ldx, 1, c, c12, ldc, c, c12, ldc);             // U2 = P1 + P6 in C12
+		add(hm, hn, c, c12, ldc, 1, c, c21, ldc, c, c21, ldc);           // U3 = U2 + P7 in C21
+		add(hm, hn, c, c12, ldc, 1, c, c22, ldc, c, c12, ldc);           // U4 = U2 + P5 in C12
+		add(hm, hn, c, c21, ldc, 1, c, c22, ldc, c, c22, ldc);           // C22 = U3 + P5
+		add(hm, hn, c, c12, ldc, 1, c, c11, ldc, c, c12, ldc);           // C12 = U4 + P3
+		add(hk, hn, Y, 0, hn, -1, b, b21, ldb, Y, 0, hn);                // T4 = T2 - B21
+		recurse(hm, hn, hk, a, a22, lda, Y, 0, hn, c, c11, ldc, 0);       // P4 = A22 * T4 in C11
+		add(hm, hn, c, c21, ldc, -1, c, c11, ldc, c, c21, ldc);          // C21 = U3 - P4
+		recurse(hm, hn, hk, a, a12, lda, b, b21, ldb, c, c11, ldc, 0);    // P2 = A12 * B21 in C11
+		add(hm, hn, X, 0, ldx, 1, c, c11, ldc, c, c11, ldc);             // C11 = P1 + P2
+	}
+
+	/**
+	 * One parallel level: all eight operand sums first, then the 7 products as forked tasks,
+	 * P3, P5, P6 and P7 straight into the quadrants of C, then the same combination as the
+	 * sequential level.
+	 */
+	private static void parallelStep(int hm, int hn, int hk, double[] a, int aOff, int lda,
+			double[] b, int bOff, int ldb, double[] c, int cOff, int ldc, int levels)
+	{
+		int a11 = aOff, a12 = aOff + hk, a21 = aOff + hm * lda, a22 = a21 + hk;
+		int b11 = bOff, b12 = bOff + hn, b21 = bOff + hk * ldb, b22 = b21 + hn;
+		int c11 = cOff, c12 = cOff + hn, c21 = cOff + hm * ldc, c22 = c21 + hn;
+		double[] S1 = new double[hm * hk], S2 = new double[hm * hk], S3 = new double[hm * hk], S4 = new double[hm * hk];
+		double[] T1 = new double[hk * hn], T2 = new double[hk * hn], T3 = new double[hk * hn], T4 = new double[hk * hn];
+		double[] P1 = new double[hm * hn], P2 = new double[hm * hn], P4 = new double[hm * hn];
+		add(hm, hk, a, a21, lda, 1, a, a22, lda, S1, 0, hk);
+		add(hm, hk, S1, 0, hk, -1, a, a11, lda, S2, 0, hk);
+		add(hm, hk, a, a11, lda, -1, a, a21, lda, S3, 0, hk);
+		add(hm, hk, a, a12, lda, -1, S2, 0, hk, S4, 0, hk);
+		add(hk, hn, b, b12, ldb, -1, b, b11, ldb, T1, 0, hn);
+		add(hk, hn, b, b22, ldb, -1, T1, 0, hn, T2, 0, hn);
+		add(hk, hn, b, b22, ldb, -1, b, b12, ldb, T3, 0, hn);
+		add(hk, hn, T2, 0, hn, -1, b, b21, ldb, T4, 0, hn);
+
+		int next = levels - 1;
+		RecursiveAction.invokeAll(
+				new Product(hm, hn, hk, a, a11, lda, b, b11, ldb, P1, 0, hn, next),
+				new Product(hm, hn, hk, a, a12, lda, b, b21, ldb, P2, 0, hn, next),
+				new Product(hm, hn, hk, S4, 0, hk, b, b22, ldb, c, c11, ldc, next),  // P3
+				new Product(hm, hn, hk, a, a22, lda, T4, 0, hn, P4, 0, hn, next),
+				new Product(hm, hn, hk, S1, 0, hk, T1, 0, hn, c, c22, ldc, next),    // P5
+				new Product(hm, hn, hk, S2, 0, hk, T2, 0, hn, c, c12, ldc, next),    // P6
+				new Product(hm, hn, hk, S3, 0, hk, T3, 0, hn, c, c21, ldc, next));   // P7
+
+		add(hm, hn, P1, 0, hn, 1, c, c12, ldc, c, c12, ldc);             // U2 = P1 + P6 in C12
+		add(hm, hn, c, c12, ldc, 1, c, c21, ldc, c, c21, ldc);           // U3 = U2 + P7 in C21
+		add(hm, hn, c, c12, ldc, 1, c, c22, ldc, c, c12, ldc);           // U4 = U2 + P5 in C12
+		add(hm, hn, c, c21, ldc, 1, c, c22, ldc, c, c22, ldc);           // C22 = U3 + P5
+		add(hm, hn, c, c12, ldc, 1, c, c11, ldc, c, c12, ldc);           // C12 = U4 + P3
+		add(hm, hn, c, c21, ldc, -1, P4, 0, hn, c, c21, ldc);            // C21 = U3 - P4
+		add(hm, hn, P1, 0, hn, 1, P2, 0, hn, c, c11, ldc);               // C11 = P1 + P2
+	}
+
+	/**
+	 * Z = X + sign * Y over an m x n block. Z may be X or Y.
+	 */
+	private static void add(int m, int n, double[] x, int xOff, int ldx, int sign, double[] y, int yOff, int ldy,
+			double[] z, int zOff, int ldz)
+	{
+		for (int i = 0; i < m; i++)
+		{
+			int rx = xOff + i * ldx;
+			int ry = yOff + i * ldy;
+			int rz = zOff + i * ldz;
+			if (sign > 0)
+			{
+				for (int j = 0; j < n; j++)
+					z[rz + j] = x[rx + j] + y[ry + j];
+			}
+			else
+			{
+				for (int j = 0; j < n; j++)
+					z[rz + j] = x[rx + j] - y[ry + j];
+			}
+		}
+	}
+
+	/**
+	 * A product C = A * B as a task, so that the products of a parallel level can be forked.
+	 */
+	private static class Product extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int m;
+		final int n;
+		final int k;
+		final double[] a;
+		final int aOff;
+		final int lda;
+		final double[] b;
+		final int bOff;
+		final int ldb;
+		final double[] c;
+		final int cOff;
+		final int ldc;
+		final int levels;
+
+		Product(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb,
+				double[] c, int cOff, int ldc, int levels)
+		{
+			this.m = m;
+			this.n = n;
+			this.k = k;
+			this.a = a;
+			this.aOff = aOff;
+			this.lda = lda;
+			this.b = b;
+			this.bOff = bOff;
+			this.ldb = ldb;
+			this.c = c;
+			this.cOff = cOff;
+			this.ldc = ldc;
+			this.levels = levels;
+		}
+
+		protected void compute()
+		{
+			recurse(m, n, k, a, aOff, lda, b, bOff, ldb, c, cOff, ldc, levels);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package matrix;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum that many threads add to at once without contending on one memory location.
+ *
+ * Each thread adds to one of several cells, chosen by its id, and reading the sum adds the cells
+ * up. The cells are 8 longs apart, a 64 byte cache line, so threads on different cells never
+ * invalidate each other's line. Reading is not atomic with respect to concurrent adds, which is
+ * fine for metrics.
+ */
+class StripedCounter
+{
+	/** Longs between cells, so that each cell has a cache line of its own. */
+	private static final int PAD = 8;
+	/** The number of cells: the number of processors rounded up to a power of 2, at most 16. */
+	static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+	/**
+	 * @return the cell, or histogram row, of the calling thread.
+	 */
+	static int stripe()
+	{
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	void add(long x)
+	{
+		cells.getAndAdd(stripe() * PAD, x);
+	}
+
+	void increment()
+	{
+		add(1);
+	}
+
+	long sum()
+	{
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++)
+			sum += cells.get(i * PAD);
+		return sum;
+	}
+
+	void reset()
+	{
+		for (int i = 0; i < STRIPES; i++)
+			cells.set(i * PAD, 0);
+	}
+}
\ No newline at end of file
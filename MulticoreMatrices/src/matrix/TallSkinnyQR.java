@@ -0,0 +1,231 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tall-skinny QR (TSQR) of an m x n matrix with m much larger than n.
+ *
+ * The rows are split into blocks of at least n rows, one per worker, and each block is factored
+ * on its own. Their n x n R factors are then merged pairwise up a binary tree, each merge being
+ * the QR of two R factors stacked, until one R is left. A blocked QR of a tall matrix spends
+ * most of its time in panels that run on one thread; here all leaves run at once and the
+ * merges are small.
+ *
+ * Q is the product of the leaves' Q factors and the merges', and is never formed unless asked
+ * for: leastSquares applies Q^T by passing the right-hand side up the same tree.
+ */
+public class TallSkinnyQR
+{
+	private final Node root;
+	private final int m;
+	private final int n;
+
+	private TallSkinnyQR(Node root, int m, int n)
+	{
+		this.root = root;
+		this.m = m;
+		this.n = n;
+	}
+
+	/**
+	 * Factors the m x n matrix A held in a, which is not modified.
+	 * @param a    : the row-major array holding A.
+	 * @param lda  : the row stride of A.
+	 * @param m    : the number of rows of A, at least n.
+	 * @param n    : the number of columns of A.
+	 * @param pool : the pool to factor the leaves and merges on, or null to factor sequentially.
+	 */
+	static TallSkinnyQR factor(double[] a, int lda, int m, int n, ForkJoinPool pool)
+	{
+		int workers = pool == null ? 1 : pool.getParallelism();
+		int leafRows = Math.max(Math.max(n, 1), (m + workers - 1) / workers);
+		Node root = new Node(a, lda, 0, m, n, leafRows);
+		if (pool == null)
+			root.compute();
+		else
+			pool.invoke(root);
+		return new TallSkinnyQR(root, m, n);
+	}
+
+	/**
+	 * @return the number of rows of the factored matrix.
+	 */
+	public int rows()
+	{
+		return m;
+	}
+
+	/**
+	 * @return the number of columns of the factored matrix.
+	 */
+	public int cols()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of row blocks that were factored independently.
+	 */
+	public int leaves()
+	{
+		return root.leaves();
+	}
+
+	/**
+	 * @return the upper triangular factor R, n x n.
+	 */
+	public Matrix getR()
+	{
+		return root.qr.getR();
+	}
+
+	/**
+	 * Forms the economy-size Q, m x n with orthonormal columns, by passing the identity down
+	 * the tree.
+	 * @return
+	 */
+	public Matrix getQ()
+	{
+		double[] Q = new double[m * n];
+		double[] E = new double[n * n];
+		for (int i = 0; i < n; i++)
+			E[i * n + i] = 1.0;
+		root.expand(E, Q);
+		return new Matrix(Q, m, n);
+	}
+
+	/**
+	 * @return true if R has a diagonal entry that is 0 to working precision.
+	 */
+	public boolean isRankDeficient()
+	{
+		return root.qr.isRankDeficient();
+	}
+
+	/**
+	 * Finds the x of length n that minimizes ||A * x - b||.
+	 * @param b : the right-hand side, m long. It is not modified.
+	 * @return x, or null if A is rank deficient or b has the wrong length.
+	 */
+	public double[] leastSquares(double[] b)
+	{
+		if (b.length != m || isRankDeficient())
+			return null;
+		double[] c = root.reduce(b);
+		root.qr.backSubstitute(c, 1);
+		return c;
+	}
+
+	/**
+	 * A row block [r0, r0 + rows) and its QR: for a leaf, that of the block itself, and for
+	 * an inner node, that of its children's R factors stacked.
+	 */
+	private static class Node extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] a;
+		final int lda;
+		final int r0;
+		final int rows;
+		final int n;
+		final int leafRows;
+		Node left;
+		Node right;
+		QRFactorization qr;
+
+		Node(double[] a, int lda, int r0, int rows, int n, int leafRows)
+		{
+			this.a = a;
+			this.lda = lda;
+			this.r0 = r0;
+			this.rows = rows;
+			this.n = n;
+			this.leafRows = leafRows;
+		}
+
+		protected void compute()
+		{
+			if (rows < 2 * leafRows)
+			{
+				double[] block = new double[rows * n];
+				for (int i = 0; i < rows; i++)
+					System.arraycopy(a, (r0 + i) * lda, block, i * n, n);
+				qr = QRFactorization.factor(block, rows, n, null);
+				return;
+			}
+			int half = rows / 2;
+			left = new Node(a, lda, r0, half, n, leafRows);
+			right = new Node(a, lda, r0 + half, rows - half, n, leafRows);
+			if (getPool() == null)
+			{
+				left.compute();
+				right.compute();
+			}
+			else
+			{
+				invokeAll(left, right);
+			}
+			double[] stacked = new double[2 * n * n];
+			copyR(left.qr, stacked, 0);
+			copyR(right.qr, stacked, n * n);
+			qr = QRFactorization.factor(stacked, 2 * n, n, null);
+		}
+
+		private void copyR(QRFactorization child, double[] dest, int destPos)
+		{
+			System.arraycopy(child.getR().data(), 0, dest, destPos, n * n);
+		}
+
+		int leaves()
+		{
+			return left == null ? 1 : left.leaves() + right.leaves();
+		}
+
+		/**
+		 * Returns the first n entries of this node's Q^T times rows [r0, r0 + rows) of b.
+		 */
+		double[] reduce(double[] b)
+		{
+			double[] c;
+			if (left == null)
+			{
+				c = new double[rows];
+				System.arraycopy(b, r0, c, 0, rows);
+			}
+			else
+			{
+				c = new double[2 * n];
+				System.arraycopy(left.reduce(b), 0, c, 0, n);
+				System.arraycopy(right.reduce(b), 0, c, n, n);
+			}
+			qr.applyQT(c);
+			double[] top = new double[n];
+			System.arraycopy(c, 0, top, 0, n);
+			return top;
+		}
+
+		/**
+		 * Writes rows [r0, r0 + rows) of Q * E into Q, where E is n x n and Q is the whole
+		 * economy-size factor.
+		 */
+		void expand(double[] E, double[] Q)
+		{
+			double[] q = qr.getQ().data();
+			if (left == null)
+			{
+				Gemm.gemm(false, false, rows, n, n, 1.0, q, 0, n, E, 0, n, 0.0, Q, r0 * n, n);
+				return;
+			}
+			double[] QE = new double[2 * n * n];
+			Gemm.gemm(false, false, 2 * n, n, n, 1.0, q, 0, n, E, 0, n, 0.0, QE, 0, n);
+			double[] top = new double[n * n];
+			double[] bottom = new double[n * n];
+			System.arraycopy(QE, 0, top, 0, n * n);
+			System.arraycopy(QE, n * n, bottom, 0, n * n);
+			left.expand(top, Q);
+			right.expand(bottom, Q);
+		}
+	}
+}
\ No newline at end of file
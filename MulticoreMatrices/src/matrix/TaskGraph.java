@@ -0,0 +1,276 @@
+package matrix;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A graph of tile kernels, run as a dataflow: each task starts as soon as the tasks whose
+ * output it needs have finished, with no barrier between the steps of a factorization.
+ *
+ * Dependencies are inferred, in the manner of PLASMA's QUARK, from the data handles (tiles) each
+ * task declares it reads and writes, in the order the tasks are added: a task waits for the last
+ * writer of everything it touches, and a writer also waits for every reader since the previous
+ * write. Added in program order, the graph therefore computes what running the tasks one after
+ * another would.
+ *
+ * Ready tasks wait in one priority queue. Lower priorities run first and equal priorities in the
+ * order they were added, so the factorizations give the tasks on the critical path the lowest
+ * numbers, and the workers run ahead on them whenever they are ready. The calling thread works
+ * too, so a run finishes even if the executor has no thread free.
+ */
+class TaskGraph
+{
+	private final List<Task> tasks = new ArrayList<Task>();
+	private final Task[] lastWriter;
+	private final List<List<Task>> readers;
+
+	/**
+	 * @param handles : the number of data handles, which are numbered from 0.
+	 */
+	TaskGraph(int handles)
+	{
+		lastWriter = new Task[handles];
+		readers = new ArrayList<List<Task>>(handles);
+		for (int h = 0; h < handles; h++)
+			readers.add(new ArrayList<Task>());
+	}
+
+	/**
+	 * Adds a task after all those added before it.
+	 * @param priority : lower runs first among ready tasks.
+	 * @param body     : the kernel.
+	 * @param reads    : the handles the kernel only reads.
+	 * @param writes   : the handles the kernel writes, and may also read.
+	 */
+	void add(int priority, Runnable body, int[] reads, int[] writes)
+	{
+		Task t = new Task(tasks.size(), priority, body);
+		for (int h : reads)
+		{
+			t.dependOn(lastWriter[h]);
+			readers.get(h).add(t);
+		}
+		for (int h : writes)
+		{
+			t.dependOn(lastWriter[h]);
+			for (Task r : readers.get(h))
+				t.dependOn(r);
+			readers.get(h).clear();
+			lastWriter[h] = t;
+		}
+		tasks.add(t);
+	}
+
+	/**
+	 * @return the number of tasks added.
+	 */
+	int size()
+	{
+		return tasks.size();
+	}
+
+	/**
+	 * Runs every task, on the caller and on up to workers - 1 threads of the executor.
+	 * @param executor : the pool to borrow threads from, or null to run on the caller alone.
+	 * @param workers  : the number of threads to run on, including the caller.
+	 * @param tileSize : recorded in the statistics.
+	 * @return what the run measured.
+	 * @throws ComputationException if a task fails. Tasks that were running are finished, and those
+	 * 	that were not yet started are dropped.
+	 */
+	ScheduleStatistics run(ExecutorService executor, int workers, int tileSize)
+	{
+		if (executor == null)
+			workers = 1;
+		final Run run = new Run(workers);
+		for (Task t : tasks)
+		{
+			if (t.pending.get() == 0)
+				run.ready.add(t);
+		}
+		long start = System.nanoTime();
+		if (tasks.isEmpty())
+			run.stop();
+		for (int w = 1; w < workers; w++)
+		{
+			executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					run.work();
+				}
+			});
+		}
+		run.work();
+		run.awaitIdle();
+		long wall = System.nanoTime() - start;
+		if (run.failure != null)
+			throw new ComputationException("A tile task failed", run.failure);
+
+		// Longest chain of measured task times, tasks being in a topological order already.
+		long[] before = new long[tasks.size()];
+		long busy = 0;
+		long critical = 0;
+		for (Task t : tasks)
+		{
+			long duration = t.end - t.start;
+			long finish = before[t.id] + duration;
+			busy += duration;
+			critical = Math.max(critical, finish);
+			for (Task s : t.successors)
+				before[s.id] = Math.max(before[s.id], finish);
+		}
+		return new ScheduleStatistics(workers, tasks.size(), tileSize, wall, busy, critical);
+	}
+
+	/**
+	 * One node of the graph.
+	 */
+	private static class Task
+	{
+		final int id;
+		final int priority;
+		final Runnable body;
+		final List<Task> successors = new ArrayList<Task>(4);
+		/** The number of predecessors that have not finished. */
+		final AtomicInteger pending = new AtomicInteger();
+		long start;
+		long end;
+
+		Task(int id, int priority, Runnable body)
+		{
+			this.id = id;
+			this.priority = priority;
+			this.body = body;
+		}
+
+		void dependOn(Task before)
+		{
+			if (before == null || before == this)
+				return;
+			List<Task> after = before.successors;
+			if (!after.isEmpty() && after.get(after.size() - 1) == this) // this edge was just added
+				return;
+			after.add(this);
+			pending.incrementAndGet();
+		}
+	}
+
+	/** Tells a worker to stop. It sorts before every task. */
+	private static final Task STOP = new Task(-1, Integer.MIN_VALUE, null);
+
+	private static final Comparator<Task> ORDER = new Comparator<Task>()
+	{
+		public int compare(Task x, Task y)
+		{
+			if (x.priority != y.priority)
+				return x.priority < y.priority ? -1 : 1;
+			return x.id < y.id ? -1 : (x.id == y.id ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The state of one run, shared by its workers.
+	 */
+	private class Run
+	{
+		final int workers;
+		final PriorityBlockingQueue<Task> ready = new PriorityBlockingQueue<Task>(64, ORDER);
+		final AtomicInteger remaining = new AtomicInteger(tasks.size());
+		/** The number of tasks taken from the queue and not yet finished. Guarded by this. */
+		int running;
+		volatile Throwable failure;
+
+		Run(int workers)
+		{
+			this.workers = workers;
+		}
+
+		void work()
+		{
+			while (true)
+			{
+				Task t;
+				try {
+					t = ready.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					fail(e);
+					return;
+				}
+				if (t == STOP)
+					return;
+				synchronized (this)
+				{
+					running++;
+				}
+				try {
+					if (failure != null) // taken just before the STOPs went in
+						continue;
+					t.start = System.nanoTime();
+					t.body.run();
+					t.end = System.nanoTime();
+					for (Task s : t.successors)
+					{
+						if (s.pending.decrementAndGet() == 0)
+							ready.add(s);
+					}
+					if (remaining.decrementAndGet() == 0)
+						stop();
+				} catch (Throwable e) {
+					t.end = System.nanoTime();
+					fail(e);
+				} finally {
+					synchronized (this)
+					{
+						running--;
+						notifyAll();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Sends every worker, including any that has not started yet, one STOP.
+		 */
+		void stop()
+		{
+			for (int w = 0; w < workers; w++)
+				ready.add(STOP);
+		}
+
+		void fail(Throwable e)
+		{
+			synchronized (this)
+			{
+				if (failure != null)
+					return;
+				failure = e;
+			}
+			stop();
+		}
+
+		/**
+		 * Waits until no task is running, which after the caller's STOP means every task that will
+		 * ever run has finished.
+		 */
+		synchronized void awaitIdle()
+		{
+			boolean interrupted = false;
+			while (running > 0)
+			{
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+}
\ No newline at end of file
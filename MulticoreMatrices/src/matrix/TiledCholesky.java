@@ -0,0 +1,166 @@
+package matrix;
+
+/**
+ * Cholesky factorization A = L * L^T of a symmetric positive-definite matrix, expressed as a
+ * graph of tile kernels and run by {@link TaskGraph}.
+ *
+ * Only the tiles on and below the diagonal are ever read or written. Step k of the factorization
+ * becomes: potrf(k), which factors diagonal tile (k, k); trsm(i, k) for each tile below it, which
+ * solves for L's tile (i, k) against the transpose of the diagonal factor; syrk(i, k), which
+ * updates the lower half of diagonal tile (i, i) with L(i, k) * L(i, k)^T; and gemm(i, j, k) for
+ * the tiles between, which update tile (i, j) with L(i, k) * L(j, k)^T. As in {@link TiledLU} the
+ * tasks that lead to the next diagonal tile get the highest priority.
+ *
+ * A matrix that is not positive-definite shows up as a diagonal entry that is not positive when
+ * its tile is factored. The remaining kernels then return without doing anything.
+ */
+class TiledCholesky
+{
+	private TiledCholesky()
+	{
+	}
+
+	/**
+	 * Factors the lower triangle of the n x n row-major matrix held in a, overwriting it with L.
+	 * The strictly upper triangle is neither read nor written.
+	 * @param a       : the matrix to factor, which becomes the factorization's buffer.
+	 * @param n       : the number of rows and columns of a.
+	 * @param tile    : the number of rows and columns in a tile.
+	 * @param context : the threads to run the tile kernels on, or null to run them on the caller.
+	 * @return the factorization, or null if the matrix is not positive-definite.
+	 */
+	static CholeskyFactorization factor(final double[] a, final int n, int tile, ComputeContext context)
+	{
+		final int nt = (n + tile - 1) / tile;
+		final boolean[] failed = new boolean[1];
+		TaskGraph graph = new TaskGraph(nt * nt);
+		for (int k = 0; k < nt; k++)
+		{
+			final int k0 = k * tile;
+			final int kb = Math.min(tile, n - k0);
+			graph.add(k, new Runnable()
+			{
+				public void run()
+				{
+					if (!potrf(a, n, k0, kb))
+						failed[0] = true;
+				}
+			}, new int[0], new int[] {k * nt + k});
+
+			for (int i = k + 1; i < nt; i++)
+			{
+				final int i0 = i * tile;
+				final int ib = Math.min(tile, n - i0);
+				graph.add(i == k + 1 ? k : nt + k, new Runnable()
+				{
+					public void run()
+					{
+						if (!failed[0])
+							trsm(a, n, k0, kb, i0, ib);
+					}
+				}, new int[] {k * nt + k}, new int[] {i * nt + k});
+			}
+
+			for (int i = k + 1; i < nt; i++)
+			{
+				final int i0 = i * tile;
+				final int ib = Math.min(tile, n - i0);
+				for (int j = k + 1; j <= i; j++)
+				{
+					final int j0 = j * tile;
+					final int jb = Math.min(tile, n - j0);
+					int priority = j == k + 1 ? k : nt + k;
+					if (i == j)
+					{
+						graph.add(priority, new Runnable()
+						{
+							public void run()
+							{
+								if (!failed[0])
+									syrk(a, n, k0, kb, i0, ib);
+							}
+						}, new int[] {i * nt + k}, new int[] {i * nt + i});
+					}
+					else
+					{
+						graph.add(priority, new Runnable()
+						{
+							public void run()
+							{
+								if (!failed[0])
+									Gemm.gemm(false, true, ib, jb, kb, -1.0, a, i0 * n + k0, n,
+											a, j0 * n + k0, n, 1.0, a, i0 * n + j0, n);
+							}
+						}, new int[] {i * nt + k, j * nt + k}, new int[] {i * nt + j});
+					}
+				}
+			}
+		}
+		ScheduleStatistics statistics;
+		if (context == null)
+			statistics = graph.run(null, 1, tile);
+		else
+			statistics = graph.run(context.executor(), context.parallelism(), tile);
+		if (failed[0])
+			return null;
+
+		CholeskyFactorization chol = new CholeskyFactorization(a, n, context == null ? null : context.forkJoinPool());
+		chol.setStatistics(statistics);
+		return chol;
+	}
+
+	/**
+	 * Factors the lower triangle of diagonal tile [k0, k0 + kb) in place, column by column.
+	 * @return false if a diagonal entry is not positive, so the matrix is not positive-definite.
+	 */
+	static boolean potrf(double[] a, int n, int k0, int kb)
+	{
+		for (int j = k0; j < k0 + kb; j++)
+		{
+			int rj = j * n;
+			double d = a[rj + j] - Kernels.dot(j - k0, a, rj + k0, a, rj + k0);
+			if (!(d > 0.0)) // also catches NaN
+				return false;
+			d = Math.sqrt(d);
+			a[rj + j] = d;
+			for (int i = j + 1; i < k0 + kb; i++)
+			{
+				int ri = i * n;
+				a[ri + j] = (a[ri + j] - Kernels.dot(j - k0, a, ri + k0, a, rj + k0)) / d;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Overwrites tile (i, k), rows [i0, i0 + ib) and columns [k0, k0 + kb), with itself times
+	 * L(k, k)^-T, one row at a time.
+	 */
+	static void trsm(double[] a, int n, int k0, int kb, int i0, int ib)
+	{
+		for (int r = i0; r < i0 + ib; r++)
+		{
+			int rr = r * n;
+			for (int j = k0; j < k0 + kb; j++)
+			{
+				int rj = j * n;
+				a[rr + j] = (a[rr + j] - Kernels.dot(j - k0, a, rr + k0, a, rj + k0)) / a[rj + j];
+			}
+		}
+	}
+
+	/**
+	 * Subtracts L(i, k) * L(i, k)^T from the lower half of diagonal tile (i, i).
+	 */
+	static void syrk(double[] a, int n, int k0, int kb, int i0, int ib)
+	{
+		for (int r = i0; r < i0 + ib; r++)
+		{
+			int rr = r * n;
+			for (int c = i0; c <= r; c++)
+			{
+				a[rr + c] -= Kernels.dot(kb, a, rr + k0, a, c * n + k0);
+			}
+		}
+	}
+}
\ No newline at end of file
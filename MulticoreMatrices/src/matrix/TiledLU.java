@@ -0,0 +1,107 @@
+package matrix;
+
+/**
+ * LU factorization with partial pivoting expressed as a graph of tile kernels and run by
+ * {@link TaskGraph}, in the style of PLASMA.
+ *
+ * The matrix is cut into b x b tiles, and step k of the factorization becomes:
+ * panel(k), which factors tile column k from the diagonal down with partial pivoting;
+ * swap(k, j) for each tile column j right of it, which applies the panel's interchanges to that
+ * column and solves for its tile of U with the panel's unit lower triangle; and gemm(i, j, k),
+ * which updates tile (i, j) with the product of L tile (i, k) and U tile (k, j).
+ *
+ * The panel of step k + 1 only needs tile column k + 1 to be updated, so the tasks on that chain
+ * are given the highest priority and run while the rest of step k's updates are still going.
+ * That lookahead is what removes the barrier between steps. As in {@link PipelinedElimination},
+ * the interchanges are applied to the columns of L left of each panel only at the end, so no
+ * task writes a tile that an earlier step's tasks may still be reading.
+ */
+class TiledLU
+{
+	/** The tile size used unless another is asked for. */
+	static final int DEFAULT_TILE = 128;
+
+	private TiledLU()
+	{
+	}
+
+	/**
+	 * Factors the n x n row-major matrix held in a, overwriting a with the packed factors.
+	 * @param a       : the matrix to factor, which becomes the factorization's buffer.
+	 * @param n       : the number of rows and columns of a.
+	 * @param tile    : the number of rows and columns in a tile.
+	 * @param context : the threads to run the tile kernels on, whose fork-join pool the
+	 * 	factorization's later operations also use.
+	 * @return the factorization, with the statistics of its schedule.
+	 */
+	static LUFactorization factor(final double[] a, final int n, final int tile, ComputeContext context)
+	{
+		Metrics.phase(Metrics.Phase.ELIMINATION);
+		Metrics.flops(2.0 * n * n * n / 3);
+		final int nt = (n + tile - 1) / tile;
+		final int[] piv = new int[n];
+		final int[] singular = new int[nt];
+		TaskGraph graph = new TaskGraph(nt * nt);
+		for (int k = 0; k < nt; k++)
+		{
+			final int step = k;
+			final int j0 = k * tile;
+			final int jb = Math.min(tile, n - j0);
+			int[] panel = new int[nt - k];
+			for (int i = k; i < nt; i++)
+				panel[i - k] = i * nt + k;
+			graph.add(k, new Runnable()
+			{
+				public void run()
+				{
+					singular[step] = BlockedLU.factorPanel(a, 0, n, n, j0, jb, piv);
+				}
+			}, new int[0], panel);
+
+			for (int j = k + 1; j < nt; j++)
+			{
+				final int c0 = j * tile;
+				final int c1 = Math.min(n, c0 + tile);
+				int priority = j == k + 1 ? k : nt + k;
+				int[] column = new int[nt - k];
+				for (int i = k; i < nt; i++)
+					column[i - k] = i * nt + j;
+				graph.add(priority, new Runnable()
+				{
+					public void run()
+					{
+						BlockedLU.swapAndSolve(a, 0, n, j0, jb, piv, c0, c1, true);
+					}
+				}, new int[] {k * nt + k}, column);
+
+				for (int i = k + 1; i < nt; i++)
+				{
+					final int r0 = i * tile;
+					final int rows = Math.min(tile, n - r0);
+					graph.add(priority, new Runnable()
+					{
+						public void run()
+						{
+							Gemm.gemm(false, false, rows, c1 - c0, jb, -1.0, a, r0 * n + j0, n,
+									a, j0 * n + c0, n, 1.0, a, r0 * n + c0, n);
+						}
+					}, new int[] {i * nt + k, k * nt + j}, new int[] {i * nt + j});
+				}
+			}
+		}
+		ScheduleStatistics statistics = graph.run(context.executor(), context.parallelism(), tile);
+
+		// Bring the multipliers of each panel in line with the interchanges of the panels after it.
+		for (int k = 1; k < nt; k++)
+		{
+			int j0 = k * tile;
+			BlockedLU.swapAndSolve(a, 0, n, j0, Math.min(tile, n - j0), piv, 0, j0, false);
+		}
+		int first = -1;
+		for (int k = 0; k < nt && first < 0; k++)
+			first = singular[k];
+		LUFactorization lu = new LUFactorization(a, piv, n, first, context.forkJoinPool());
+		lu.setStatistics(statistics);
+		return lu;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * O(n^2) kernels for matrices whose {@link MatrixStructure} has a triangular form: triangular
+ * matrices and row permutations of them, diagonal ones included.
+ *
+ * Such a matrix needs no elimination at all. Its determinant is the product of the triangular
+ * form's diagonal, signed by the parity of the row order; its LU factorization can be written
+ * down directly; and its inverse takes one triangular solve per row.
+ */
+class Triangular
+{
+	private Triangular()
+	{
+	}
+
+	/**
+	 * Copies the matrix's rows, in the order given by the structure, into a contiguous n x n array.
+	 */
+	static double[] form(MatrixStructure s, double[] a, int stride, int n)
+	{
+		int[] order = s.triangularFormOrder();
+		double[] t = new double[n * n];
+		for (int k = 0; k < n; k++)
+			System.arraycopy(a, (order == null ? k : order[k]) * stride, t, k * n, n);
+		return t;
+	}
+
+	/**
+	 * @return true if the permutation that takes row order[k] to row k is odd.
+	 */
+	private static boolean odd(int[] order, int n)
+	{
+		if (order == null)
+			return false;
+		boolean[] seen = new boolean[n];
+		int transpositions = 0;
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = i; !seen[j]; j = order[j])
+			{
+				seen[j] = true;
+				if (j != i)
+					transpositions++;
+			}
+		}
+		return (transpositions & 1) != 0;
+	}
+
+	/**
+	 * @return the determinant, the product of the triangular form's diagonal, negated if the
+	 * 	rows were put in that form by an odd permutation.
+	 */
+	static double determinant(MatrixStructure s, double[] a, int stride, int n)
+	{
+		int[] order = s.triangularFormOrder();
+		double det = odd(order, n) ? -1.0 : 1.0;
+		for (int k = 0; k < n; k++)
+			det *= a[(order == null ? k : order[k]) * stride + k];
+		return det;
+	}
+
+	/**
+	 * Writes down P * A = L * U. For an upper triangular form, L is the identity and U is the form
+	 * itself; for a lower triangular form T with diagonal D, U is D and L is T * D^-1.
+	 * @return the factorization, or null if the form is lower triangular with a 0 on its diagonal,
+	 * 	which has no LU factorization of that shape.
+	 */
+	static LUFactorization factor(MatrixStructure s, double[] a, int stride, int n, ForkJoinPool pool)
+	{
+		double[] t = form(s, a, stride, n);
+		int singular = -1;
+		for (int k = n - 1; k >= 0; k--)
+		{
+			if (t[k * n + k] == 0.0)
+				singular = k;
+		}
+		if (!s.triangularFormIsUpper())
+		{
+			if (singular >= 0)
+				return null;
+			for (int i = 1; i < n; i++)
+			{
+				int r = i * n;
+				for (int j = 0; j < i; j++)
+					t[r + j] /= t[j * n + j];
+			}
+		}
+		return new LUFactorization(t, pivots(s.triangularFormOrder(), n), n, singular, pool);
+	}
+
+	/**
+	 * Turns a row order into a LAPACK style pivot vector: the interchanges, applied in turn, that
+	 * bring row order[k] to row k.
+	 */
+	private static int[] pivots(int[] order, int n)
+	{
+		int[] piv = new int[n];
+		if (order == null)
+		{
+			for (int k = 0; k < n; k++)
+				piv[k] = k;
+			return piv;
+		}
+		int[] at = new int[n];  // at[i] is the original row now in row i
+		int[] pos = new int[n]; // pos[r] is the row original row r is now in
+		for (int i = 0; i < n; i++)
+		{
+			at[i] = i;
+			pos[i] = i;
+		}
+		for (int k = 0; k < n; k++)
+		{
+			int p = pos[order[k]];
+			piv[k] = p;
+			int moved = at[k];
+			at[k] = order[k];
+			at[p] = moved;
+			pos[order[k]] = k;
+			pos[moved] = p;
+		}
+		return piv;
+	}
+
+	/**
+	 * Inverts the matrix through its triangular form T, as T^-1 * P, where P puts the rows in
+	 * that form. Each row of T^-1 is one triangular solve; rows are independent, so given a pool,
+	 * ranges of them are solved in parallel.
+	 * @return the inverse, or null if the matrix is singular to working precision, by the same
+	 * 	test as LUFactorization.inverse().
+	 */
+	static Matrix inverse(MatrixStructure s, double[] a, int stride, int n, ForkJoinPool pool)
+	{
+		Metrics.phase(Metrics.Phase.COPY);
+		double[] t = form(s, a, stride, n);
+		double max = 0.0;
+		for (int i = 0; i < t.length; i++)
+			max = Math.max(max, Math.abs(t[i]));
+		double threshold = n * LUFactorization.EPSILON * max;
+		for (int k = 0; k < n; k++)
+		{
+			if (Math.abs(t[k * n + k]) <= threshold)
+				return null;
+		}
+		Metrics.phase(Metrics.Phase.BACK_SUBSTITUTION);
+		Metrics.flops((double) n * n * n / 3);
+		double[] X = new double[n * n];
+		InverseTask task = new InverseTask(t, n, s.triangularFormIsUpper(), X, 0, n);
+		if (pool == null || (long) n * n * n < 2 * LUFactorization.MIN_SOLVE_WORK)
+			task.compute();
+		else
+			pool.invoke(task);
+
+		int[] order = s.triangularFormOrder();
+		if (order == null)
+			return new Matrix(X, n, n);
+		double[] Y = new double[n * n]; // column order[k] of T^-1 * P is column k of T^-1
+		for (int i = 0; i < n; i++)
+		{
+			int r = i * n;
+			for (int k = 0; k < n; k++)
+				Y[r + order[k]] = X[r + k];
+		}
+		return new Matrix(Y, n, n);
+	}
+
+	/**
+	 * Writes rows [r0, r1) of T^-1 into X, which must hold zeros there, halving the range until it
+	 * holds about LUFactorization.MIN_SOLVE_WORK multiply-adds. Row i is the x with x * T = e_i;
+	 * for an upper triangular T it is 0 left of column i, and for a lower one, right of it.
+	 */
+	private static class InverseTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double[] t;
+		final int n;
+		final boolean upper;
+		final double[] X;
+		final int r0;
+		final int r1;
+
+		InverseTask(double[] t, int n, boolean upper, double[] X, int r0, int r1)
+		{
+			this.t = t;
+			this.n = n;
+			this.upper = upper;
+			this.X = X;
+			this.r0 = r0;
+			this.r1 = r1;
+		}
+
+		protected void compute()
+		{
+			if (r1 - r0 > 1 && (long) (r1 - r0) * n * n >= 2 * LUFactorization.MIN_SOLVE_WORK)
+			{
+				int mid = (r0 + r1) >>> 1;
+				invokeAll(new InverseTask(t, n, upper, X, r0, mid), new InverseTask(t, n, upper, X, mid, r1));
+				return;
+			}
+			for (int i = r0; i < r1; i++)
+			{
+				int r = i * n;
+				X[r + i] = 1.0;
+				if (upper)
+				{
+					for (int k = i; k < n; k++)
+					{
+						int rk = k * n;
+						double x = X[r + k] / t[rk + k];
+						X[r + k] = x;
+						if (x == 0.0)
+							continue;
+						for (int j = k + 1; j < n; j++)
+							X[r + j] -= x * t[rk + j];
+					}
+				}
+				else
+				{
+					for (int k = i; k >= 0; k--)
+					{
+						int rk = k * n;
+						double x = X[r + k] / t[rk + k];
+						X[r + k] = x;
+						if (x == 0.0)
+							continue;
+						for (int j = 0; j < k; j++)
+							X[r + j] -= x * t[rk + j];
+					}
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,204 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solvers for tridiagonal systems a[i] * x[i - 1] + b[i] * x[i] + c[i] * x[i + 1] = d[i], with
+ * a[0] and c[n - 1] taken to be 0. Neither pivots, so both are meant for diagonally dominant
+ * or symmetric positive-definite systems; for others use {@link BandLU}.
+ */
+class Tridiagonal
+{
+	/** Number of equations below which a level of the reduction is not split further between threads. */
+	static final int MIN_EQUATIONS = 1 << 12;
+
+	private Tridiagonal()
+	{
+	}
+
+	/**
+	 * The Thomas algorithm: forward elimination of the subdiagonal, then back substitution.
+	 * @return x, or null if a 0 pivot came up.
+	 */
+	static double[] thomas(double[] a, double[] b, double[] c, double[] d)
+	{
+		int n = b.length;
+		if (n == 0)
+			return new double[0];
+		double[] cp = new double[n];
+		double[] x = new double[n];
+		double pivot = b[0];
+		for (int i = 0; i < n; i++)
+		{
+			if (i > 0)
+				pivot = b[i] - a[i] * cp[i - 1];
+			if (pivot == 0.0)
+				return null;
+			cp[i] = i < n - 1 ? c[i] / pivot : 0.0;
+			x[i] = (i > 0 ? d[i] - a[i] * x[i - 1] : d[i]) / pivot;
+		}
+		for (int i = n - 2; i >= 0; i--)
+			x[i] -= cp[i] * x[i + 1];
+		return x;
+	}
+
+	/**
+	 * Cyclic (odd-even) reduction, overwriting its arguments.
+	 *
+	 * At stride s the equations in play are i = s - 1, 2s - 1, 3s - 1, ..., each coupling x[i]
+	 * with x[i - s] and x[i + s]. Every other one of them, i = 2s - 1 mod 2s, eliminates its
+	 * neighbours by subtracting multiples of equations i - s and i + s, leaving it coupled to
+	 * x[i - 2s] and x[i + 2s]; those that do this only read equations that are not changing, so
+	 * they can all run at once. Doubling s until one equation is left gives x[s - 1], and
+	 * halving it again recovers the rest, level by level, also all at once.
+	 *
+	 * This is the work-efficient form, O(n) in all, rather than the variant that reduces every
+	 * equation at every level for O(n log n). Levels with fewer than MIN_EQUATIONS equations run
+	 * on the calling thread.
+	 * @param pool : the pool to split large levels on, or null to solve sequentially.
+	 * @return x, or null if a 0 pivot came up.
+	 */
+	static double[] cyclicReduction(double[] a, double[] b, double[] c, double[] d, ForkJoinPool pool)
+	{
+		int n = b.length;
+		if (n == 0)
+			return new double[0];
+		a[0] = 0.0;
+		c[n - 1] = 0.0;
+		Level level = new Level(a, b, c, d, new double[n]);
+		int s = 1;
+		for (; 2 * s - 1 < n; s *= 2)
+		{
+			if (!level.run(pool, s, true))
+				return null;
+		}
+		if (b[s - 1] == 0.0)
+			return null;
+		level.x[s - 1] = d[s - 1] / b[s - 1];
+		for (s /= 2; s >= 1; s /= 2)
+			level.run(pool, s, false);
+		return level.x;
+	}
+
+	/**
+	 * One level of the reduction, or of the substitution back, over the equations with index
+	 * i = 2s - 1 mod 2s in the reduction and i = s - 1 mod 2s in the substitution, taken in
+	 * ranges of their ordinal k, so that i = first + 2s * k.
+	 */
+	private static class Level
+	{
+		final double[] a;
+		final double[] b;
+		final double[] c;
+		final double[] d;
+		final double[] x;
+		volatile boolean zeroPivot;
+
+		Level(double[] a, double[] b, double[] c, double[] d, double[] x)
+		{
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.d = d;
+			this.x = x;
+		}
+
+		/**
+		 * @return false if the reduction divided by a 0 pivot.
+		 */
+		boolean run(ForkJoinPool pool, int s, boolean reduce)
+		{
+			int n = b.length;
+			int first = reduce ? 2 * s - 1 : s - 1;
+			int count = first < n ? (n - 1 - first) / (2 * s) + 1 : 0;
+			if (pool == null || count < 2 * MIN_EQUATIONS)
+				range(s, reduce, first, 0, count);
+			else
+				pool.invoke(new RangeTask(this, s, reduce, first, 0, count));
+			return !zeroPivot;
+		}
+
+		void range(int s, boolean reduce, int first, int k0, int k1)
+		{
+			int n = b.length;
+			for (int k = k0; k < k1; k++)
+			{
+				int i = first + 2 * s * k;
+				int left = i - s;
+				int right = i + s;
+				if (reduce)
+				{
+					if (b[left] == 0.0 || (right < n && b[right] == 0.0))
+					{
+						zeroPivot = true;
+						return;
+					}
+					double alpha = -a[i] / b[left];
+					double bi = b[i] + alpha * c[left];
+					double di = d[i] + alpha * d[left];
+					a[i] = alpha * a[left];
+					if (right < n)
+					{
+						double gamma = -c[i] / b[right];
+						bi += gamma * a[right];
+						di += gamma * d[right];
+						c[i] = gamma * c[right];
+					}
+					else
+					{
+						c[i] = 0.0;
+					}
+					b[i] = bi;
+					d[i] = di;
+				}
+				else
+				{
+					double sum = d[i];
+					if (left >= 0)
+						sum -= a[i] * x[left];
+					if (right < n)
+						sum -= c[i] * x[right];
+					x[i] = sum / b[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a range of a level's equations, halving it until it holds about MIN_EQUATIONS.
+	 */
+	private static class RangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Level level;
+		final int s;
+		final boolean reduce;
+		final int first;
+		final int k0;
+		final int k1;
+
+		RangeTask(Level level, int s, boolean reduce, int first, int k0, int k1)
+		{
+			this.level = level;
+			this.s = s;
+			this.reduce = reduce;
+			this.first = first;
+			this.k0 = k0;
+			this.k1 = k1;
+		}
+
+		protected void compute()
+		{
+			if (k1 - k0 >= 2 * MIN_EQUATIONS)
+			{
+				int mid = (k0 + k1) >>> 1;
+				invokeAll(new RangeTask(level, s, reduce, first, k0, mid),
+						new RangeTask(level, s, reduce, first, mid, k1));
+				return;
+			}
+			level.range(s, reduce, first, k0, k1);
+		}
+	}
+}
\ No newline at end of file